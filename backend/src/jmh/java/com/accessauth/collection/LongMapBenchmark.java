@@ -0,0 +1,101 @@
+package com.accessauth.collection;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Session and credential tables at badge-population scale: lookup throughput
+ * and retained heap per entry of ConcurrentLongHashMap against
+ * ConcurrentHashMap with boxed Long keys, at 1M users
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class LongMapBenchmark {
+    private static final Object VALUE = new Object();
+
+    @Param({ "1000000" })
+    public int users;
+
+    @Param({ "ConcurrentLongHashMap", "ConcurrentHashMap" })
+    public String table;
+
+    private ConcurrentLongHashMap<Object> longMap;
+    private Map<Long, Object> boxedMap;
+
+    /**
+     * Heap retained by the filled table, divided by the number of entries
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public double bytesPerEntry;
+    }
+
+    @Setup
+    public void setUp() {
+        longMap = new ConcurrentLongHashMap<>();
+        boxedMap = new ConcurrentHashMap<>();
+        if ("ConcurrentLongHashMap".equals(table)) {
+            fill(longMap);
+        } else {
+            fill(boxedMap);
+        }
+    }
+
+    private void fill(ConcurrentLongHashMap<Object> map) {
+        for (long id = 1; id <= users; id++) {
+            map.put(id, VALUE);
+        }
+    }
+
+    private void fill(Map<Long, Object> map) {
+        for (long id = 1; id <= users; id++) {
+            map.put(id, VALUE);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Threads(4)
+    public Object lookup() {
+        long id = 1 + ThreadLocalRandom.current().nextInt(users);
+        return "ConcurrentLongHashMap".equals(table) ? longMap.get(id) : boxedMap.get(id);
+    }
+
+    // Builds a separate table per invocation and measures what stays reachable
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public Object footprint(Footprint footprint) {
+        long before = usedHeap();
+        Object filled;
+        if ("ConcurrentLongHashMap".equals(table)) {
+            ConcurrentLongHashMap<Object> map = new ConcurrentLongHashMap<>();
+            fill(map);
+            filled = map;
+        } else {
+            Map<Long, Object> map = new ConcurrentHashMap<>();
+            fill(map);
+            filled = map;
+        }
+        footprint.bytesPerEntry = (double) (usedHeap() - before) / users;
+        return filled;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
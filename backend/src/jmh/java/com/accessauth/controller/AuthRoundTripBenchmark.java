@@ -0,0 +1,156 @@
+package com.accessauth.controller;
+
+import com.accessauth.Application;
+import com.accessauth.domain.User;
+import com.accessauth.service.CryptoService;
+import com.accessauth.service.UserService;
+import com.accessauth.socket.BinaryFrame;
+import com.accessauth.socket.ProtocolConnection;
+import com.accessauth.socket.ProtocolMessage;
+import com.accessauth.socket.WireFormat;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * In-process auth_request -> challenge_response round trip through the controller,
+ * with the users table in H2. Each operation also includes the client's side of the
+ * exchange (decrypting the challenge and encrypting the response).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthRoundTripBenchmark {
+    private ConfigurableApplicationContext context;
+    private CryptoService cryptoService;
+    private InMemoryConnection connection;
+    private final ProtocolMessage message = new ProtocolMessage();
+    private PrintStream console;
+    private long userId;
+    private String symmetricKey;
+    private String authRequest;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(Application.class)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1",
+                        "spring.datasource.driver-class-name=org.h2.Driver",
+                        "spring.datasource.username=sa",
+                        "spring.datasource.password=",
+                        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                        "spring.jpa.hibernate.ddl-auto=create-drop",
+                        "protocol.server.port=0",
+                        "metrics.endpoint.enabled=false",
+                        "credentials.changes.transport=none")
+                .run();
+        cryptoService = context.getBean(CryptoService.class);
+
+        symmetricKey = cryptoService.generateSymmetricKey();
+        userId = context.getBean(UserService.class).saveUser(new User(symmetricKey)).getId();
+        authRequest = "{\"type\":\"auth_request\",\"user_id\":\"" + userId + "\"}";
+
+        connection = new InMemoryConnection();
+        context.getBean(AccessAuthorizationController.class).handleClient(connection);
+
+        // The controller logs every step; keep the formatting cost but not the console I/O
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(console);
+        context.close();
+    }
+
+    @Benchmark
+    public JsonObject authenticate() throws Exception {
+        connection.receive(authRequest, message);
+        String challengeHex = connection.lastSent.getAsJsonObject("data").get("challenge").getAsString();
+
+        String challenge = cryptoService.decryptChallenge(userId,
+                new String(HexFormat.of().parseHex(challengeHex), StandardCharsets.US_ASCII), symmetricKey);
+        String response = cryptoService.encryptChallenge(userId, challenge, symmetricKey);
+        connection.receive("{\"type\":\"challenge_response\",\"response\":\""
+                + HexFormat.of().formatHex(response.getBytes(StandardCharsets.US_ASCII)) + "\"}", message);
+
+        JsonObject result = connection.lastSent;
+        if (!"auth_success".equals(result.get("type").getAsString())) {
+            throw new IllegalStateException("Authentication failed: " + result);
+        }
+        return result;
+    }
+
+    /**
+     * A JSON client connection without a socket; messages are fed in directly
+     */
+    private static class InMemoryConnection implements ProtocolConnection {
+        private Consumer<ProtocolMessage> messageHandler;
+        private JsonObject lastSent;
+
+        void receive(String json, ProtocolMessage message) throws IOException {
+            JsonReader reader = new JsonReader(new StringReader(json));
+            reader.setLenient(true);
+            message.readJson(reader);
+            messageHandler.accept(message);
+        }
+
+        @Override
+        public void sendJson(JsonObject jsonObject) {
+            lastSent = jsonObject;
+        }
+
+        @Override
+        public void sendFrame(BinaryFrame frame) {
+            throw new UnsupportedOperationException("JSON connection");
+        }
+
+        @Override
+        public void startListening(Consumer<ProtocolMessage> messageHandler, Runnable closeHandler) {
+            this.messageHandler = messageHandler;
+        }
+
+        @Override
+        public void setMaxBatchSize(int maxBatchSize) {
+        }
+
+        @Override
+        public void setErrorListener(BiConsumer<String, String> errorListener) {
+        }
+
+        @Override
+        public WireFormat getWireFormat() {
+            return WireFormat.JSON;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String getRemoteAddress() {
+            return "in-memory";
+        }
+    }
+}
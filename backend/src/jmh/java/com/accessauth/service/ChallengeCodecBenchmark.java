@@ -0,0 +1,46 @@
+package com.accessauth.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The hex(Base64(ciphertext)) wire codec of challenges and responses
+ * (it replaced the controller's stringToHex / hexToString)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChallengeCodecBenchmark {
+    private byte[] ciphertext;
+    private String wireHex;
+    private byte[] scratch;
+
+    @Setup
+    public void setUp() throws Exception {
+        CryptoService cryptoService = new CryptoService();
+        ciphertext = cryptoService.encryptChallenge(1L, cryptoService.generateChallengeBytes(),
+                cryptoService.generateSymmetricKey());
+        wireHex = encodeWire();
+        scratch = new byte[wireHex.length() / 2];
+    }
+
+    @Benchmark
+    public String encodeWire() {
+        int base64Length = ChallengeCodec.base64Length(ciphertext.length);
+        byte[] hex = new byte[ChallengeCodec.hexLength(base64Length)];
+        ChallengeCodec.encodeBase64(ciphertext, 0, ciphertext.length, hex, base64Length);
+        ChallengeCodec.encodeHex(hex, base64Length, base64Length, hex, 0);
+        return new String(hex, StandardCharsets.US_ASCII);
+    }
+
+    @Benchmark
+    public int decodeWire() {
+        int base64Length = ChallengeCodec.decodeHex(wireHex, scratch, 0);
+        return ChallengeCodec.decodeBase64(scratch, 0, base64Length, scratch, 0);
+    }
+}
@@ -0,0 +1,62 @@
+package com.accessauth.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Challenge generation, encryption and verification as done for every authentication
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CryptoServiceBenchmark {
+    private static final long USER_ID = 42L;
+
+    private CryptoService cryptoService;
+    private String symmetricKey;
+    private byte[] challenge;
+    private byte[] encryptedChallenge;
+    private String challengeText;
+    private String encryptedChallengeText;
+
+    @Setup
+    public void setUp() throws Exception {
+        cryptoService = new CryptoService();
+        symmetricKey = cryptoService.generateSymmetricKey();
+        challenge = cryptoService.generateChallengeBytes();
+        encryptedChallenge = cryptoService.encryptChallenge(USER_ID, challenge, symmetricKey);
+        challengeText = cryptoService.generateChallenge();
+        encryptedChallengeText = cryptoService.encryptChallenge(USER_ID, challengeText, symmetricKey);
+    }
+
+    @Benchmark
+    public byte[] generateChallenge() {
+        return cryptoService.generateChallengeBytes();
+    }
+
+    @Benchmark
+    public byte[] encryptChallenge() throws Exception {
+        return cryptoService.encryptChallenge(USER_ID, challenge, symmetricKey);
+    }
+
+    @Benchmark
+    public boolean verifyChallengeResponse() throws Exception {
+        return cryptoService.verifyChallengeResponse(USER_ID, challenge, encryptedChallenge, 0,
+                encryptedChallenge.length, symmetricKey);
+    }
+
+    // String API kept for older callers
+    @Benchmark
+    public String encryptChallengeText() throws Exception {
+        return cryptoService.encryptChallenge(USER_ID, challengeText, symmetricKey);
+    }
+
+    @Benchmark
+    public String decryptChallengeText() throws Exception {
+        return cryptoService.decryptChallenge(USER_ID, encryptedChallengeText, symmetricKey);
+    }
+}
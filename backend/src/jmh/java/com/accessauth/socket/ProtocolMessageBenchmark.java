@@ -0,0 +1,68 @@
+package com.accessauth.socket;
+
+import com.accessauth.service.CryptoService;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON decoding of client messages and encoding of server replies
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProtocolMessageBenchmark {
+    private final Gson gson = new Gson();
+    private final ProtocolMessage message = new ProtocolMessage();
+    private String authRequest;
+    private String challengeResponse;
+    private String challengeHex;
+
+    @Setup
+    public void setUp() throws Exception {
+        CryptoService cryptoService = new CryptoService();
+        String response = cryptoService.encryptChallenge(42L, cryptoService.generateChallenge(),
+                cryptoService.generateSymmetricKey());
+        challengeHex = HexFormat.of().formatHex(response.getBytes());
+        authRequest = "{\"type\":\"auth_request\",\"user_id\":\"42\"}";
+        challengeResponse = "{\"type\":\"challenge_response\",\"response\":\"" + challengeHex + "\"}";
+    }
+
+    private ProtocolMessage decode(String json) throws IOException {
+        JsonReader reader = new JsonReader(new StringReader(json));
+        reader.setLenient(true);
+        message.readJson(reader);
+        return message;
+    }
+
+    @Benchmark
+    public ProtocolMessage decodeAuthRequest() throws IOException {
+        return decode(authRequest);
+    }
+
+    @Benchmark
+    public ProtocolMessage decodeChallengeResponse() throws IOException {
+        return decode(challengeResponse);
+    }
+
+    @Benchmark
+    public String encodeChallenge() {
+        JsonObject data = new JsonObject();
+        data.addProperty("challenge", challengeHex);
+        JsonObject json = new JsonObject();
+        json.addProperty("type", "challenge");
+        json.addProperty("message", "Challenge generated");
+        json.addProperty("timestamp", System.currentTimeMillis());
+        json.add("data", data);
+        return gson.toJson(json);
+    }
+}
@@ -0,0 +1,429 @@
+package com.accessauth.collection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Predicate;
+
+/**
+ * Concurrent hash map from primitive long keys to object values. Entries live in
+ * flat key and value arrays (open addressing, linear probing), so a mapping costs
+ * one long and one reference of table space: no boxed key and no node object.
+ *
+ * The table is split into segments. Writes lock one segment; reads are optimistic
+ * and take the segment's read lock only when they raced with a write to it.
+ * Null values are not supported.
+ */
+public class ConcurrentLongHashMap<V> {
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final int MIN_SEGMENT_CAPACITY = 16;
+    private static final int MAX_SEGMENT_CAPACITY = 1 << 30;
+
+    private final Segment<V>[] segments;
+    private final int segmentMask;
+
+    public ConcurrentLongHashMap() {
+        this(256, 16);
+    }
+
+    /**
+     * @param expectedSize mappings the map should hold without resizing
+     * @param concurrencyLevel number of segments, rounded up to a power of two
+     */
+    public ConcurrentLongHashMap(int expectedSize, int concurrencyLevel) {
+        if (expectedSize < 0 || concurrencyLevel <= 0 || concurrencyLevel > 1 << 16) {
+            throw new IllegalArgumentException("Require expectedSize >= 0 and 0 < concurrencyLevel <= 65536");
+        }
+        int segmentCount = powerOfTwoAtLeast(concurrencyLevel);
+        int perSegment = (int) Math.min(MAX_SEGMENT_CAPACITY,
+                (long) Math.ceil((double) expectedSize / segmentCount / LOAD_FACTOR));
+        int capacity = Math.max(MIN_SEGMENT_CAPACITY, powerOfTwoAtLeast(perSegment));
+        @SuppressWarnings("unchecked")
+        Segment<V>[] segments = (Segment<V>[]) new Segment<?>[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>(capacity);
+        }
+        this.segments = segments;
+        this.segmentMask = segmentCount - 1;
+    }
+
+    /**
+     * @return the value mapped to key, or null
+     */
+    public V get(long key) {
+        long hash = hash(key);
+        return segmentFor(hash).get(key, (int) hash);
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return the previous value, or null
+     */
+    public V put(long key, V value) {
+        checkValue(value);
+        long hash = hash(key);
+        return segmentFor(hash).put(key, (int) hash, value, false);
+    }
+
+    /**
+     * @return the current value if key was mapped (and is left unchanged), else null
+     */
+    public V putIfAbsent(long key, V value) {
+        checkValue(value);
+        long hash = hash(key);
+        return segmentFor(hash).put(key, (int) hash, value, true);
+    }
+
+    /**
+     * @return the removed value, or null
+     */
+    public V remove(long key) {
+        long hash = hash(key);
+        return segmentFor(hash).remove(key, (int) hash, null);
+    }
+
+    /**
+     * Remove key only while it maps to a value equal to the given one
+     * @return true if the mapping was removed
+     */
+    public boolean remove(long key, V value) {
+        checkValue(value);
+        long hash = hash(key);
+        return segmentFor(hash).remove(key, (int) hash, value) != null;
+    }
+
+    /**
+     * Remove every mapping whose value matches, one segment at a time
+     * @return number of mappings removed
+     */
+    public int removeIf(Predicate<? super V> filter) {
+        int removed = 0;
+        for (Segment<V> segment : segments) {
+            removed += segment.removeIf(filter);
+        }
+        return removed;
+    }
+
+    public int size() {
+        long size = 0;
+        for (Segment<V> segment : segments) {
+            size += segment.size;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, size);
+    }
+
+    public boolean isEmpty() {
+        for (Segment<V> segment : segments) {
+            if (segment.size != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Segments shrink back to their initial capacity
+    public void clear() {
+        for (Segment<V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Copy of the current values, consistent per segment only
+     */
+    public List<V> values() {
+        List<V> values = new ArrayList<>(size());
+        for (Segment<V> segment : segments) {
+            segment.copyValues(values);
+        }
+        return values;
+    }
+
+    /**
+     * Copy a few keys found from a random table position, e.g. to pick an
+     * eviction victim among them
+     * @param into receives up to into.length keys
+     * @return number of keys copied
+     */
+    public int sampleKeys(long[] into) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(segments.length);
+        int count = 0;
+        for (int i = 0; i < segments.length && count < into.length; i++) {
+            count = segments[(first + i) & segmentMask].sampleKeys(into, count, random.nextInt());
+        }
+        return count;
+    }
+
+    private Segment<V> segmentFor(long hash) {
+        return segments[(int) (hash >>> 32) & segmentMask];
+    }
+
+    private static void checkValue(Object value) {
+        if (value == null) {
+            throw new NullPointerException("Null values are not supported");
+        }
+    }
+
+    // SplitMix64 finalizer: high bits pick the segment, low bits the slot
+    private static long hash(long key) {
+        long z = key + 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static int powerOfTwoAtLeast(int n) {
+        int power = Integer.highestOneBit(Math.max(1, n));
+        return power < n ? power << 1 : power;
+    }
+
+    // Key and value arrays of a segment, always swapped together
+    private static final class Table {
+        final long[] keys;
+        // A null value marks a free slot, so any long can be a key
+        final Object[] values;
+
+        Table(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new Object[capacity];
+        }
+    }
+
+    private static final class Segment<V> {
+        private final StampedLock lock = new StampedLock();
+        private final int initialCapacity;
+        private volatile Table table;
+        private volatile int size;
+        private int resizeThreshold;
+
+        Segment(int capacity) {
+            this.initialCapacity = capacity;
+            this.table = new Table(capacity);
+            this.resizeThreshold = threshold(capacity);
+        }
+
+        V get(long key, int hash) {
+            long stamp = lock.tryOptimisticRead();
+            Object value = find(table, key, hash);
+            if (!lock.validate(stamp)) {
+                // A write ran meanwhile; what was read may be torn
+                stamp = lock.readLock();
+                try {
+                    value = find(table, key, hash);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return cast(value);
+        }
+
+        private static Object find(Table table, long key, int hash) {
+            long[] keys = table.keys;
+            Object[] values = table.values;
+            int mask = keys.length - 1;
+            int index = hash & mask;
+            // Bounded, since a racing write can leave an optimistic reader without a free slot to stop at
+            for (int probes = 0; probes <= mask; probes++) {
+                Object value = values[index];
+                if (value == null) {
+                    return null;
+                }
+                if (keys[index] == key) {
+                    return value;
+                }
+                index = (index + 1) & mask;
+            }
+            return null;
+        }
+
+        V put(long key, int hash, V value, boolean onlyIfAbsent) {
+            long stamp = lock.writeLock();
+            try {
+                Table current = table;
+                long[] keys = current.keys;
+                Object[] values = current.values;
+                int mask = keys.length - 1;
+                int index = hash & mask;
+                while (true) {
+                    Object existing = values[index];
+                    if (existing == null) {
+                        keys[index] = key;
+                        values[index] = value;
+                        size++;
+                        if (size > resizeThreshold) {
+                            resize(keys.length << 1);
+                        }
+                        return null;
+                    }
+                    if (keys[index] == key) {
+                        if (!onlyIfAbsent) {
+                            values[index] = value;
+                        }
+                        return cast(existing);
+                    }
+                    index = (index + 1) & mask;
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        // expected == null removes whatever key maps to
+        V remove(long key, int hash, Object expected) {
+            long stamp = lock.writeLock();
+            try {
+                Table current = table;
+                long[] keys = current.keys;
+                Object[] values = current.values;
+                int mask = keys.length - 1;
+                int index = hash & mask;
+                while (true) {
+                    Object existing = values[index];
+                    if (existing == null) {
+                        return null;
+                    }
+                    if (keys[index] == key) {
+                        if (expected != null && !expected.equals(existing)) {
+                            return null;
+                        }
+                        deleteAt(keys, values, index);
+                        size--;
+                        return cast(existing);
+                    }
+                    index = (index + 1) & mask;
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        int removeIf(Predicate<? super V> filter) {
+            if (size == 0) {
+                return 0;
+            }
+            long stamp = lock.writeLock();
+            try {
+                long[] keys = table.keys;
+                Object[] values = table.values;
+                int removed = 0;
+                int index = 0;
+                while (index < keys.length) {
+                    Object value = values[index];
+                    if (value != null && filter.test(cast(value))) {
+                        // Stay on this slot: deletion may have shifted a later entry into it
+                        deleteAt(keys, values, index);
+                        size--;
+                        removed++;
+                    } else {
+                        index++;
+                    }
+                }
+                return removed;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        // Backward-shift deletion: later entries of the probe run move into the gap, so no tombstones
+        private static void deleteAt(long[] keys, Object[] values, int gap) {
+            int mask = keys.length - 1;
+            int index = gap;
+            while (true) {
+                index = (index + 1) & mask;
+                Object value = values[index];
+                if (value == null) {
+                    break;
+                }
+                int home = (int) hash(keys[index]) & mask;
+                // Movable if its home slot is not between the gap and its current slot
+                if (((index - home) & mask) >= ((index - gap) & mask)) {
+                    keys[gap] = keys[index];
+                    values[gap] = value;
+                    gap = index;
+                }
+            }
+            values[gap] = null;
+        }
+
+        private void resize(int capacity) {
+            if (capacity > MAX_SEGMENT_CAPACITY) {
+                throw new IllegalStateException("ConcurrentLongHashMap segment is full");
+            }
+            Table old = table;
+            Table resized = new Table(capacity);
+            int mask = capacity - 1;
+            for (int i = 0; i < old.keys.length; i++) {
+                Object value = old.values[i];
+                if (value != null) {
+                    long key = old.keys[i];
+                    int index = (int) hash(key) & mask;
+                    while (resized.values[index] != null) {
+                        index = (index + 1) & mask;
+                    }
+                    resized.keys[index] = key;
+                    resized.values[index] = value;
+                }
+            }
+            table = resized;
+            resizeThreshold = threshold(capacity);
+        }
+
+        void clear() {
+            long stamp = lock.writeLock();
+            try {
+                table = new Table(initialCapacity);
+                resizeThreshold = threshold(initialCapacity);
+                size = 0;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        void copyValues(List<V> into) {
+            long stamp = lock.readLock();
+            try {
+                for (Object value : table.values) {
+                    if (value != null) {
+                        into.add(cast(value));
+                    }
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        int sampleKeys(long[] into, int count, int start) {
+            if (size == 0) {
+                return count;
+            }
+            long stamp = lock.readLock();
+            try {
+                Table current = table;
+                int mask = current.keys.length - 1;
+                for (int i = 0; i <= mask && count < into.length; i++) {
+                    int index = (start + i) & mask;
+                    if (current.values[index] != null) {
+                        into[count++] = current.keys[index];
+                    }
+                }
+                return count;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private static int threshold(int capacity) {
+            return (int) (capacity * LOAD_FACTOR);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <V> V cast(Object value) {
+            return (V) value;
+        }
+    }
+}
@@ -1,44 +1,130 @@
 package com.accessauth.controller;
 
 import com.google.gson.*;
+import com.accessauth.service.ChallengeCodec;
 import com.accessauth.service.UserService;
 import com.accessauth.service.CryptoService;
+import com.accessauth.service.ChallengePool;
+import com.accessauth.service.ActiveUserFilter;
+import com.accessauth.service.CredentialSnapshot;
+import com.accessauth.service.UserChangeListener;
+import com.accessauth.datasource.ReplicaRoutingDataSource;
+import com.accessauth.log.EventLog;
+import com.accessauth.log.EventLog.Level;
+import com.accessauth.metrics.ProtocolMetrics;
+import com.accessauth.metrics.ProtocolMetrics.Outcome;
+import com.accessauth.metrics.ProtocolMetrics.Step;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import java.util.concurrent.*;
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.nio.charset.StandardCharsets;
 
 import com.accessauth.socket.*;
+import com.accessauth.timer.HashedWheelTimer;
 
 @Component
 public class AccessAuthorizationController {
     private SecureSocketServer server;
-    private SecureSocket currentClient;
+    private NioSecureSocketServer nioServer;
     
-    // Simple single-client state
-    private String currentChallenge;
-    private String currentSymmetricKey;
-    private String currentUserId;
-    private String serverState;
-    private ScheduledFuture<?> timeoutTask;
+    private HashedWheelTimer timeoutTimer;
+    private ExecutorService timeoutExecutor;
     
-    private final ScheduledExecutorService timeoutExecutor = Executors.newScheduledThreadPool(1);
+    private TlsContext tlsContext;
+    
+    @Autowired
+    private SessionRegistry sessionRegistry;
     
     @Autowired
     private UserService userService;
     
     @Autowired
     private CryptoService cryptoService;
+    
+    @Autowired
+    private ChallengePool challengePool;
+
+    @Autowired
+    private ActiveUserFilter activeUserFilter;
+
+    @Autowired
+    private CredentialSnapshot credentialSnapshot;
+
+    @Autowired
+    private UserChangeListener userChangeListener;
+
+    // Only present when read replicas are configured
+    @Autowired(required = false)
+    private ReplicaRoutingDataSource replicaRouting;
+
+    @Autowired
+    private ProtocolMetrics metrics;
+
+    @Autowired
+    private EventLog eventLog;
 
     @Value("${protocol.server.port:12345}")
     private int serverPort;
 
-    private static final long PROTOCOL_TIMEOUT = 8000; // 8 seconds
+    // "platform" runs connections on pooled platform threads, "virtual" on a virtual thread each (Java 21 runtime)
+    @Value("${protocol.server.threads:platform}")
+    private String connectionThreads;
+
+    @Value("${protocol.server.max-connections:10000}")
+    private int maxConnections;
+
+    // "blocking" uses one SSLSocket read loop per connection, "nio" multiplexes connections over SSLEngine event loops
+    @Value("${protocol.server.transport:blocking}")
+    private String transport;
+
+    @Value("${protocol.server.nio.event-loops:2}")
+    private int nioEventLoops;
+
+    // A client that stops reading is disconnected once this many reply bytes are queued for it
+    @Value("${protocol.server.nio.max-queued-bytes:1048576}")
+    private long nioMaxQueuedBytes;
+
+    // TLS session resumption for readers that reconnect often
+    @Value("${protocol.tls.session-cache-size:20000}")
+    private int tlsSessionCacheSize;
+
+    @Value("${protocol.tls.session-timeout-seconds:3600}")
+    private int tlsSessionTimeout;
+
+    // Tagged (request_id) authentications one connection may have open at once
+    @Value("${protocol.multiplex.max-in-flight:64}")
+    private int maxInFlight;
+
+    // Most users one auth_batch may cover
+    @Value("${protocol.batch.max-size:256}")
+    private int maxBatchSize;
+
+    // Per-step timeout: how long a client has to answer a challenge
+    @Value("${protocol.timeout.challenge-response-ms:8000}")
+    private long challengeResponseTimeout;
+
+    // Per-session timeout: close connections idle for this long (0 keeps them open)
+    @Value("${protocol.timeout.session-idle-ms:0}")
+    private long sessionIdleTimeout;
+
+    @Value("${protocol.timeout.tick-ms:100}")
+    private long timerTickMillis;
+
+    @Value("${protocol.timeout.wheel-size:512}")
+    private int timerWheelSize;
+
+    
+    private static final String TRANSPORT_NIO = "nio";
     
     // Protocol step constants
     private static final String AUTH_REQUEST = "auth_request";
@@ -47,341 +133,696 @@ public class AccessAuthorizationController {
     private static final String STEP_AUTH_SUCCESS = "auth_success";
     private static final String STEP_AUTH_ERROR = "auth_error";
     private static final String STEP_TIMEOUT = "timeout";
+    private static final String AUTH_BATCH = "auth_batch";
+    private static final String STEP_CHALLENGE_BATCH = "challenge_batch";
+    private static final String CHALLENGE_RESPONSE_BATCH = "challenge_response_batch";
+    private static final String STEP_AUTH_BATCH_RESULT = "auth_batch_result";
     
     /**
-     * Convert string to hexadecimal representation
-     * @param input the input string
+     * Encode raw ciphertext in the JSON wire form, hex(Base64(ciphertext))
+     * @param ciphertext the encrypted challenge
      * @return hexadecimal string
      */
-    private String stringToHex(String input) {
-        if (input == null) return null;
-        
-        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
-        StringBuilder hexString = new StringBuilder();
-        for (byte b : bytes) {
-            String hex = Integer.toHexString(0xff & b);
-            if (hex.length() == 1) {
-                hexString.append('0');
-            }
-            hexString.append(hex);
-        }
-        return hexString.toString();
+    private String toWireHex(byte[] ciphertext) {
+        int base64Length = ChallengeCodec.base64Length(ciphertext.length);
+        byte[] hex = new byte[ChallengeCodec.hexLength(base64Length)];
+        // Base64 goes into the upper half, hex encoding then fills the array from the front;
+        // each Base64 byte is read before its slot is overwritten
+        ChallengeCodec.encodeBase64(ciphertext, 0, ciphertext.length, hex, base64Length);
+        ChallengeCodec.encodeHex(hex, base64Length, base64Length, hex, 0);
+        return new String(hex, StandardCharsets.US_ASCII);
     }
-    
-    /**
-     * Convert hexadecimal string back to regular string
-     * @param hexInput the hexadecimal input string
-     * @return decoded string
-     */
-    private String hexToString(String hexInput) {
-        if (hexInput == null || hexInput.length() % 2 != 0) {
-            throw new IllegalArgumentException("Invalid hexadecimal string");
-        }
-        
-        byte[] bytes = new byte[hexInput.length() / 2];
-        for (int i = 0; i < hexInput.length(); i += 2) {
-            String hex = hexInput.substring(i, i + 2);
-            bytes[i / 2] = (byte) Integer.parseInt(hex, 16);
-        }
-        return new String(bytes, StandardCharsets.UTF_8);
+
+    @PostConstruct
+    public void initTimer() {
+        // Timeout tasks lock their session and write to its socket, so they run off the wheel's thread
+        this.timeoutExecutor = ConnectionThreads.create(connectionThreads, maxConnections);
+        this.timeoutTimer = new HashedWheelTimer("protocol-timeouts", timerTickMillis, TimeUnit.MILLISECONDS,
+                timerWheelSize, timeoutExecutor);
     }
 
     @EventListener(ApplicationReadyEvent.class)  
     public void startServer() {
+        try {
+            // One TLS context for the whole server: the keystore is loaded once and sessions are shared
+            this.tlsContext = new TlsContext("src/main/resources/keystore.jks", "password",
+                    tlsSessionCacheSize, tlsSessionTimeout);
+        } catch (Exception e) {
+            System.err.println("[Server] Error loading TLS context: " + e.getMessage());
+            return;
+        }
+        tlsContext.setHandshakeListener(nanos -> metrics.recordNanos(Step.TLS_HANDSHAKE, nanos));
+        metrics.registerGauge("sessions_active", sessionRegistry::size);
+        metrics.registerGauge("tls_handshakes_full_total", tlsContext::getFullHandshakes);
+        metrics.registerGauge("tls_handshakes_resumed_total", tlsContext::getResumedHandshakes);
+        metrics.registerGauge("challenge_pool_size", challengePool::getSize);
+        metrics.registerGauge("challenge_pool_served_total", challengePool::getServedCount);
+        metrics.registerGauge("challenge_pool_exhausted_total", challengePool::getExhaustedCount);
+        metrics.registerGauge("challenge_pool_generated_total", challengePool::getGeneratedCount);
+        metrics.registerGauge("credentials_filter_rejected_total", activeUserFilter::getRejected);
+        metrics.registerGauge("credentials_snapshot_keys", credentialSnapshot::size);
+        metrics.registerGauge("credentials_snapshot_version", credentialSnapshot::getVersion);
+        metrics.registerGauge("user_changes_applied_total", userChangeListener::getApplied);
+        metrics.registerGauge("user_changes_connected", () -> userChangeListener.isConnected() ? 1 : 0);
+        if (replicaRouting != null) {
+            metrics.registerGauge("db_replicas_usable", replicaRouting::getUsableReplicas);
+            metrics.registerGauge("db_replica_connections_total", replicaRouting::getReplicaConnections);
+            metrics.registerGauge("db_replica_primary_fallbacks_total", replicaRouting::getPrimaryFallbacks);
+        }
+        metrics.registerGauge("log_events_dropped_total", eventLog::getDropped);
+        metrics.registerGauge("log_events_sampled_out_total", eventLog::getSampledOut);
+        if (TRANSPORT_NIO.equalsIgnoreCase(transport)) {
+            startNioServer();
+            return;
+        }
         new Thread(() -> {
             try {
-                this.server = new SecureSocketServer(serverPort, "src/main/resources/keystore.jks", "password");
+                this.server = new SecureSocketServer(serverPort, tlsContext,
+                        ConnectionThreads.create(connectionThreads, maxConnections), maxConnections);
                 server.start();
-                System.out.println("[Server] Protocol server started on port " + serverPort);
+                System.out.println("[Server] Protocol server started on port " + serverPort
+                        + " (" + connectionThreads + " connection threads, max " + maxConnections + " connections)");
 
                 while (server.isRunning()) {
                     SecureSocket clientSocket = server.acceptConnection();
-                    System.out.println("[Server] New client connected");
                     handleClient(clientSocket);
                 }
             } catch (Exception e) {
-                System.err.println("[Server] Error: " + e.getMessage());
+                if (server == null || server.isRunning()) {
+                    System.err.println("[Server] Error: " + e.getMessage());
+                }
             }
-        }).start();
+        }, "protocol-acceptor").start();
+    }
+
+    /**
+     * Start the non-blocking transport; event loops do the TLS work and
+     * protocol handling runs on the connection executor
+     */
+    private void startNioServer() {
+        try {
+            this.nioServer = new NioSecureSocketServer(serverPort, tlsContext, nioEventLoops,
+                    ConnectionThreads.create(connectionThreads, maxConnections), maxConnections);
+            nioServer.setMaxQueuedBytes(nioMaxQueuedBytes);
+            nioServer.start(this::handleClient);
+            System.out.println("[Server] Protocol server started on port " + serverPort
+                    + " (nio transport, " + nioEventLoops + " event loops, max " + maxConnections + " connections)");
+        } catch (Exception e) {
+            System.err.println("[Server] Error: " + e.getMessage());
+        }
     }
 
-    private void handleClient(SecureSocket clientSocket) {
-        // Set current client and reset state
-        this.currentClient = clientSocket;
-        resetState();
+    // Package-private so in-process benchmarks can attach a connection without a socket
+    void handleClient(ProtocolConnection clientSocket) {
+        // Each connection gets its own isolated session
+        AuthSession session = sessionRegistry.open(clientSocket);
         
-        System.out.println("[Server] Client connected, state reset");
+        logEvent(Level.DEBUG, "session_opened", session, null, null, null);
         
-        // Start listening for incoming messages
-        clientSocket.startJsonListening(message -> {
+        if (sessionIdleTimeout > 0) {
+            armIdleTimeout(session, sessionIdleTimeout);
+        }
+        
+        // Start listening for incoming messages; JSON and binary frames both arrive as ProtocolMessage
+        clientSocket.setMaxBatchSize(maxBatchSize);
+        // Transport errors are logged with the session; a failing handler is ours, the rest the client's
+        clientSocket.setErrorListener((event, detail) -> logEvent(
+                "handler_failed".equals(event) ? Level.ERROR : Level.WARN, event, session, null, null, detail));
+        clientSocket.startListening(message -> {
+            session.touch();
+            synchronized (session) {
+                String requestId = message.getRequestId();
+                try {
+                    handleIncomingMessage(session, message);
+                } catch (Exception e) {
+                    logEvent(Level.ERROR, "message_failed", session, requestId, null, e.toString());
+                    sendProtocolMessage(session, requestId, STEP_AUTH_ERROR, "Message processing failed", null);
+                    endAttempt(session, session.getAttempt(requestId));
+                }
+            }
+        }, () -> closeSession(session));
+    }
+    
+    /**
+     * Release a session once its client disconnects
+     * @param session the session to close
+     */
+    private void closeSession(AuthSession session) {
+        session.cancelIdleTimeout();
+        synchronized (session) {
+            session.reset();
+        }
+        if (sessionRegistry.close(session)) {
             try {
-                handleIncomingMessage(message);
-            } catch (Exception e) {
-                System.err.println("[Server] Error handling message: " + e.getMessage());
-                sendProtocolMessage(STEP_AUTH_ERROR, "Message processing failed", null);
-                resetState();
+                session.getClient().close();
+            } catch (IOException e) {
+                logEvent(Level.WARN, "session_close_failed", session, null, null, e.toString());
             }
-        });
+            logEvent(Level.DEBUG, "session_closed", session, null, null, null);
+        }
     }
     
     /**
-     * Reset all state variables
+     * Reset the state of one authentication attempt; a tagged attempt is also
+     * removed from the session, freeing its request id
+     * @param session the session the attempt belongs to
+     * @param attempt the attempt to reset (may be null)
      */
-    private void resetState() {
-        currentChallenge = null;
-        currentSymmetricKey = null;
-        currentUserId = null;
-        serverState = null;
-        
-        // Cancel any existing timeout
-        if (timeoutTask != null && !timeoutTask.isDone()) {
-            timeoutTask.cancel(true);
+    private void endAttempt(AuthSession session, AuthAttempt attempt) {
+        if (attempt == null) {
+            return;
         }
+        session.endAttempt(attempt);
         
-        System.out.println("[Server] State reset");
+        logEvent(Level.DEBUG, "attempt_reset", session, attempt.getRequestId(), null, null);
     }
 
     /**
-     * Handle incoming JSON messages from client based on protocol step type
-     * @param message the received JSON message
+     * Handle incoming messages from client based on protocol step type
+     * @param session the session the message belongs to
+     * @param message the received message, JSON or binary
      */
-    private void handleIncomingMessage(JsonObject message) {
-        // Cancel any existing timeout task
-        if (timeoutTask != null && !timeoutTask.isDone()) {
-            timeoutTask.cancel(true);
-        }
+    private void handleIncomingMessage(AuthSession session, ProtocolMessage message) {
+        String requestId = message.getRequestId();
         
-        System.out.println("[Server] Received message: " + message.toString());
+        // The attempt's timeout keeps running until a handler acts on the attempt: re-arming or
+        // ending it cancels the timeout, so a message rejected before that cannot leave it untimed.
+        // A timeout due meanwhile waits for the session lock and then sees it was superseded.
         
         // Check if message contains "type" field for protocol step
-        if (!message.has("type") || message.get("type").isJsonNull()) {
-            System.out.println("[Server] Received message without protocol type field");
-            sendProtocolMessage(STEP_AUTH_ERROR, "Invalid message format - missing protocol type", null);
+        if (message.getType() == null) {
+            logEvent(Level.WARN, "malformed_message", session, requestId, null, "missing protocol type");
+            metrics.increment(Outcome.MALFORMED_MESSAGE);
+            sendProtocolMessage(session, requestId, STEP_AUTH_ERROR, "Invalid message format - missing protocol type", null);
             return;
         }
         
-        String protocolStep = message.get("type").getAsString();
-        System.out.println("[Server] Processing protocol step: " + protocolStep);
+        String protocolStep = message.getType();
+        logEvent(Level.DEBUG, "message_received", session, requestId, message.getUserId(), protocolStep);
         
         switch (protocolStep) {
             case AUTH_REQUEST:
-                handleAuthRequest(message);
+                handleAuthRequest(session, message);
                 break;
             case CHALLENGE_RESPONSE:
-                handleChallengeResponse(message);
+                handleChallengeResponse(session, message);
+                break;
+            case AUTH_BATCH:
+                handleAuthBatch(session, message);
+                break;
+            case CHALLENGE_RESPONSE_BATCH:
+                handleChallengeResponseBatch(session, message);
                 break;
             default:
-                System.out.println("[Server] Unknown protocol step: " + protocolStep);
-                sendProtocolMessage(STEP_AUTH_ERROR, "Unknown protocol step: " + protocolStep, null);
+                logEvent(Level.WARN, "malformed_message", session, requestId, null, "unknown protocol step");
+                metrics.increment(Outcome.MALFORMED_MESSAGE);
+                sendProtocolMessage(session, requestId, STEP_AUTH_ERROR, "Unknown protocol step: " + protocolStep, null);
                 break;
         }
     }
 
     /**
      * Handle authentication request (Step 1 of protocol)
-     * Expected message format: {"type": "auth_request", "user_id": "123"}
+     * Expected message format: {"type": "auth_request", "user_id": "123"}, optionally
+     * with a "request_id" that is echoed in every reply for this authentication
+     * @param session the session the request belongs to
      * @param message the authentication request message
      */
-    private void handleAuthRequest(JsonObject message) {
+    private void handleAuthRequest(AuthSession session, ProtocolMessage message) {
+        String requestId = message.getRequestId();
+        
+        if (rejectOverInFlightLimit(session, requestId)) {
+            return;
+        }
+        // A repeated request id restarts that attempt, like a new auth_request on a plain connection
+        AuthAttempt attempt = session.beginAttempt(requestId);
+        
+        // Check if user_id is provided
+        if (message.getUserId() == null) {
+            logEvent(Level.WARN, "malformed_message", session, requestId, null, "auth_request without user_id");
+            metrics.increment(Outcome.MALFORMED_MESSAGE);
+            sendProtocolMessage(session, requestId, STEP_AUTH_ERROR, "Missing user_id in auth_request", null);
+            endAttempt(session, attempt);
+            return;
+        }
+        processAuthRequest(session, attempt, message.getUserId());
+    }
+
+    /**
+     * Bound the number of concurrent authentications one connection may hold open
+     * @param session the session the request belongs to
+     * @param requestId correlation id of the request, or null
+     * @return true if the request was rejected
+     */
+    private boolean rejectOverInFlightLimit(AuthSession session, String requestId) {
+        if (requestId != null && session.getAttempt(requestId) == null
+                && session.getTaggedAttemptCount() >= maxInFlight) {
+            logEvent(Level.WARN, "too_many_in_flight", session, requestId, null, null);
+            sendProtocolMessage(session, requestId, STEP_AUTH_ERROR, "Too many requests in flight", null);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Look up the user and send an encrypted challenge, independent of the wire format
+     * @param session the session the request belongs to
+     * @param attempt the authentication attempt
+     * @param userId the requested user id
+     */
+    private void processAuthRequest(AuthSession session, AuthAttempt attempt, String userId) {
+        String requestId = attempt.getRequestId();
+        long startNanos = System.nanoTime();
         try {
-            // Check if user_id is provided
-            if (!message.has("user_id") || message.get("user_id").isJsonNull()) {
-                System.out.println("[Server] Auth request missing user_id");
-                sendProtocolMessage(STEP_AUTH_ERROR, "Missing user_id in auth_request", null);
-                resetState();
-                return;
-            }
-            
-            String userId = message.get("user_id").getAsString();
-            System.out.println("[Server] Processing auth_request for user: " + userId);
-            
             // Update state
-            serverState = "ID_VERIFICATION";
-            currentUserId = userId;
+            attempt.clearChallenge();
+            attempt.setState("ID_VERIFICATION");
+            attempt.setUserId(userId);
 
-            Long userIdLong;
+            long userIdLong;
             try {
                 userIdLong = Long.parseLong(userId);
             } catch (NumberFormatException e) {
-                System.out.println("[Server] Invalid user ID format: " + userId);
-                sendProtocolMessage(STEP_AUTH_ERROR, "Invalid user ID format", null);
-                resetState();
+                logEvent(Level.WARN, "malformed_message", session, requestId, null, "invalid user id format");
+                metrics.increment(Outcome.MALFORMED_MESSAGE);
+                sendProtocolMessage(session, requestId, STEP_AUTH_ERROR, "Invalid user ID format", null);
+                endAttempt(session, attempt);
                 return;
             }
 
-            // Check if user exists in database
-            if (!userService.userExists(userIdLong)) {
-                System.out.println("[Server] Auth request failed - user not found: " + userIdLong);
-                sendProtocolMessage(STEP_AUTH_ERROR, "User not found or inactive", null);
-                resetState();
-                return;
-            }
+            attempt.setUserIdValue(userIdLong);
 
-            // Retrieve symmetric key for user
-            Optional<String> symKeyOpt = userService.getSymmetricKey(userIdLong);
+            // Retrieve symmetric key of the active user (single lookup, cached)
+            long lookupNanos = System.nanoTime();
+            Optional<String> symKeyOpt = userService.getActiveSymmetricKey(userIdLong);
+            metrics.recordSince(Step.KEY_LOOKUP, lookupNanos);
             if (!symKeyOpt.isPresent()) {
-                System.out.println("[Server] Auth request failed - symmetric key not found for user: " + userIdLong);
-                sendProtocolMessage(STEP_AUTH_ERROR, "User authentication data not available", null);
-                resetState();
+                logEvent(Level.INFO, "auth_rejected", session, requestId, userId, "user not found or inactive");
+                metrics.increment(Outcome.UNKNOWN_USER);
+                sendProtocolMessage(session, requestId, STEP_AUTH_ERROR, "User not found or inactive", null);
+                endAttempt(session, attempt);
                 return;
             }
 
-            currentSymmetricKey = symKeyOpt.get();
-            System.out.println("[Server] Retrieved symmetric key for user: " + userId);
+            attempt.setSymmetricKey(symKeyOpt.get());
 
-            // Generate challenge
-            currentChallenge = cryptoService.generateChallenge();
-            System.out.println("[Server] Generated challenge for user: " + userId);
+            // Take a pre-generated challenge
+            attempt.setChallenge(challengePool.take());
 
             // Encrypt challenge with user's symmetric key
             try {
-                String encryptedChallenge = cryptoService.encryptChallenge(currentChallenge, currentSymmetricKey);
-                
-                // Convert encrypted challenge to hexadecimal
-                String hexEncryptedChallenge = stringToHex(encryptedChallenge);
-                
-                // Send challenge (Step 2 of protocol)
-                JsonObject challengeData = new JsonObject();
-                challengeData.addProperty("challenge", hexEncryptedChallenge);
-                sendProtocolMessage(STEP_CHALLENGE, "Challenge generated", challengeData);
+                long encryptNanos = System.nanoTime();
+                byte[] encryptedChallenge = cryptoService.encryptChallenge(userIdLong, attempt.getChallenge(), attempt.getSymmetricKey());
+                metrics.recordSince(Step.CHALLENGE_ENCRYPTION, encryptNanos);
                 
-                System.out.println("[Server] Sent encrypted challenge (hex) to user: " + userId);
+                if (isBinary(session)) {
+                    // Send challenge (Step 2 of protocol) as raw ciphertext
+                    session.getClient().sendFrame(BinaryFrame.challenge(encryptedChallenge));
+                } else {
+                    // Convert encrypted challenge to hexadecimal
+                    String hexEncryptedChallenge = toWireHex(encryptedChallenge);
+                    
+                    // Send challenge (Step 2 of protocol)
+                    JsonObject challengeData = new JsonObject();
+                    challengeData.addProperty("challenge", hexEncryptedChallenge);
+                    sendProtocolMessage(session, requestId, STEP_CHALLENGE, "Challenge generated", challengeData);
+                }
+                logEvent(Level.DEBUG, "challenge_sent", session, requestId, userId, null);
                 
                 // Set up timeout for challenge response
-                serverState = "WAITING_CHALLENGE_RESPONSE";
-                startTimeout("challenge response");
+                attempt.setState("WAITING_CHALLENGE_RESPONSE");
+                attempt.setChallengeSentNanos(System.nanoTime());
+                metrics.recordSince(Step.AUTH_REQUEST, startNanos);
+                startTimeout(session, attempt, "challenge response");
                 
             } catch (Exception e) {
-                System.err.println("[Server] Auth request failed - encryption error for user " + userId + ": " + e.getMessage());
-                sendProtocolMessage(STEP_AUTH_ERROR, "Challenge encryption failed", null);
-                resetState();
+                logEvent(Level.ERROR, "challenge_encryption_failed", session, requestId, userId, e.toString());
+                sendProtocolMessage(session, requestId, STEP_AUTH_ERROR, "Challenge encryption failed", null);
+                endAttempt(session, attempt);
             }
 
         } catch (Exception e) {
-            System.err.println("[Server] Auth request error for user " + currentUserId + ": " + e.getMessage());
-            sendProtocolMessage(STEP_AUTH_ERROR, "Auth request processing failed", null);
-            resetState();
+            logEvent(Level.ERROR, "auth_request_failed", session, requestId, attempt.getUserId(), e.toString());
+            sendProtocolMessage(session, requestId, STEP_AUTH_ERROR, "Auth request processing failed", null);
+            endAttempt(session, attempt);
         }
     }
     
     /**
      * Handle challenge response (Step 3 of protocol)
-     * Expected message format: {"type": "challenge_response", "response": "encrypted_response"}
+     * Expected message format: {"type": "challenge_response", "response": "encrypted_response"},
+     * with the "request_id" of the auth_request it answers if that one had one
+     * @param session the session the response belongs to
      * @param message the response message
      */
-    private void handleChallengeResponse(JsonObject message) {
-        if (!"WAITING_CHALLENGE_RESPONSE".equals(serverState)) {
-            System.err.println("[Server] Received challenge response in wrong state: " + serverState);
-            sendProtocolMessage(STEP_AUTH_ERROR, "Unexpected challenge response", null);
-            resetState();
+    private void handleChallengeResponse(AuthSession session, ProtocolMessage message) {
+        String requestId = message.getRequestId();
+        AuthAttempt attempt = session.getAttempt(requestId);
+        if (attempt == null) {
+            logEvent(Level.WARN, "unexpected_response", session, requestId, null, "no such request");
+            sendProtocolMessage(session, requestId, STEP_AUTH_ERROR, "Unexpected challenge response", null);
+            return;
+        }
+        
+        // Check if response is provided
+        if (!message.hasResponse()) {
+            logEvent(Level.WARN, "malformed_message", session, requestId, attempt.getUserId(), "challenge_response without response");
+            metrics.increment(Outcome.MALFORMED_MESSAGE);
+            sendProtocolMessage(session, requestId, STEP_AUTH_ERROR, "Missing response in challenge_response", null);
+            endAttempt(session, attempt);
+            return;
+        }
+        
+        // The decoder already turned hex(Base64) into raw ciphertext
+        if (message.isResponseMalformed()) {
+            logEvent(Level.WARN, "malformed_message", session, requestId, attempt.getUserId(), "response is not valid hex");
+            metrics.increment(Outcome.MALFORMED_MESSAGE);
+            sendProtocolMessage(session, requestId, STEP_AUTH_ERROR, "Invalid hexadecimal response format", null);
+            endAttempt(session, attempt);
+            return;
+        }
+        processChallengeResponse(session, attempt, message.getResponse(), 0, message.getResponseLength());
+    }
+
+    /**
+     * Verify a challenge response, independent of the wire format
+     * @param session the session the response belongs to
+     * @param attempt the authentication attempt being answered
+     * @param encryptedChallengeResponse buffer holding the raw encrypted response
+     * @param offset start of the response
+     * @param length response length
+     */
+    private void processChallengeResponse(AuthSession session, AuthAttempt attempt, byte[] encryptedChallengeResponse,
+                                          int offset, int length) {
+        String requestId = attempt.getRequestId();
+        if (!"WAITING_CHALLENGE_RESPONSE".equals(attempt.getState())) {
+            logEvent(Level.WARN, "unexpected_response", session, requestId, attempt.getUserId(), attempt.getState());
+            sendProtocolMessage(session, requestId, STEP_AUTH_ERROR, "Unexpected challenge response", null);
+            endAttempt(session, attempt);
             return;
         }
+        metrics.recordSince(Step.CLIENT_THINK_TIME, attempt.getChallengeSentNanos());
         
         try {
-            // Check if response is provided
-            if (!message.has("response") || message.get("response").isJsonNull()) {
-                System.out.println("[Server] Challenge response missing response field");
-                sendProtocolMessage(STEP_AUTH_ERROR, "Missing response in challenge_response", null);
-                resetState();
+            if (attempt.getChallenge() == null) {
+                logEvent(Level.WARN, "unexpected_response", session, requestId, attempt.getUserId(), "no stored challenge");
+                sendProtocolMessage(session, requestId, STEP_AUTH_ERROR, "Challenge verification failed - no stored challenge", null);
+                endAttempt(session, attempt);
                 return;
             }
             
-            String hexEncryptedChallengeResponse = message.get("response").getAsString();
-            System.out.println("[Server] Received challenge response (hex) from user: " + currentUserId);
-            
-            // Convert hex response back to encrypted string
-            String encryptedChallengeResponse;
+            // Decrypt the challenge response and compare it with the original challenge in constant time
+            boolean verified;
+            long verifyNanos = System.nanoTime();
             try {
-                encryptedChallengeResponse = hexToString(hexEncryptedChallengeResponse);
-                System.out.println("[Server] Successfully converted hex response to encrypted string for user: " + currentUserId);
+                verified = cryptoService.verifyChallengeResponse(attempt.getUserIdValue(), attempt.getChallenge(),
+                        encryptedChallengeResponse, offset, length, attempt.getSymmetricKey());
             } catch (Exception e) {
-                System.err.println("[Server] Failed to decode hex response for user: " + currentUserId + ": " + e.getMessage());
-                sendProtocolMessage(STEP_AUTH_ERROR, "Invalid hexadecimal response format", null);
-                resetState();
-                return;
-            }
-            
-            // Decrypt the challenge response using the stored symmetric key
-            String decryptedResponse;
-            try {
-                decryptedResponse = cryptoService.decryptChallenge(encryptedChallengeResponse, currentSymmetricKey);
-                System.out.println("[Server] Successfully decrypted challenge response for user: " + currentUserId);
-            } catch (Exception e) {
-                System.err.println("[Server] Failed to decrypt challenge response for user: " + currentUserId + ": " + e.getMessage());
-                sendProtocolMessage(STEP_AUTH_ERROR, "Challenge response decryption failed", null);
-                resetState();
-                return;
-            }
-            
-            // Compare the decrypted response with the original challenge
-            if (currentChallenge == null) {
-                System.err.println("[Server] No stored challenge found for user: " + currentUserId);
-                sendProtocolMessage(STEP_AUTH_ERROR, "Challenge verification failed - no stored challenge", null);
-                resetState();
+                logEvent(Level.INFO, "auth_rejected", session, requestId, attempt.getUserId(), "response decryption failed");
+                metrics.increment(Outcome.BAD_RESPONSE);
+                sendProtocolMessage(session, requestId, STEP_AUTH_ERROR, "Challenge response decryption failed", null);
+                endAttempt(session, attempt);
                 return;
             }
             
-            if (!currentChallenge.equals(decryptedResponse)) {
-                System.err.println("[Server] Challenge verification failed for user: " + currentUserId);
-                System.err.println("[Server] Expected: " + currentChallenge + ", Received: " + decryptedResponse);
-                sendProtocolMessage(STEP_AUTH_ERROR, "Challenge verification failed", null);
-                resetState();
+            metrics.recordSince(Step.VERIFICATION, verifyNanos);
+            if (!verified) {
+                logEvent(Level.INFO, "auth_rejected", session, requestId, attempt.getUserId(), "challenge verification failed");
+                metrics.increment(Outcome.BAD_RESPONSE);
+                sendProtocolMessage(session, requestId, STEP_AUTH_ERROR, "Challenge verification failed", null);
+                endAttempt(session, attempt);
                 return;
             }
             
             // Challenge verification successful (Step 4 of protocol)
-            System.out.println("[Server] Challenge response verified successfully for user: " + currentUserId);
-            serverState = "AUTHENTICATED";
+            metrics.increment(Outcome.SUCCESS);
+            attempt.setState("AUTHENTICATED");
             
             // Send success response
             JsonObject successData = new JsonObject();
-            successData.addProperty("user_id", currentUserId);
+            successData.addProperty("user_id", attempt.getUserId());
             successData.addProperty("timestamp", System.currentTimeMillis());
-            sendProtocolMessage(STEP_AUTH_SUCCESS, "Authentication successful", successData);
+            sendProtocolMessage(session, requestId, STEP_AUTH_SUCCESS, "Authentication successful", successData);
+            logEvent(Level.INFO, "auth_success", session, requestId, attempt.getUserId(), null);
             
-            System.out.println("[Server] Authentication completed successfully for user: " + currentUserId);
+            // Clear sensitive data; the challenge was answered, so its timeout must not fire
+            attempt.clearChallenge();
+            attempt.setSymmetricKey(null);
+            attempt.cancelTimeout();
             
-            // Clear sensitive data
-            currentChallenge = null;
-            currentSymmetricKey = null;
+            // A finished tagged attempt frees its request id for reuse
+            if (requestId != null) {
+                session.endAttempt(attempt);
+            }
             
         } catch (Exception e) {
-            System.err.println("[Server] Error processing challenge response: " + e.getMessage());
-            sendProtocolMessage(STEP_AUTH_ERROR, "Challenge response processing failed", null);
-            resetState();
+            logEvent(Level.ERROR, "challenge_response_failed", session, requestId, attempt.getUserId(), e.toString());
+            sendProtocolMessage(session, requestId, STEP_AUTH_ERROR, "Challenge response processing failed", null);
+            endAttempt(session, attempt);
         }
     }
     
     /**
-     * Start a timeout timer for the current operation
-     * @param operation description of the operation being timed
+     * Handle a batch authentication request from a gateway
+     * Expected message format: {"type": "auth_batch", "user_ids": ["1", "2", ...]}
+     * Replies with one "challenge_batch" whose data.challenges array holds the
+     * encrypted challenge of each user in request order, or null for users
+     * that are invalid, unknown or inactive
+     * @param session the session the request belongs to
+     * @param message the batch request message
      */
-    private void startTimeout(String operation) {
-        // Cancel any existing timeout
-        if (timeoutTask != null && !timeoutTask.isDone()) {
-            timeoutTask.cancel(true);
+    private void handleAuthBatch(AuthSession session, ProtocolMessage message) {
+        String requestId = message.getRequestId();
+        List<String> userIds = message.getUserIds();
+        if (userIds.isEmpty()) {
+            logEvent(Level.WARN, "malformed_message", session, requestId, null, "auth_batch without user_ids");
+            metrics.increment(Outcome.MALFORMED_MESSAGE);
+            sendProtocolMessage(session, requestId, STEP_AUTH_ERROR, "Missing user_ids in auth_batch", null);
+            return;
         }
-        
-        // Start new timeout
-        timeoutTask = timeoutExecutor.schedule(() -> {
-            System.out.println("[Server] Timeout waiting for " + operation + " from user: " + currentUserId);
-            sendProtocolMessage(STEP_TIMEOUT, "Timeout waiting for " + operation, null);
-            resetState();
-        }, PROTOCOL_TIMEOUT, TimeUnit.MILLISECONDS);
-        
-        System.out.println("[Server] Started " + PROTOCOL_TIMEOUT + "ms timeout for " + operation);
+        if (userIds.size() > maxBatchSize) {
+            logEvent(Level.WARN, "batch_too_large", session, requestId, null, null);
+            sendProtocolMessage(session, requestId, STEP_AUTH_ERROR,
+                    "Batch exceeds " + maxBatchSize + " users", null);
+            return;
+        }
+        if (rejectOverInFlightLimit(session, requestId)) {
+            return;
+        }
+        // A repeated request id restarts that batch
+        AuthBatch batch = session.beginBatch(requestId);
+        batch.init(userIds.size());
+        processAuthBatch(session, batch, userIds);
+    }
+
+    /**
+     * Resolve all keys of a batch with one lookup, then issue and encrypt the challenges
+     * @param session the session the request belongs to
+     * @param batch the new batch
+     * @param userIds the requested user ids, in order
+     */
+    private void processAuthBatch(AuthSession session, AuthBatch batch, List<String> userIds) {
+        String requestId = batch.getRequestId();
+        int size = userIds.size();
+        long startNanos = System.nanoTime();
+        try {
+            batch.setState("ID_VERIFICATION");
+
+            Long[] userIdValues = new Long[size];
+            List<Long> validIds = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                try {
+                    userIdValues[i] = Long.parseLong(userIds.get(i));
+                    validIds.add(userIdValues[i]);
+                } catch (NumberFormatException e) {
+                    // Null or malformed id: the entry gets no challenge
+                }
+            }
+
+            // One query for every key that is not cached
+            long lookupNanos = System.nanoTime();
+            Map<Long, String> symKeys = userService.getActiveSymmetricKeys(validIds);
+            metrics.recordSince(Step.KEY_LOOKUP, lookupNanos);
+            metrics.add(Outcome.MALFORMED_MESSAGE, size - validIds.size());
+
+            JsonArray challenges = new JsonArray(size);
+            int issued = 0;
+            for (int i = 0; i < size; i++) {
+                String symKey = userIdValues[i] == null ? null : symKeys.get(userIdValues[i]);
+                if (symKey == null) {
+                    if (userIdValues[i] != null) {
+                        metrics.increment(Outcome.UNKNOWN_USER);
+                    }
+                    challenges.add(JsonNull.INSTANCE);
+                    continue;
+                }
+                byte[] challenge = challengePool.take();
+                batch.setEntry(i, userIdValues[i], challenge, symKey);
+                long encryptNanos = System.nanoTime();
+                byte[] encryptedChallenge = cryptoService.encryptChallenge(userIdValues[i], challenge, symKey);
+                metrics.recordSince(Step.CHALLENGE_ENCRYPTION, encryptNanos);
+                challenges.add(toWireHex(encryptedChallenge));
+                issued++;
+            }
+
+            JsonObject batchData = new JsonObject();
+            batchData.add("challenges", challenges);
+            sendProtocolMessage(session, requestId, STEP_CHALLENGE_BATCH,
+                    "Challenges generated for " + issued + " of " + size + " users", batchData);
+            if (eventLog.isEnabled(Level.DEBUG)) {
+                logEvent(Level.DEBUG, "challenge_batch_sent", session, requestId, null, issued + " of " + size + " users");
+            }
+
+            if (issued == 0) {
+                endAttempt(session, batch);
+                return;
+            }
+            batch.setState("WAITING_BATCH_RESPONSE");
+            batch.setChallengeSentNanos(System.nanoTime());
+            metrics.recordSince(Step.AUTH_REQUEST, startNanos);
+            startTimeout(session, batch, "batch challenge response");
+
+        } catch (Exception e) {
+            logEvent(Level.ERROR, "auth_batch_failed", session, requestId, null, e.toString());
+            sendProtocolMessage(session, requestId, STEP_AUTH_ERROR, "Auth batch processing failed", null);
+            endAttempt(session, batch);
+        }
+    }
+
+    /**
+     * Handle the responses to a batch of challenges
+     * Expected message format: {"type": "challenge_response_batch", "responses": ["...", null, ...]}
+     * with one entry per user of the auth_batch, in the same order. Replies with one
+     * "auth_batch_result" whose data.results array holds true for each verified user
+     * @param session the session the responses belong to
+     * @param message the batch response message
+     */
+    private void handleChallengeResponseBatch(AuthSession session, ProtocolMessage message) {
+        String requestId = message.getRequestId();
+        AuthAttempt attempt = session.getAttempt(requestId);
+        if (!(attempt instanceof AuthBatch) || !"WAITING_BATCH_RESPONSE".equals(attempt.getState())) {
+            logEvent(Level.WARN, "unexpected_response", session, requestId, null, "no pending batch");
+            sendProtocolMessage(session, requestId, STEP_AUTH_ERROR, "Unexpected challenge response", null);
+            endAttempt(session, attempt);
+            return;
+        }
+        AuthBatch batch = (AuthBatch) attempt;
+        if (message.getBatchResponseCount() != batch.size()) {
+            logEvent(Level.WARN, "malformed_message", session, requestId, null, "batch response count mismatch");
+            metrics.increment(Outcome.MALFORMED_MESSAGE);
+            sendProtocolMessage(session, requestId, STEP_AUTH_ERROR,
+                    "Expected " + batch.size() + " responses in challenge_response_batch", null);
+            endAttempt(session, batch);
+            return;
+        }
+
+        metrics.recordSince(Step.CLIENT_THINK_TIME, batch.getChallengeSentNanos());
+
+        JsonArray results = new JsonArray(batch.size());
+        int verified = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            boolean ok = false;
+            int length = message.getBatchResponseLength(i);
+            if (batch.getChallenge(i) != null) {
+                if (length >= 0) {
+                    long verifyNanos = System.nanoTime();
+                    try {
+                        ok = cryptoService.verifyChallengeResponse(batch.getUserIdValue(i), batch.getChallenge(i),
+                                message.getBatchResponse(i), 0, length, batch.getSymmetricKey(i));
+                    } catch (Exception e) {
+                        // Undecryptable response: this entry fails, the others are unaffected
+                    }
+                    metrics.recordSince(Step.VERIFICATION, verifyNanos);
+                }
+                metrics.increment(ok ? Outcome.SUCCESS : Outcome.BAD_RESPONSE);
+            }
+            results.add(ok);
+            if (ok) {
+                verified++;
+            }
+        }
+
+        JsonObject resultData = new JsonObject();
+        resultData.add("results", results);
+        resultData.addProperty("timestamp", System.currentTimeMillis());
+        sendProtocolMessage(session, requestId, STEP_AUTH_BATCH_RESULT,
+                "Authenticated " + verified + " of " + batch.size() + " users", resultData);
+        if (eventLog.isEnabled(Level.INFO)) {
+            logEvent(Level.INFO, "auth_batch_result", session, requestId, null, verified + " of " + batch.size() + " users");
+        }
+
+        // Clear sensitive data and free the request id
+        session.endAttempt(batch);
+    }
+
+    /**
+     * Start a timeout timer for the current operation of an attempt
+     * @param session the session the attempt belongs to
+     * @param attempt the attempt to time
+     * @param operation description of the operation being timed
+     */
+    private void startTimeout(AuthSession session, AuthAttempt attempt, String operation) {
+        // Cancel any existing timeout and start new one
+        attempt.cancelTimeout();
+        long generation = attempt.nextTimeoutGeneration();
+        attempt.setTimeoutTask(timeoutTimer.newTimeout(() -> {
+            synchronized (session) {
+                // A newer message may have re-armed, cancelled or ended this attempt meanwhile
+                if (!attempt.isCurrentTimeout(generation)
+                        || session.getAttempt(attempt.getRequestId()) != attempt) {
+                    return;
+                }
+                logEvent(Level.INFO, "auth_timeout", session, attempt.getRequestId(), attempt.getUserId(), operation);
+                metrics.increment(Outcome.TIMEOUT);
+                sendProtocolMessage(session, attempt.getRequestId(), STEP_TIMEOUT, "Timeout waiting for " + operation, null);
+                endAttempt(session, attempt);
+            }
+        }, challengeResponseTimeout, TimeUnit.MILLISECONDS));
+    }
+    
+    /**
+     * Close a session once it has been idle for sessionIdleTimeout; activity
+     * only stamps the session, the timer re-arms itself for the remaining time
+     * @param session the session to watch
+     * @param delayMillis time until the next idle check
+     */
+    private void armIdleTimeout(AuthSession session, long delayMillis) {
+        session.setIdleTimeout(timeoutTimer.newTimeout(() -> {
+            if (sessionRegistry.get(session.getId()) != session) {
+                return; // already closed
+            }
+            long idleMillis = session.getIdleMillis();
+            if (idleMillis < sessionIdleTimeout) {
+                armIdleTimeout(session, sessionIdleTimeout - idleMillis);
+                return;
+            }
+            logEvent(Level.INFO, "session_idle_timeout", session, null, null, null);
+            synchronized (session) {
+                sendProtocolMessage(session, null, STEP_TIMEOUT, "Session idle timeout", null);
+            }
+            closeSession(session);
+        }, delayMillis, TimeUnit.MILLISECONDS));
     }
 
     /**
      * Send a protocol message with structured format
+     * @param session the session to send to
+     * @param requestId correlation id to echo, or null for untagged replies
      * @param protocolStep the protocol step type
      * @param message the message content
      * @param data additional data payload (can be null)
      */
-    private void sendProtocolMessage(String protocolStep, String message, JsonObject data) {
-        if (currentClient != null) {
+    private void sendProtocolMessage(AuthSession session, String requestId, String protocolStep, String message,
+                                     JsonObject data) {
+        ProtocolConnection client = session.getClient();
+        if (client != null && client.isConnected() && client.getWireFormat() == WireFormat.BINARY) {
+            sendProtocolFrame(session, protocolStep, message, data);
+        } else if (client != null && client.isConnected()) {
             JsonObject json = new JsonObject();
             json.addProperty("type", protocolStep);
+            if (requestId != null) {
+                json.addProperty("request_id", requestId);
+            }
             json.addProperty("message", message);
             json.addProperty("timestamp", System.currentTimeMillis());
             
@@ -389,25 +830,69 @@ public class AccessAuthorizationController {
                 json.add("data", data);
             }
             
-            currentClient.sendJson(json);
-            System.out.println("[Server] Sent protocol message - type: " + protocolStep + ", message: " + message);
+            client.sendJson(json);
         }
     }
     
+    /**
+     * Binary framing counterpart of sendProtocolMessage; frames carry no request id
+     * @param session the session to send to
+     * @param protocolStep the protocol step type
+     * @param message the message content
+     * @param data additional data payload (can be null)
+     */
+    private void sendProtocolFrame(AuthSession session, String protocolStep, String message, JsonObject data) {
+        BinaryFrame frame;
+        switch (protocolStep) {
+            case STEP_AUTH_SUCCESS:
+                frame = BinaryFrame.authSuccess(data.get("user_id").getAsLong(), System.currentTimeMillis());
+                break;
+            case STEP_TIMEOUT:
+                frame = BinaryFrame.timeout(message);
+                break;
+            default:
+                frame = BinaryFrame.authError(message);
+                break;
+        }
+        session.getClient().sendFrame(frame);
+    }
+
+    private void logEvent(Level level, String event, AuthSession session, String requestId, String userId,
+                          String detail) {
+        eventLog.log(level, event, session.getId(), requestId, userId, detail);
+    }
+
+    private boolean isBinary(AuthSession session) {
+        return session.getClient().getWireFormat() == WireFormat.BINARY;
+    }
+    
     /**
      * Cleanup method called when the application shuts down
      */
     @PreDestroy
     public void cleanup() {
+        for (AuthSession session : sessionRegistry.all()) {
+            closeSession(session);
+        }
+        try {
+            if (server != null) {
+                server.stop();
+            }
+            if (nioServer != null) {
+                nioServer.stop();
+            }
+        } catch (IOException e) {
+            System.err.println("[Server] Error stopping server: " + e.getMessage());
+        }
+        if (timeoutTimer != null) {
+            timeoutTimer.stop();
+        }
         if (timeoutExecutor != null) {
             timeoutExecutor.shutdown();
-            try {
-                if (!timeoutExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
-                    timeoutExecutor.shutdownNow();
-                }
-            } catch (InterruptedException e) {
-                timeoutExecutor.shutdownNow();
-            }
+        }
+        if (tlsContext != null) {
+            System.out.println("[Server] TLS handshakes: " + tlsContext.getFullHandshakes() + " full, "
+                    + tlsContext.getResumedHandshakes() + " resumed");
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,136 @@
+package com.accessauth.controller;
+
+import com.accessauth.timer.Timeout;
+
+import java.util.Arrays;
+
+/**
+ * State of one authentication (auth_request through challenge_response).
+ * A plain reader has a single attempt per connection; a gateway tagging its
+ * messages with a request_id can keep many attempts in flight at once.
+ */
+public class AuthAttempt {
+    // Correlation id chosen by the client, null for untagged messages
+    private final String requestId;
+
+    private byte[] challenge;
+    private String symmetricKey;
+    private String userId;
+    private long userIdValue;
+    private String state;
+    private Timeout timeoutTask;
+    private long timeoutGeneration;
+    // System.nanoTime() when the challenge went out, for the client think time metric
+    private long challengeSentNanos;
+
+    public AuthAttempt(String requestId) {
+        this.requestId = requestId;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public byte[] getChallenge() {
+        return challenge;
+    }
+
+    public void setChallenge(byte[] challenge) {
+        this.challenge = challenge;
+    }
+
+    // Wipe and drop the outstanding challenge
+    public void clearChallenge() {
+        if (challenge != null) {
+            Arrays.fill(challenge, (byte) 0);
+        }
+        challenge = null;
+    }
+
+    public String getSymmetricKey() {
+        return symmetricKey;
+    }
+
+    public void setSymmetricKey(String symmetricKey) {
+        this.symmetricKey = symmetricKey;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public long getUserIdValue() {
+        return userIdValue;
+    }
+
+    public void setUserIdValue(long userIdValue) {
+        this.userIdValue = userIdValue;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    public long getChallengeSentNanos() {
+        return challengeSentNanos;
+    }
+
+    public void setChallengeSentNanos(long challengeSentNanos) {
+        this.challengeSentNanos = challengeSentNanos;
+    }
+
+    public void setTimeoutTask(Timeout timeoutTask) {
+        this.timeoutTask = timeoutTask;
+    }
+
+    /**
+     * Start a new timeout generation; a timeout task only fires
+     * if its generation is still the current one
+     * @return the new generation number
+     */
+    public long nextTimeoutGeneration() {
+        return ++timeoutGeneration;
+    }
+
+    public boolean isCurrentTimeout(long generation) {
+        return timeoutGeneration == generation;
+    }
+
+    public void cancelTimeout() {
+        // Invalidate any timeout task that already started running
+        timeoutGeneration++;
+        if (timeoutTask != null) {
+            timeoutTask.cancel();
+        }
+        timeoutTask = null;
+    }
+
+    /**
+     * Clear all protocol state of this attempt
+     */
+    public void reset() {
+        clearChallenge();
+        symmetricKey = null;
+        userId = null;
+        userIdValue = 0;
+        state = null;
+        cancelTimeout();
+    }
+
+    @Override
+    public String toString() {
+        return "AuthAttempt{" +
+                "requestId='" + requestId + '\'' +
+                ", userId='" + userId + '\'' +
+                ", state='" + state + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,67 @@
+package com.accessauth.controller;
+
+import java.util.Arrays;
+
+/**
+ * A batch authentication: one auth_batch message opens a challenge for each
+ * listed user, one challenge_response_batch answers all of them in order.
+ * Entries whose user was invalid or unknown hold no challenge.
+ */
+public class AuthBatch extends AuthAttempt {
+    private long[] userIdValues = new long[0];
+    private byte[][] challenges = new byte[0][];
+    private String[] symmetricKeys = new String[0];
+
+    public AuthBatch(String requestId) {
+        super(requestId);
+    }
+
+    /**
+     * Size the batch, dropping any previous entries
+     * @param size number of entries
+     */
+    public void init(int size) {
+        reset();
+        userIdValues = new long[size];
+        challenges = new byte[size][];
+        symmetricKeys = new String[size];
+    }
+
+    public int size() {
+        return challenges.length;
+    }
+
+    public long getUserIdValue(int index) {
+        return userIdValues[index];
+    }
+
+    public byte[] getChallenge(int index) {
+        return challenges[index];
+    }
+
+    public String getSymmetricKey(int index) {
+        return symmetricKeys[index];
+    }
+
+    public void setEntry(int index, long userIdValue, byte[] challenge, String symmetricKey) {
+        userIdValues[index] = userIdValue;
+        challenges[index] = challenge;
+        symmetricKeys[index] = symmetricKey;
+    }
+
+    /**
+     * Clear all protocol state of this batch, wiping its challenges
+     */
+    @Override
+    public void reset() {
+        super.reset();
+        for (byte[] challenge : challenges) {
+            if (challenge != null) {
+                Arrays.fill(challenge, (byte) 0);
+            }
+        }
+        Arrays.fill(challenges, null);
+        Arrays.fill(symmetricKeys, null);
+        Arrays.fill(userIdValues, 0);
+    }
+}
@@ -0,0 +1,137 @@
+package com.accessauth.controller;
+
+import com.accessauth.socket.ProtocolConnection;
+import com.accessauth.timer.Timeout;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Protocol state of a single client connection.
+ * Every connected reader gets its own session, so concurrent
+ * authentications never share challenge or key material. Untagged
+ * messages share one default attempt; messages carrying a request_id
+ * each get their own attempt, so a gateway can multiplex readers. An
+ * attempt may also be an AuthBatch covering many users at once.
+ */
+public class AuthSession {
+    private final long id;
+    private final ProtocolConnection client;
+
+    private AuthAttempt defaultAttempt = new AuthAttempt(null);
+    private final Map<String, AuthAttempt> taggedAttempts = new HashMap<>();
+    private Timeout idleTimeout;
+    private volatile long lastActivityNanos = System.nanoTime();
+
+    public AuthSession(long id, ProtocolConnection client) {
+        this.id = id;
+        this.client = client;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public ProtocolConnection getClient() {
+        return client;
+    }
+
+    /**
+     * @param requestId correlation id of the message, or null
+     * @return the attempt the id refers to, or null if none is in flight
+     */
+    public AuthAttempt getAttempt(String requestId) {
+        return requestId == null ? defaultAttempt : taggedAttempts.get(requestId);
+    }
+
+    /**
+     * Get or create the attempt for a request id; a batch under the same id is replaced
+     * @param requestId correlation id of the message, or null
+     * @return the attempt
+     */
+    public AuthAttempt beginAttempt(String requestId) {
+        AuthAttempt attempt = getAttempt(requestId);
+        if (attempt != null && !(attempt instanceof AuthBatch)) {
+            return attempt;
+        }
+        return replaceAttempt(requestId, new AuthAttempt(requestId));
+    }
+
+    /**
+     * Start a new batch for a request id, replacing whatever attempt used it
+     * @param requestId correlation id of the message, or null
+     * @return the empty batch
+     */
+    public AuthBatch beginBatch(String requestId) {
+        return replaceAttempt(requestId, new AuthBatch(requestId));
+    }
+
+    private <T extends AuthAttempt> T replaceAttempt(String requestId, T attempt) {
+        AuthAttempt previous;
+        if (requestId == null) {
+            previous = defaultAttempt;
+            defaultAttempt = attempt;
+        } else {
+            previous = taggedAttempts.put(requestId, attempt);
+        }
+        if (previous != null) {
+            previous.reset();
+        }
+        return attempt;
+    }
+
+    /**
+     * Reset an attempt and forget it if it was tagged
+     * @param attempt the attempt to end
+     */
+    public void endAttempt(AuthAttempt attempt) {
+        attempt.reset();
+        if (attempt.getRequestId() != null) {
+            taggedAttempts.remove(attempt.getRequestId(), attempt);
+        }
+    }
+
+    // Tagged attempts currently in flight
+    public int getTaggedAttemptCount() {
+        return taggedAttempts.size();
+    }
+
+    public synchronized void setIdleTimeout(Timeout idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public synchronized void cancelIdleTimeout() {
+        if (idleTimeout != null) {
+            idleTimeout.cancel();
+        }
+        idleTimeout = null;
+    }
+
+    // Record that the client just sent something
+    public void touch() {
+        lastActivityNanos = System.nanoTime();
+    }
+
+    public long getIdleMillis() {
+        return (System.nanoTime() - lastActivityNanos) / 1_000_000;
+    }
+
+    /**
+     * Clear all protocol state of this session
+     */
+    public void reset() {
+        defaultAttempt.reset();
+        for (AuthAttempt attempt : taggedAttempts.values()) {
+            attempt.reset();
+        }
+        taggedAttempts.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "AuthSession{" +
+                "id=" + id +
+                ", inFlight=" + (taggedAttempts.size() + (defaultAttempt.getState() != null ? 1 : 0)) +
+                '}';
+    }
+}
@@ -0,0 +1,51 @@
+package com.accessauth.controller;
+
+import com.accessauth.collection.ConcurrentLongHashMap;
+import com.accessauth.socket.ProtocolConnection;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of all open protocol sessions, one per client connection.
+ */
+@Component
+public class SessionRegistry {
+    private final ConcurrentLongHashMap<AuthSession> sessions = new ConcurrentLongHashMap<>(1024, 16);
+    private final AtomicLong nextSessionId = new AtomicLong();
+
+    /**
+     * Create and register a session for a newly accepted client
+     * @param client the client socket
+     * @return the new session
+     */
+    public AuthSession open(ProtocolConnection client) {
+        AuthSession session = new AuthSession(nextSessionId.incrementAndGet(), client);
+        sessions.put(session.getId(), session);
+        return session;
+    }
+
+    /**
+     * Remove a session from the registry
+     * @param session the session to remove
+     * @return true if the session was registered
+     */
+    public boolean close(AuthSession session) {
+        return sessions.remove(session.getId(), session);
+    }
+
+    public AuthSession get(long sessionId) {
+        return sessions.get(sessionId);
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    // Copy of the open sessions; safe to close them while iterating
+    public Collection<AuthSession> all() {
+        return Collections.unmodifiableCollection(sessions.values());
+    }
+}
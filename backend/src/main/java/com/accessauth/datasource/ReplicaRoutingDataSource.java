@@ -0,0 +1,235 @@
+package com.accessauth.datasource;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Sends connections for read-only transactions to replicas, round-robin, and
+ * everything else to the primary. A background check measures each replica's
+ * replication lag; a replica that may be further behind than max-lag, failed its
+ * check or refused a connection gets no reads until a later check finds it
+ * healthy. While no replica is usable, reads go to the primary.
+ *
+ * The route is chosen when a connection is requested, so this must sit behind a
+ * LazyConnectionDataSourceProxy: the transaction's read-only flag is only known
+ * once it has begun. Reads on a replica may miss writes made up to max-lag
+ * earlier; work that must see them runs on the primary with {@link #onPrimary}.
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource implements Closeable {
+
+    /**
+     * Postgres: how far the replica's replayed data is behind, in milliseconds. A replica
+     * that replayed everything it received is current; one that is not in recovery is a
+     * primary. NULL (nothing replayed yet) counts as unknown.
+     */
+    public static final String POSTGRES_LAG_QUERY = "SELECT CASE"
+            + " WHEN NOT pg_is_in_recovery() OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0"
+            + " ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000 END";
+
+    private static final ThreadLocal<Boolean> PRIMARY_ONLY = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final long maxLagNanos;
+    private final long checkMillis;
+    private final String lagQuery;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicLong replicaConnections = new AtomicLong();
+    private final AtomicLong primaryFallbacks = new AtomicLong();
+    private ScheduledExecutorService checker;
+
+    /**
+     * @param primary receives writes, and reads when no replica is usable
+     * @param replicas read-only copies of the primary
+     * @param maxLagMillis most replication lag a replica may have and still serve reads
+     * @param checkMillis interval between lag checks; must be below maxLagMillis
+     * @param lagQuery query returning a replica's lag in milliseconds
+     */
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas, long maxLagMillis,
+                                    long checkMillis, String lagQuery) {
+        if (replicas.isEmpty() || checkMillis <= 0 || maxLagMillis <= checkMillis) {
+            throw new IllegalArgumentException("Require at least one replica and 0 < check-ms < max-lag-ms");
+        }
+        this.primary = primary;
+        for (int i = 0; i < replicas.size(); i++) {
+            this.replicas.add(new Replica("replica-" + (i + 1), replicas.get(i)));
+        }
+        this.maxLagNanos = TimeUnit.MILLISECONDS.toNanos(maxLagMillis);
+        this.checkMillis = checkMillis;
+        this.lagQuery = lagQuery;
+    }
+
+    public void start() {
+        checkLag();
+        checker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "replica-lag-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checker.scheduleWithFixedDelay(this::checkLag, checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() {
+        if (checker != null) {
+            checker.shutdownNow();
+        }
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception e) {
+                    System.err.println("[ReplicaRouting] Could not close " + replica.name + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Run work whose reads must see every committed write, whatever its transaction
+     */
+    public static <T> T onPrimary(Supplier<T> work) {
+        Boolean previous = PRIMARY_ONLY.get();
+        PRIMARY_ONLY.set(Boolean.TRUE);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                PRIMARY_ONLY.remove();
+            } else {
+                PRIMARY_ONLY.set(previous);
+            }
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly() && PRIMARY_ONLY.get() == null) {
+            Connection connection = replicaConnection();
+            if (connection != null) {
+                return connection;
+            }
+            primaryFallbacks.incrementAndGet();
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Replica routing uses the configured credentials");
+    }
+
+    // Next usable replica in turn; a replica that refuses the connection is skipped until its next check
+    private Connection replicaConnection() {
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        long now = System.nanoTime();
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (!replica.isUsable(now)) {
+                continue;
+            }
+            try {
+                Connection connection = replica.dataSource.getConnection();
+                replicaConnections.incrementAndGet();
+                return connection;
+            } catch (SQLException e) {
+                replica.update(false, 0, e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    // Measure every replica's lag
+    void checkLag() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection();
+                 Statement statement = connection.createStatement();
+                 ResultSet result = statement.executeQuery(lagQuery)) {
+                if (!result.next()) {
+                    throw new SQLException("Lag query returned no row");
+                }
+                double lagMillis = result.getDouble(1);
+                if (result.wasNull()) {
+                    lagMillis = Double.POSITIVE_INFINITY;
+                }
+                replica.update(true, (long) Math.min(lagMillis * 1_000_000, Long.MAX_VALUE / 2), null);
+            } catch (SQLException | RuntimeException e) {
+                replica.update(false, 0, e.getMessage());
+            }
+        }
+    }
+
+    public long getMaxLagMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxLagNanos);
+    }
+
+    // Replicas that would serve a read right now
+    public int getUsableReplicas() {
+        long now = System.nanoTime();
+        int usable = 0;
+        for (Replica replica : replicas) {
+            if (replica.isUsable(now)) {
+                usable++;
+            }
+        }
+        return usable;
+    }
+
+    public long getReplicaConnections() {
+        return replicaConnections.get();
+    }
+
+    // Read-only connections taken from the primary because no replica was usable
+    public long getPrimaryFallbacks() {
+        return primaryFallbacks.get();
+    }
+
+    private final class Replica {
+        private final String name;
+        private final DataSource dataSource;
+        private volatile boolean up;
+        private volatile long lagNanos;
+        private volatile long checkedAtNanos;
+        // For logging state changes only
+        private String state = "unchecked";
+
+        Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        // Replication may have stalled since the check, so the lag is assumed to grow with time
+        boolean isUsable(long now) {
+            return up && lagNanos + (now - checkedAtNanos) <= maxLagNanos;
+        }
+
+        synchronized void update(boolean up, long lagNanos, String error) {
+            this.lagNanos = lagNanos;
+            this.checkedAtNanos = System.nanoTime();
+            this.up = up;
+            String current = !up ? "down" : lagNanos > maxLagNanos ? "lagging" : "ok";
+            if (!current.equals(state)) {
+                state = current;
+                System.out.println("[ReplicaRouting] " + name + " is " + current
+                        + (up ? " (lag " + TimeUnit.NANOSECONDS.toMillis(lagNanos) + " ms)" : ": " + error));
+            }
+        }
+    }
+}
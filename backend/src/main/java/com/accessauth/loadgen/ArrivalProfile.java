@@ -0,0 +1,39 @@
+package com.accessauth.loadgen;
+
+/**
+ * How the swipe rate of the simulated reader fleet changes over a run
+ */
+public enum ArrivalProfile {
+    // Constant rate for the whole run
+    STEADY,
+    // The base rate, multiplied by the peak factor for the first burst-seconds of every burst-period
+    BURST,
+    // Ramps from the base rate up to base * peak factor at mid-run and back down, like a shift change
+    SHIFT_CHANGE;
+
+    /**
+     * @param elapsedSeconds time since the start of the run
+     * @param durationSeconds length of the run
+     * @param baseRate swipes per second outside of peaks
+     * @param peakFactor rate multiplier at the peak
+     * @param burstSeconds length of a burst (BURST only)
+     * @param burstPeriodSeconds time between burst starts (BURST only)
+     * @return target swipes per second across all readers
+     */
+    public double rateAt(double elapsedSeconds, double durationSeconds, double baseRate, double peakFactor,
+                         double burstSeconds, double burstPeriodSeconds) {
+        switch (this) {
+            case BURST:
+                return elapsedSeconds % burstPeriodSeconds < burstSeconds ? baseRate * peakFactor : baseRate;
+            case SHIFT_CHANGE:
+                double distanceFromPeak = Math.abs(elapsedSeconds / durationSeconds - 0.5) * 2;
+                return baseRate * (1 + (peakFactor - 1) * Math.max(0, 1 - distanceFromPeak));
+            default:
+                return baseRate;
+        }
+    }
+
+    public static ArrivalProfile parse(String name) {
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+}
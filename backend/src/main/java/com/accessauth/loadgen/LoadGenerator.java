@@ -0,0 +1,252 @@
+package com.accessauth.loadgen;
+
+import com.accessauth.metrics.LatencyHistogram;
+import com.accessauth.service.CryptoService;
+import com.accessauth.socket.TlsContext;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closed-loop load generator for the protocol server: simulates a fleet of card
+ * readers, each authenticating random test users with correct AES responses, and
+ * reports throughput and per-step latency percentiles.
+ *
+ * Usage: java -cp access.jar com.accessauth.loadgen.LoadGenerator --keys=test-keys.csv [--option=value ...]
+ *   --keys           file with one "user_id,symmetric_key" line per test user (required)
+ *   --host, --port   protocol server (localhost, 12345)
+ *   --readers        simulated readers, one connection each (100)
+ *   --duration       run length in seconds (60)
+ *   --rate           target swipes per second across all readers (100)
+ *   --profile        steady, burst or shift-change (steady)
+ *   --peak-factor    rate multiplier during bursts / at the shift-change peak (5)
+ *   --burst          burst length in seconds (5), --burst-period seconds between bursts (30)
+ *   --invalid-ratio  share of swipes for unknown users (0.05)
+ *   --reconnect      open a new connection (TLS handshake) for every swipe (false)
+ *   --keystore, --password  TLS trust store (src/main/resources/keystore.jks, password)
+ */
+public class LoadGenerator {
+    private static final int REPORT_INTERVAL_SECONDS = 5;
+
+    // Per-step latencies and outcomes, updated by all readers
+    final LatencyHistogram connect = new LatencyHistogram();
+    final LatencyHistogram challenge = new LatencyHistogram();
+    final LatencyHistogram verify = new LatencyHistogram();
+    final LatencyHistogram rejected = new LatencyHistogram();
+    final LatencyHistogram swipe = new LatencyHistogram();
+    final LongAdder successes = new LongAdder();
+    final LongAdder expectedRejections = new LongAdder();
+    final LongAdder failures = new LongAdder();
+    final LongAdder timeouts = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    // Replies that answered no request in flight
+    final LongAdder strayReplies = new LongAdder();
+    volatile String lastError;
+
+    private final String host;
+    private final int port;
+    private final int readers;
+    private final int durationSeconds;
+    private final double rate;
+    private final ArrivalProfile profile;
+    private final double peakFactor;
+    private final double burstSeconds;
+    private final double burstPeriodSeconds;
+    private final double invalidRatio;
+    private final boolean reconnectEachSwipe;
+    private final int readTimeoutMillis = 30_000;
+    private final TlsContext tlsContext;
+    private final long[] userIds;
+    private final String[] symmetricKeys;
+    private long startNanos;
+    private long deadlineNanos;
+
+    public LoadGenerator(Map<String, String> options) throws Exception {
+        this.host = options.getOrDefault("host", "localhost");
+        this.port = Integer.parseInt(options.getOrDefault("port", "12345"));
+        this.readers = Integer.parseInt(options.getOrDefault("readers", "100"));
+        this.durationSeconds = Integer.parseInt(options.getOrDefault("duration", "60"));
+        this.rate = Double.parseDouble(options.getOrDefault("rate", "100"));
+        this.profile = ArrivalProfile.parse(options.getOrDefault("profile", "steady"));
+        this.peakFactor = Double.parseDouble(options.getOrDefault("peak-factor", "5"));
+        this.burstSeconds = Double.parseDouble(options.getOrDefault("burst", "5"));
+        this.burstPeriodSeconds = Double.parseDouble(options.getOrDefault("burst-period", "30"));
+        this.invalidRatio = Double.parseDouble(options.getOrDefault("invalid-ratio", "0.05"));
+        this.reconnectEachSwipe = Boolean.parseBoolean(options.getOrDefault("reconnect", "false"));
+        if (readers <= 0 || durationSeconds <= 0 || rate <= 0) {
+            throw new IllegalArgumentException("readers, duration and rate must be positive");
+        }
+
+        String keysFile = options.get("keys");
+        if (keysFile == null) {
+            throw new IllegalArgumentException("--keys=<file with user_id,symmetric_key lines> is required");
+        }
+        List<Long> ids = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(keysFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split(",");
+                if (parts.length < 2) {
+                    throw new IOException("Malformed key line: " + line);
+                }
+                ids.add(Long.parseLong(parts[0].trim()));
+                keys.add(parts[1].trim());
+            }
+        }
+        if (ids.isEmpty()) {
+            throw new IllegalArgumentException("No test users in " + keysFile);
+        }
+        this.userIds = new long[ids.size()];
+        for (int i = 0; i < userIds.length; i++) {
+            userIds[i] = ids.get(i);
+        }
+        this.symmetricKeys = keys.toArray(new String[0]);
+
+        // One client TLS context, so reconnecting readers resume their sessions like real ones would
+        this.tlsContext = new TlsContext(options.getOrDefault("keystore", "src/main/resources/keystore.jks"),
+                options.getOrDefault("password", "password"));
+    }
+
+    public void run() throws InterruptedException {
+        System.out.println("[LoadGen] " + readers + " readers, " + userIds.length + " test users, "
+                + profile + " profile at " + rate + " swipes/s for " + durationSeconds + "s");
+
+        CryptoService cryptoService = new CryptoService();
+        startNanos = System.nanoTime();
+        deadlineNanos = startNanos + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        List<Thread> threads = new ArrayList<>(readers);
+        for (int i = 0; i < readers; i++) {
+            Thread thread = new Thread(new SimulatedReader(this, cryptoService), "reader-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+
+        long lastCompleted = 0;
+        while (System.nanoTime() < deadlineNanos) {
+            TimeUnit.SECONDS.sleep(REPORT_INTERVAL_SECONDS);
+            long completed = completedSwipes();
+            System.out.printf("[LoadGen] t=%ds target=%.0f/s achieved=%.0f/s errors=%d%n",
+                    TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos), currentRate(),
+                    (completed - lastCompleted) / (double) REPORT_INTERVAL_SECONDS, errors.sum());
+            lastCompleted = completed;
+        }
+        for (Thread thread : threads) {
+            thread.join(readTimeoutMillis);
+        }
+        report((System.nanoTime() - startNanos) / 1e9);
+    }
+
+    private long completedSwipes() {
+        return successes.sum() + expectedRejections.sum() + failures.sum() + timeouts.sum();
+    }
+
+    private void report(double elapsedSeconds) {
+        System.out.println();
+        System.out.printf("[LoadGen] %d swipes in %.1fs: %.1f swipes/s%n", completedSwipes(), elapsedSeconds,
+                completedSwipes() / elapsedSeconds);
+        System.out.printf("[LoadGen] success=%d rejected (unknown user)=%d failed=%d timeouts=%d errors=%d stray replies=%d%n",
+                successes.sum(), expectedRejections.sum(), failures.sum(), timeouts.sum(), errors.sum(),
+                strayReplies.sum());
+        if (lastError != null) {
+            System.out.println("[LoadGen] last error: " + lastError);
+        }
+        System.out.println();
+        System.out.printf("%-22s %9s %9s %9s %9s %9s %9s%n", "step (ms)", "count", "mean", "p50", "p99", "p99.9", "max");
+        printStep("connect + handshake", connect);
+        printStep("auth_request", challenge);
+        printStep("auth_request rejected", rejected);
+        printStep("challenge_response", verify);
+        printStep("full swipe", swipe);
+    }
+
+    private static void printStep(String name, LatencyHistogram histogram) {
+        System.out.printf("%-22s %9d %9.2f %9.2f %9.2f %9.2f %9.2f%n", name, histogram.getCount(),
+                histogram.getMeanMicros() / 1000.0, histogram.getPercentileMicros(50) / 1000.0,
+                histogram.getPercentileMicros(99) / 1000.0, histogram.getPercentileMicros(99.9) / 1000.0,
+                histogram.getMaxMicros() / 1000.0);
+    }
+
+    // Swipes per second the profile asks for right now
+    double currentRate() {
+        double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+        return profile.rateAt(elapsedSeconds, durationSeconds, rate, peakFactor, burstSeconds, burstPeriodSeconds);
+    }
+
+    // Each reader waits this long on average, so that all readers together reach the current rate
+    double meanThinkNanos() {
+        return readers / currentRate() * 1e9;
+    }
+
+    long deadlineNanos() {
+        return deadlineNanos;
+    }
+
+    String host() {
+        return host;
+    }
+
+    int port() {
+        return port;
+    }
+
+    TlsContext tlsContext() {
+        return tlsContext;
+    }
+
+    int readTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    boolean reconnectEachSwipe() {
+        return reconnectEachSwipe;
+    }
+
+    double invalidRatio() {
+        return invalidRatio;
+    }
+
+    int userCount() {
+        return userIds.length;
+    }
+
+    long userId(int index) {
+        return userIds[index];
+    }
+
+    String symmetricKey(int index) {
+        return symmetricKeys[index];
+    }
+
+    // Parse --name=value arguments
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got: " + arg);
+            }
+            int separator = arg.indexOf('=');
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        return options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new LoadGenerator(parseOptions(args)).run();
+        System.exit(0);
+    }
+}
@@ -0,0 +1,157 @@
+package com.accessauth.loadgen;
+
+import com.accessauth.service.CryptoService;
+import com.accessauth.socket.SecureSocket;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One simulated card reader: a closed loop of think time, then one full
+ * authentication (auth_request, challenge, challenge_response, result) on
+ * its own connection. A reader never has more than one swipe in flight.
+ * Each swipe carries its own request_id, so a late reply to an earlier swipe
+ * is never taken for the answer to the current one.
+ */
+class SimulatedReader implements Runnable {
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final LoadGenerator generator;
+    private final CryptoService cryptoService;
+    private SecureSocket socket;
+    private long swipes;
+
+    SimulatedReader(LoadGenerator generator, CryptoService cryptoService) {
+        this.generator = generator;
+        this.cryptoService = cryptoService;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                // Exponential think time around the rate the profile currently asks for
+                long thinkNanos = (long) (-Math.log(1 - ThreadLocalRandom.current().nextDouble())
+                        * generator.meanThinkNanos());
+                if (System.nanoTime() + thinkNanos >= generator.deadlineNanos()) {
+                    break;
+                }
+                TimeUnit.NANOSECONDS.sleep(thinkNanos);
+                swipe();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            disconnect();
+        }
+    }
+
+    private void swipe() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        boolean invalid = random.nextDouble() < generator.invalidRatio();
+        int userIndex = random.nextInt(generator.userCount());
+        // Ids below zero are never issued, so these users are unknown to the server
+        long userId = invalid ? -1 - random.nextInt(1_000_000) : generator.userId(userIndex);
+
+        String requestId = String.valueOf(++swipes);
+        long swipeStart = System.nanoTime();
+        try {
+            if (socket == null || generator.reconnectEachSwipe()) {
+                disconnect();
+                connect();
+            }
+
+            long stepStart = System.nanoTime();
+            JsonObject request = new JsonObject();
+            request.addProperty("type", "auth_request");
+            request.addProperty("request_id", requestId);
+            request.addProperty("user_id", String.valueOf(userId));
+            JsonObject reply = exchange(request, requestId);
+            String type = reply.get("type").getAsString();
+
+            if (!"challenge".equals(type)) {
+                generator.rejected.recordNanos(System.nanoTime() - stepStart);
+                if (invalid && "auth_error".equals(type)) {
+                    generator.expectedRejections.increment();
+                } else {
+                    countFailure(type);
+                }
+                return;
+            }
+            generator.challenge.recordNanos(System.nanoTime() - stepStart);
+
+            stepStart = System.nanoTime();
+            String key = generator.symmetricKey(userIndex);
+            String challengeHex = reply.getAsJsonObject("data").get("challenge").getAsString();
+            String challenge = cryptoService.decryptChallenge(userId,
+                    new String(HEX.parseHex(challengeHex), StandardCharsets.US_ASCII), key);
+            String response = cryptoService.encryptChallenge(userId, challenge, key);
+
+            JsonObject answer = new JsonObject();
+            answer.addProperty("type", "challenge_response");
+            answer.addProperty("request_id", requestId);
+            answer.addProperty("response", HEX.formatHex(response.getBytes(StandardCharsets.US_ASCII)));
+            reply = exchange(answer, requestId);
+            generator.verify.recordNanos(System.nanoTime() - stepStart);
+
+            type = reply.get("type").getAsString();
+            if ("auth_success".equals(type)) {
+                generator.successes.increment();
+                generator.swipe.recordNanos(System.nanoTime() - swipeStart);
+            } else {
+                countFailure(type);
+            }
+        } catch (Exception e) {
+            generator.errors.increment();
+            generator.lastError = e.getClass().getSimpleName() + ": " + e.getMessage();
+            disconnect();
+        }
+    }
+
+    private void countFailure(String type) {
+        if ("timeout".equals(type)) {
+            generator.timeouts.increment();
+        } else {
+            generator.failures.increment();
+        }
+    }
+
+    // Send a message and wait for the reply carrying the same request_id; replies for
+    // anything else (a late timeout of an earlier swipe) are counted and skipped
+    private JsonObject exchange(JsonObject message, String requestId) throws IOException {
+        socket.sendJson(message);
+        while (true) {
+            JsonObject reply = socket.receiveJson();
+            if (reply == null) {
+                throw new IOException("Server closed the connection");
+            }
+            if (reply.has("request_id") && requestId.equals(reply.get("request_id").getAsString())) {
+                return reply;
+            }
+            generator.strayReplies.increment();
+        }
+    }
+
+    private void connect() throws IOException {
+        long start = System.nanoTime();
+        socket = new SecureSocket(generator.host(), generator.port(), generator.tlsContext());
+        socket.setReadTimeout(generator.readTimeoutMillis());
+        socket.startHandshake();
+        generator.connect.recordNanos(System.nanoTime() - start);
+    }
+
+    private void disconnect() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already gone
+            }
+            socket = null;
+        }
+    }
+}
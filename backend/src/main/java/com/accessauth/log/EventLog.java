@@ -0,0 +1,219 @@
+package com.accessauth.log;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Structured event log for the request path. Callers only copy a few references
+ * into a lock-free ring buffer; a background appender formats the events as
+ * logfmt lines and writes them out, so console I/O never blocks a request.
+ * Each level has a sample rate, and events are dropped (and counted) rather
+ * than waited on when the buffer is full.
+ *
+ * Events carry ids and short fixed texts only: symmetric keys, challenges
+ * and responses must never be passed to this log.
+ */
+@Component
+public class EventLog {
+
+    public enum Level {
+        DEBUG,
+        INFO,
+        WARN,
+        ERROR
+    }
+
+    // How long the appender sleeps when it finds the buffer empty
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final int DRAIN_BATCH = 1024;
+
+    private final Level threshold;
+    private final double[] sampleRates = new double[Level.values().length];
+    private final EventRingBuffer buffer;
+    private final PrintStream out;
+    private final StringBuilder line = new StringBuilder(256);
+
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+    private long reportedDropped;
+    private Thread appender;
+    private volatile boolean running;
+
+    @Autowired
+    public EventLog(@Value("${log.events.level:INFO}") String level,
+                    @Value("${log.events.sample.debug:1.0}") double debugRate,
+                    @Value("${log.events.sample.info:1.0}") double infoRate,
+                    @Value("${log.events.sample.warn:1.0}") double warnRate,
+                    @Value("${log.events.sample.error:1.0}") double errorRate,
+                    @Value("${log.events.buffer-size:8192}") int bufferSize) {
+        this(level, new double[] { debugRate, infoRate, warnRate, errorRate }, bufferSize, System.out);
+    }
+
+    // Package-private for tests
+    EventLog(String level, double[] sampleRates, int bufferSize, PrintStream out) {
+        this.threshold = Level.valueOf(level.trim().toUpperCase(Locale.ROOT));
+        for (int i = 0; i < this.sampleRates.length; i++) {
+            if (sampleRates[i] < 0 || sampleRates[i] > 1) {
+                throw new IllegalArgumentException("Sample rates must be between 0 and 1");
+            }
+            this.sampleRates[i] = sampleRates[i];
+        }
+        this.buffer = new EventRingBuffer(bufferSize);
+        this.out = out;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        appender = new Thread(this::appendLoop, "event-log-appender");
+        appender.setDaemon(true);
+        appender.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (appender != null) {
+            LockSupport.unpark(appender);
+            try {
+                appender.join(TimeUnit.SECONDS.toMillis(2));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * True if events of this level can be logged at all; lets callers skip
+     * building a detail string that would be thrown away
+     */
+    public boolean isEnabled(Level level) {
+        return level.compareTo(threshold) >= 0 && sampleRates[level.ordinal()] > 0;
+    }
+
+    /**
+     * Record an event. Never blocks and never throws.
+     * @param level severity
+     * @param event short snake_case event name, e.g. "challenge_sent"
+     * @param sessionId session the event belongs to, or -1
+     * @param requestId client correlation id, or null
+     * @param userId the user concerned, or null
+     * @param detail optional human-readable text, or null; never a secret
+     */
+    public void log(Level level, String event, long sessionId, String requestId, String userId, String detail) {
+        if (level.compareTo(threshold) < 0) {
+            return;
+        }
+        double rate = sampleRates[level.ordinal()];
+        if (rate < 1.0 && (rate <= 0 || ThreadLocalRandom.current().nextDouble() >= rate)) {
+            sampledOut.increment();
+            return;
+        }
+        if (!buffer.offer(System.currentTimeMillis(), level, event, sessionId, requestId, userId, detail)) {
+            dropped.increment();
+        }
+    }
+
+    // Events lost because the buffer was full
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    // Events skipped by sampling
+    public long getSampledOut() {
+        return sampledOut.sum();
+    }
+
+    private void appendLoop() {
+        while (running) {
+            if (drainOnce() == 0) {
+                out.flush();
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        // Write what is left before shutting down
+        while (drainOnce() > 0) {
+            // keep draining
+        }
+        out.flush();
+    }
+
+    // Package-private for tests: format and write one batch of buffered events
+    int drainOnce() {
+        int drained = buffer.drain(this::append, DRAIN_BATCH);
+        long droppedNow = dropped.sum();
+        if (droppedNow != reportedDropped) {
+            line.setLength(0);
+            line.append("ts=").append(DateTimeFormatter.ISO_INSTANT.format(Instant.now()))
+                    .append(" level=WARN event=log_events_dropped count=").append(droppedNow - reportedDropped)
+                    .append('\n');
+            out.append(line);
+            reportedDropped = droppedNow;
+        }
+        return drained;
+    }
+
+    private void append(EventRingBuffer.Event event) {
+        line.setLength(0);
+        line.append("ts=").append(DateTimeFormatter.ISO_INSTANT.format(Instant.ofEpochMilli(event.getTimestampMillis())))
+                .append(" level=").append(event.getLevel().name())
+                .append(" event=").append(event.getEvent());
+        if (event.getSessionId() >= 0) {
+            line.append(" session=").append(event.getSessionId());
+        }
+        appendField("request_id", event.getRequestId());
+        appendField("user_id", event.getUserId());
+        appendField("msg", event.getDetail());
+        line.append('\n');
+        out.append(line);
+    }
+
+    // Values with spaces, quotes or '=' are quoted so each line stays machine-parseable
+    private void appendField(String key, String value) {
+        if (value == null) {
+            return;
+        }
+        line.append(' ').append(key).append('=');
+        boolean quote = value.isEmpty();
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c <= ' ' || c == '"' || c == '=' || c == '\\';
+        }
+        if (!quote) {
+            line.append(value);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                    line.append('\\').append(c);
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                default:
+                    line.append(c);
+                    break;
+            }
+        }
+        line.append('"');
+    }
+}
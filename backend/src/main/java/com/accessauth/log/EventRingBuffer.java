@@ -0,0 +1,153 @@
+package com.accessauth.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded lock-free ring buffer of log events: many producers, one consumer.
+ * Slots are allocated once and reused; each slot carries a sequence number
+ * telling producers when it is free and the consumer when it is published.
+ * A producer that finds the buffer full gives up instead of waiting.
+ */
+public class EventRingBuffer {
+
+    /**
+     * One slot of the buffer. Only valid inside the consumer callback;
+     * the slot is reused as soon as the callback returns.
+     */
+    public static class Event {
+        long timestampMillis;
+        EventLog.Level level;
+        String event;
+        long sessionId;
+        String requestId;
+        String userId;
+        String detail;
+
+        public long getTimestampMillis() {
+            return timestampMillis;
+        }
+
+        public EventLog.Level getLevel() {
+            return level;
+        }
+
+        public String getEvent() {
+            return event;
+        }
+
+        // Negative if the event belongs to no session
+        public long getSessionId() {
+            return sessionId;
+        }
+
+        public String getRequestId() {
+            return requestId;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public String getDetail() {
+            return detail;
+        }
+    }
+
+    private final Event[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    // Only touched by the consumer thread
+    private long head;
+
+    /**
+     * @param capacity number of slots, rounded up to a power of two
+     */
+    public EventRingBuffer(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity must be between 1 and 2^30");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new Event[size];
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Event();
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Publish an event; safe from any number of threads
+     * @return false if the buffer was full and the event was dropped
+     */
+    public boolean offer(long timestampMillis, EventLog.Level level, String event, long sessionId,
+                         String requestId, String userId, String detail) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    Event slot = slots[index];
+                    slot.timestampMillis = timestampMillis;
+                    slot.level = level;
+                    slot.event = event;
+                    slot.sessionId = sessionId;
+                    slot.requestId = requestId;
+                    slot.userId = userId;
+                    slot.detail = detail;
+                    // Publishes the slot to the consumer
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // The consumer has not freed this slot yet: full
+                return false;
+            } else {
+                // Another producer claimed this position first
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Hand published events to the consumer in order; single consumer thread only
+     * @param consumer called once per event, must not keep the slot
+     * @param maxEvents upper bound on events drained by this call
+     * @return number of events drained
+     */
+    public int drain(Consumer<Event> consumer, int maxEvents) {
+        int drained = 0;
+        while (drained < maxEvents) {
+            int index = (int) head & mask;
+            if (sequences.get(index) != head + 1) {
+                break; // empty, or the next slot is claimed but not yet written
+            }
+            Event slot = slots[index];
+            try {
+                consumer.accept(slot);
+            } finally {
+                slot.event = null;
+                slot.requestId = null;
+                slot.userId = null;
+                slot.detail = null;
+                // Frees the slot for the producer one lap ahead
+                sequences.set(index, head + slots.length);
+                head++;
+            }
+            drained++;
+        }
+        return drained;
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+}
@@ -0,0 +1,89 @@
+package com.accessauth.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import jakarta.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves ProtocolMetrics over plain HTTP (GET /metrics), bound to the loopback
+ * interface by default so only a local scraper or operator can read it
+ */
+@Component
+public class MetricsEndpoint {
+    private HttpServer httpServer;
+    private ExecutorService executor;
+
+    @Autowired
+    private ProtocolMetrics metrics;
+
+    @Value("${metrics.endpoint.enabled:true}")
+    private boolean enabled;
+
+    @Value("${metrics.endpoint.address:127.0.0.1}")
+    private String address;
+
+    @Value("${metrics.endpoint.port:9464}")
+    private int port;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            httpServer = HttpServer.create(new InetSocketAddress(address, port), 0);
+            httpServer.createContext("/metrics", this::handle);
+            // Scrapes are rare; one thread keeps them off the protocol threads
+            executor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "metrics-endpoint");
+                thread.setDaemon(true);
+                return thread;
+            });
+            httpServer.setExecutor(executor);
+            httpServer.start();
+            System.out.println("[Server] Metrics endpoint on http://" + address + ":"
+                    + httpServer.getAddress().getPort() + "/metrics");
+        } catch (IOException e) {
+            System.err.println("[Server] Error starting metrics endpoint: " + e.getMessage());
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = metrics.render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+        }
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.accessauth.metrics;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Latency of each protocol step and counts of authentication outcomes.
+ * Recording is a few uncontended atomic adds, cheap enough to stay on at full load;
+ * MetricsEndpoint renders a snapshot on demand.
+ */
+@Component
+public class ProtocolMetrics {
+
+    public enum Step {
+        // Accept to finished TLS handshake
+        TLS_HANDSHAKE,
+        // Whole auth_request / auth_batch handling, up to the challenge being sent
+        AUTH_REQUEST,
+        KEY_LOOKUP,
+        CHALLENGE_ENCRYPTION,
+        // Challenge sent to challenge_response received
+        CLIENT_THINK_TIME,
+        VERIFICATION
+    }
+
+    public enum Outcome {
+        SUCCESS,
+        UNKNOWN_USER,
+        BAD_RESPONSE,
+        TIMEOUT,
+        MALFORMED_MESSAGE
+    }
+
+    private static final String[] QUANTILES = { "0.5", "0.9", "0.99", "0.999" };
+
+    private final LatencyHistogram[] steps = new LatencyHistogram[Step.values().length];
+    private final LongAdder[] outcomes = new LongAdder[Outcome.values().length];
+    // Point-in-time values (open sessions, handshake counts) read when rendered
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    public ProtocolMetrics() {
+        for (int i = 0; i < steps.length; i++) {
+            steps[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < outcomes.length; i++) {
+            outcomes[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Record the duration of a step
+     * @param step the protocol step
+     * @param startNanos System.nanoTime() when the step started
+     */
+    public void recordSince(Step step, long startNanos) {
+        steps[step.ordinal()].recordNanos(System.nanoTime() - startNanos);
+    }
+
+    public void recordNanos(Step step, long nanos) {
+        steps[step.ordinal()].recordNanos(nanos);
+    }
+
+    public void increment(Outcome outcome) {
+        outcomes[outcome.ordinal()].increment();
+    }
+
+    public void add(Outcome outcome, long count) {
+        outcomes[outcome.ordinal()].add(count);
+    }
+
+    public LatencyHistogram getHistogram(Step step) {
+        return steps[step.ordinal()];
+    }
+
+    public long getCount(Outcome outcome) {
+        return outcomes[outcome.ordinal()].sum();
+    }
+
+    /**
+     * Expose a value that is read each time the metrics are rendered
+     * @param name metric name, lower case with underscores
+     * @param value supplier of the current value
+     */
+    public void registerGauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Render all metrics in the Prometheus text exposition format
+     * @return the metrics page
+     */
+    public String render() {
+        StringBuilder out = new StringBuilder(4096);
+        out.append("# HELP accessauth_step_latency_seconds Latency of each protocol step\n");
+        out.append("# TYPE accessauth_step_latency_seconds summary\n");
+        for (Step step : Step.values()) {
+            LatencyHistogram histogram = getHistogram(step);
+            String label = "step=\"" + name(step) + "\"";
+            for (String quantile : QUANTILES) {
+                appendSample(out, "accessauth_step_latency_seconds", label + ",quantile=\"" + quantile + "\"",
+                        seconds(histogram.getPercentileMicros(Double.parseDouble(quantile) * 100)));
+            }
+            appendSample(out, "accessauth_step_latency_seconds_sum", label, seconds(histogram.getSumMicros()));
+            appendSample(out, "accessauth_step_latency_seconds_count", label, String.valueOf(histogram.getCount()));
+        }
+        out.append("# HELP accessauth_step_latency_max_seconds Slowest recorded protocol step\n");
+        out.append("# TYPE accessauth_step_latency_max_seconds gauge\n");
+        for (Step step : Step.values()) {
+            appendSample(out, "accessauth_step_latency_max_seconds", "step=\"" + name(step) + "\"",
+                    seconds(getHistogram(step).getMaxMicros()));
+        }
+        out.append("# HELP accessauth_outcomes_total Finished authentications by outcome\n");
+        out.append("# TYPE accessauth_outcomes_total counter\n");
+        for (Outcome outcome : Outcome.values()) {
+            appendSample(out, "accessauth_outcomes_total", "outcome=\"" + name(outcome) + "\"",
+                    String.valueOf(getCount(outcome)));
+        }
+        gauges.keySet().stream().sorted().forEach(name -> {
+            out.append("# TYPE accessauth_").append(name).append(" gauge\n");
+            appendSample(out, "accessauth_" + name, null, String.valueOf(gauges.get(name).getAsLong()));
+        });
+        return out.toString();
+    }
+
+    // Reset all histograms and counters, e.g. between benchmark runs
+    public void reset() {
+        for (LatencyHistogram histogram : steps) {
+            histogram.reset();
+        }
+        for (LongAdder outcome : outcomes) {
+            outcome.reset();
+        }
+    }
+
+    private static void appendSample(StringBuilder out, String metric, String labels, String value) {
+        out.append(metric);
+        if (labels != null) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static String name(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+
+    private static String seconds(long micros) {
+        return String.format(Locale.ROOT, "%.6f", micros / 1_000_000.0);
+    }
+}
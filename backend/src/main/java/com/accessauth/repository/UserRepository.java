@@ -1,11 +1,14 @@
 package com.accessauth.repository;
 
 import com.accessauth.domain.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -21,4 +24,18 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     @Query("SELECT u.symKey FROM User u WHERE u.id = :id AND u.active = true")
     Optional<String> getSymKeyById(@Param("id") Long id);
+
+    // Keys of all active users among ids, one round trip; each row is {id, symKey}
+    @Query("SELECT u.id, u.symKey FROM User u WHERE u.id IN :ids AND u.active = true")
+    List<Object[]> getSymKeysByIds(@Param("ids") Collection<Long> ids);
+
+    long countByActiveTrue();
+
+    // Ids of active users above afterId in ascending order; page through with the last id returned
+    @Query("SELECT u.id FROM User u WHERE u.active = true AND u.id > :afterId ORDER BY u.id")
+    List<Long> findActiveIdsAfter(@Param("afterId") Long afterId, Pageable page);
+
+    // Keys of active users above afterId in ascending id order; each row is {id, symKey}
+    @Query("SELECT u.id, u.symKey FROM User u WHERE u.active = true AND u.id > :afterId ORDER BY u.id")
+    List<Object[]> findActiveCredentialsAfter(@Param("afterId") Long afterId, Pageable page);
 }
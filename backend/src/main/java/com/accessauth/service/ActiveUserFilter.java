@@ -0,0 +1,213 @@
+package com.accessauth.service;
+
+import com.accessauth.datasource.ReplicaRoutingDataSource;
+import com.accessauth.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory Bloom filter of active user ids, so auth requests for ids that were
+ * never active are rejected without a database query. The filter is rebuilt from
+ * the users table in the background; users saved through this service are added
+ * once their transaction commits. Until the first build completes every id passes.
+ *
+ * A Bloom filter cannot forget: a deactivated user still passes until the next
+ * rebuild, which only means the database is asked as before.
+ *
+ * Users added by other processes enter the filter through the change listener.
+ * While it is not receiving changes the filter is suspended and passes every id.
+ * Once changes may have been missed, it also passes every id until a rebuild
+ * started after that point completes.
+ */
+@Component
+public class ActiveUserFilter {
+    private static final int PAGE_SIZE = 10_000;
+    // Room for users added between rebuilds
+    private static final double HEADROOM = 1.25;
+    private static final long MIN_CAPACITY = 1024;
+
+    private final UserRepository userRepository;
+    private final boolean enabled;
+    private final double falsePositiveRate;
+    private final long maxBits;
+    private final long rebuildMillis;
+
+    // Null until the first build completes
+    private volatile BloomFilter filter;
+    // The filter being built, so ids added meanwhile are not lost in the swap
+    private volatile BloomFilter building;
+    private final LongAdder rejected = new LongAdder();
+    private ScheduledExecutorService rebuilder;
+    // False while the filter may be missing active users; guarded by this together with the two below
+    private volatile boolean complete = true;
+    private boolean suspended;
+    private long generation;
+
+    public ActiveUserFilter(UserRepository userRepository,
+                            @Value("${credentials.filter.enabled:true}") boolean enabled,
+                            @Value("${credentials.filter.false-positive-rate:0.01}") double falsePositiveRate,
+                            @Value("${credentials.filter.max-memory-mb:64}") int maxMemoryMb,
+                            @Value("${credentials.filter.rebuild-ms:60000}") long rebuildMillis) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1 || maxMemoryMb <= 0 || rebuildMillis <= 0) {
+            throw new IllegalArgumentException(
+                    "Require 0 < false-positive-rate < 1, max-memory-mb > 0 and rebuild-ms > 0");
+        }
+        this.userRepository = userRepository;
+        this.enabled = enabled;
+        this.falsePositiveRate = falsePositiveRate;
+        this.maxBits = maxMemoryMb * 8L * 1024 * 1024;
+        this.rebuildMillis = rebuildMillis;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        rebuilder = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "active-user-filter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        rebuilder.scheduleWithFixedDelay(this::rebuildQuietly, 0, rebuildMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (rebuilder != null) {
+            rebuilder.shutdownNow();
+        }
+    }
+
+    /**
+     * @param id the user id
+     * @return false only if the user is certainly not active
+     */
+    public boolean mightBeActive(long id) {
+        BloomFilter current = filter;
+        if (current == null || !complete || current.mightContain(id)) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    // Record a user that became active
+    public void add(long id) {
+        BloomFilter next = building;
+        if (next != null) {
+            next.add(id);
+        }
+        BloomFilter current = filter;
+        if (current != null) {
+            current.add(id);
+        }
+    }
+
+    /**
+     * Changes from other processes are not being received: pass every id until
+     * {@link #resync()}, since users added meanwhile are missing from the filter
+     */
+    public synchronized void suspend() {
+        generation++;
+        suspended = true;
+        complete = false;
+    }
+
+    /**
+     * Changes from other processes may have been missed: pass every id until a
+     * rebuild started now completes, and start one
+     */
+    public void resync() {
+        synchronized (this) {
+            generation++;
+            suspended = false;
+            complete = false;
+        }
+        if (rebuilder != null) {
+            rebuilder.execute(this::rebuildQuietly);
+        }
+    }
+
+    /**
+     * Build a new filter from all active users and swap it in
+     * @return number of active users loaded
+     */
+    public long rebuild() {
+        // From the primary: a replica may not have a user added just before, and the new
+        // filter would reject them until the next rebuild
+        return ReplicaRoutingDataSource.onPrimary(this::buildAndSwap);
+    }
+
+    private long buildAndSwap() {
+        long startGeneration;
+        synchronized (this) {
+            startGeneration = generation;
+        }
+        long activeUsers = userRepository.countByActiveTrue();
+        BloomFilter next = new BloomFilter(Math.max(MIN_CAPACITY, (long) (activeUsers * HEADROOM)),
+                falsePositiveRate, maxBits);
+        building = next;
+        long loaded = 0;
+        try {
+            Long afterId = Long.MIN_VALUE;
+            List<Long> page;
+            do {
+                page = userRepository.findActiveIdsAfter(afterId, PageRequest.of(0, PAGE_SIZE));
+                for (Long id : page) {
+                    next.add(id);
+                }
+                loaded += page.size();
+                if (!page.isEmpty()) {
+                    afterId = page.get(page.size() - 1);
+                }
+            } while (page.size() == PAGE_SIZE);
+            filter = next;
+            synchronized (this) {
+                // Only a build that started after the last gap has every user added during it
+                if (generation == startGeneration && !suspended) {
+                    complete = true;
+                }
+            }
+        } finally {
+            building = null;
+        }
+        return loaded;
+    }
+
+    private void rebuildQuietly() {
+        try {
+            long loaded = rebuild();
+            BloomFilter current = filter;
+            System.out.println("[ActiveUserFilter] Loaded " + loaded + " active users ("
+                    + current.getBitCount() / 8 / 1024 + " KB, " + current.getHashCount() + " hashes, expected"
+                    + String.format(" %.4f", current.expectedFalsePositiveRate(loaded)) + " false-positive rate)");
+        } catch (RuntimeException e) {
+            // Keep the previous filter; while there is none every id passes
+            System.err.println("[ActiveUserFilter] Rebuild failed: " + e.getMessage());
+        }
+    }
+
+    // Lookups answered without the database
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public boolean isReady() {
+        return filter != null;
+    }
+
+    // False while every id passes because active users may be missing
+    public boolean isComplete() {
+        return complete;
+    }
+}
@@ -0,0 +1,97 @@
+package com.accessauth.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Bloom filter of long keys. mightContain never returns false for a key that
+ * was added; it returns true for an absent key with about the configured
+ * false-positive rate. Adds and lookups are lock-free and may run concurrently.
+ */
+public class BloomFilter {
+    // Largest bit array a long[] of Integer.MAX_VALUE words can hold
+    private static final long MAX_BITS = (long) Integer.MAX_VALUE * Long.SIZE;
+    private static final int MAX_HASHES = 16;
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    private static final LongBinaryOperator OR = (word, bit) -> word | bit;
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * Size the filter for the expected number of keys and false-positive rate,
+     * using at most maxBits bits (the false-positive rate grows if the budget is too small)
+     * @param expectedInsertions keys the filter is sized for
+     * @param falsePositiveRate target share of absent keys reported as present, e.g. 0.01
+     * @param maxBits memory budget in bits
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveRate, long maxBits) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1");
+        }
+        if (maxBits < Long.SIZE) {
+            throw new IllegalArgumentException("maxBits must be at least " + Long.SIZE);
+        }
+        long n = Math.max(1, expectedInsertions);
+        double optimalBits = -n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        long bits = (long) Math.ceil(Math.min(optimalBits, Math.min(maxBits, MAX_BITS)));
+        // Whole words only, rounded down so the budget is respected
+        bits = Math.max(Long.SIZE, bits / Long.SIZE * Long.SIZE);
+
+        this.words = new AtomicLongArray((int) (bits / Long.SIZE));
+        this.bitCount = bits;
+        this.hashCount = (int) Math.max(1, Math.min(MAX_HASHES, Math.round((double) bits / n * Math.log(2))));
+    }
+
+    public void add(long key) {
+        long h1 = mix(key + GOLDEN_GAMMA);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            if ((words.get(word) & mask) == 0) {
+                words.accumulateAndGet(word, mask, OR);
+            }
+        }
+    }
+
+    /**
+     * @return false if the key was certainly never added
+     */
+    public boolean mightContain(long key) {
+        long h1 = mix(key + GOLDEN_GAMMA);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getBitCount() {
+        return bitCount;
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    /**
+     * @param insertions number of distinct keys added
+     * @return the expected false-positive rate at that fill
+     */
+    public double expectedFalsePositiveRate(long insertions) {
+        return Math.pow(1 - Math.exp(-(double) hashCount * insertions / bitCount), hashCount);
+    }
+
+    // SplitMix64 finalizer: consecutive ids spread over the whole bit array
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
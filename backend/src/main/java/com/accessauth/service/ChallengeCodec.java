@@ -0,0 +1,160 @@
+package com.accessauth.service;
+
+import java.util.Arrays;
+
+/**
+ * Hex and Base64 codecs that work on caller-supplied byte arrays, so the
+ * challenge path can convert between wire and cipher forms without
+ * allocating intermediate Strings, plus a constant-time comparison.
+ */
+public final class ChallengeCodec {
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes();
+    private static final byte[] BASE64_ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes();
+    private static final int[] BASE64_VALUES = new int[128];
+
+    static {
+        Arrays.fill(BASE64_VALUES, -1);
+        for (int i = 0; i < BASE64_ALPHABET.length; i++) {
+            BASE64_VALUES[BASE64_ALPHABET[i]] = i;
+        }
+    }
+
+    private ChallengeCodec() {
+    }
+
+    public static int hexLength(int length) {
+        return length * 2;
+    }
+
+    /**
+     * Lower-case hex encode src[offset, offset + length) into dst
+     * @return number of bytes written
+     */
+    public static int encodeHex(byte[] src, int offset, int length, byte[] dst, int dstOffset) {
+        for (int i = 0; i < length; i++) {
+            int b = src[offset + i] & 0xff;
+            dst[dstOffset + 2 * i] = HEX_DIGITS[b >>> 4];
+            dst[dstOffset + 2 * i + 1] = HEX_DIGITS[b & 0x0f];
+        }
+        return length * 2;
+    }
+
+    /**
+     * Decode a hex string (either case) into dst
+     * @return number of bytes written
+     * @throws IllegalArgumentException on odd length, bad digits or a too small dst
+     */
+    public static int decodeHex(CharSequence hex, byte[] dst, int dstOffset) {
+        int length = hex.length();
+        if (length % 2 != 0) {
+            throw new IllegalArgumentException("Invalid hexadecimal string");
+        }
+        if (length / 2 > dst.length - dstOffset) {
+            throw new IllegalArgumentException("Hexadecimal string too long");
+        }
+        for (int i = 0; i < length; i += 2) {
+            int high = hexValue(hex.charAt(i));
+            int low = hexValue(hex.charAt(i + 1));
+            dst[dstOffset + i / 2] = (byte) ((high << 4) | low);
+        }
+        return length / 2;
+    }
+
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        throw new IllegalArgumentException("Invalid hexadecimal string");
+    }
+
+    // Length of the padded Base64 form of length bytes
+    public static int base64Length(int length) {
+        return (length + 2) / 3 * 4;
+    }
+
+    /**
+     * Standard, padded Base64 encode src[offset, offset + length) into dst
+     * @return number of bytes written
+     */
+    public static int encodeBase64(byte[] src, int offset, int length, byte[] dst, int dstOffset) {
+        int out = dstOffset;
+        int end = offset + length;
+        int i = offset;
+        for (; i + 3 <= end; i += 3) {
+            int bits = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8 | (src[i + 2] & 0xff);
+            dst[out++] = BASE64_ALPHABET[bits >>> 18];
+            dst[out++] = BASE64_ALPHABET[(bits >>> 12) & 0x3f];
+            dst[out++] = BASE64_ALPHABET[(bits >>> 6) & 0x3f];
+            dst[out++] = BASE64_ALPHABET[bits & 0x3f];
+        }
+        int remaining = end - i;
+        if (remaining > 0) {
+            int bits = (src[i] & 0xff) << 16 | (remaining == 2 ? (src[i + 1] & 0xff) << 8 : 0);
+            dst[out++] = BASE64_ALPHABET[bits >>> 18];
+            dst[out++] = BASE64_ALPHABET[(bits >>> 12) & 0x3f];
+            dst[out++] = remaining == 2 ? BASE64_ALPHABET[(bits >>> 6) & 0x3f] : (byte) '=';
+            dst[out++] = '=';
+        }
+        return out - dstOffset;
+    }
+
+    /**
+     * Decode standard, padded Base64 from src[offset, offset + length) into dst.
+     * Decoding in place (dst == src, same offset) is allowed.
+     * @return number of bytes written
+     * @throws IllegalArgumentException on malformed input
+     */
+    public static int decodeBase64(byte[] src, int offset, int length, byte[] dst, int dstOffset) {
+        if (length % 4 != 0) {
+            throw new IllegalArgumentException("Invalid Base64 length");
+        }
+        int out = dstOffset;
+        int end = offset + length;
+        for (int i = offset; i < end; i += 4) {
+            boolean last = i + 4 == end;
+            int padding = 0;
+            if (last && src[i + 3] == '=') {
+                padding = src[i + 2] == '=' ? 2 : 1;
+            }
+            int bits = base64Value(src[i]) << 18 | base64Value(src[i + 1]) << 12
+                    | (padding == 2 ? 0 : base64Value(src[i + 2]) << 6)
+                    | (padding >= 1 ? 0 : base64Value(src[i + 3]));
+            dst[out++] = (byte) (bits >>> 16);
+            if (padding < 2) {
+                dst[out++] = (byte) (bits >>> 8);
+            }
+            if (padding < 1) {
+                dst[out++] = (byte) bits;
+            }
+        }
+        return out - dstOffset;
+    }
+
+    private static int base64Value(byte b) {
+        int value = b >= 0 ? BASE64_VALUES[b] : -1;
+        if (value < 0) {
+            throw new IllegalArgumentException("Invalid Base64 character");
+        }
+        return value;
+    }
+
+    /**
+     * Compare expected with actual[offset, offset + length) in time that depends
+     * only on the expected length, never on where the first mismatch is
+     */
+    public static boolean constantTimeEquals(byte[] expected, byte[] actual, int offset, int length) {
+        int diff = expected.length ^ length;
+        for (int i = 0; i < expected.length; i++) {
+            byte b = i < length ? actual[offset + i] : 0;
+            diff |= expected[i] ^ b;
+        }
+        return diff == 0;
+    }
+}
@@ -0,0 +1,146 @@
+package com.accessauth.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pool of pre-generated challenges so the request path only dequeues.
+ * Background refill threads, each with its own DRBG, top the pool up to
+ * its capacity whenever it drops below the low watermark. Every challenge
+ * is handed out exactly once.
+ */
+@Component
+public class ChallengePool {
+    // Refill threads also wake up on their own at this interval
+    private static final long REFILL_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final CryptoService cryptoService;
+    private final int capacity;
+    private final int lowWatermark;
+    private final int refillThreadCount;
+
+    private final Queue<byte[]> challenges = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong served = new AtomicLong();
+    private final AtomicLong exhausted = new AtomicLong();
+    private final AtomicLong generated = new AtomicLong();
+    private Thread[] refillThreads = new Thread[0];
+    private volatile boolean running;
+
+    public ChallengePool(CryptoService cryptoService,
+                         @Value("${challenge.pool.capacity:4096}") int capacity,
+                         @Value("${challenge.pool.low-watermark:1024}") int lowWatermark,
+                         @Value("${challenge.pool.refill-threads:1}") int refillThreadCount) {
+        if (capacity <= 0 || lowWatermark < 0 || lowWatermark >= capacity || refillThreadCount <= 0) {
+            throw new IllegalArgumentException("Require 0 <= low-watermark < capacity and refill-threads > 0");
+        }
+        this.cryptoService = cryptoService;
+        this.capacity = capacity;
+        this.lowWatermark = lowWatermark;
+        this.refillThreadCount = refillThreadCount;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        refillThreads = new Thread[refillThreadCount];
+        for (int i = 0; i < refillThreadCount; i++) {
+            Thread thread = new Thread(this::refillLoop, "challenge-refill-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            refillThreads[i] = thread;
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        for (Thread thread : refillThreads) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Take a fresh challenge. Never blocks: if the pool is empty the challenge
+     * is generated inline and the miss is counted as an exhaustion.
+     * @return challenge bytes, see CryptoService.generateChallengeBytes
+     */
+    public byte[] take() {
+        byte[] challenge = challenges.poll();
+        if (challenge == null) {
+            exhausted.incrementAndGet();
+            wakeRefillers();
+            return cryptoService.generateChallengeBytes();
+        }
+        served.incrementAndGet();
+        if (size.decrementAndGet() < lowWatermark) {
+            wakeRefillers();
+        }
+        return challenge;
+    }
+
+    private void wakeRefillers() {
+        for (Thread thread : refillThreads) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void refillLoop() {
+        while (running) {
+            if (size.get() < lowWatermark) {
+                fill();
+            }
+            LockSupport.parkNanos(this, REFILL_CHECK_NANOS);
+        }
+    }
+
+    // Top the pool up to capacity; threads reserve a slot before generating so they never overshoot
+    private void fill() {
+        while (running) {
+            int current = size.get();
+            if (current >= capacity) {
+                return;
+            }
+            if (size.compareAndSet(current, current + 1)) {
+                challenges.add(cryptoService.generateChallengeBytes());
+                generated.incrementAndGet();
+            }
+        }
+    }
+
+    public int getSize() {
+        return size.get();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getLowWatermark() {
+        return lowWatermark;
+    }
+
+    // Challenges served from the pool
+    public long getServedCount() {
+        return served.get();
+    }
+
+    // Requests that found the pool empty and generated inline
+    public long getExhaustedCount() {
+        return exhausted.get();
+    }
+
+    // Challenges produced by the refill threads
+    public long getGeneratedCount() {
+        return generated.get();
+    }
+}
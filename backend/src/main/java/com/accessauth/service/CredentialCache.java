@@ -0,0 +1,162 @@
+package com.accessauth.service;
+
+import com.accessauth.collection.ConcurrentLongHashMap;
+import com.accessauth.datasource.ReplicaRoutingDataSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, TTL-based in-memory cache of active users' symmetric keys.
+ * Entries younger than the TTL are served directly; older entries are kept
+ * until the stale TTL so lookups can fall back on them while the database
+ * is unreachable. When reads may come from a replica, keys loaded within the
+ * replica lag of an invalidation are served but not cached.
+ */
+@Component
+public class CredentialCache {
+    // Entries inspected when choosing an eviction victim
+    private static final int EVICTION_SAMPLE = 8;
+
+    private final ConcurrentLongHashMap<Entry> entries;
+    private final AtomicLong version = new AtomicLong();
+    private final int maxSize;
+    private final long ttlNanos;
+    private final long staleTtlNanos;
+    // How far behind the primary a key read from a replica may be (0 without replicas)
+    private volatile long replicaLagNanos;
+    private volatile long lastInvalidatedNanos;
+
+    public CredentialCache(@Value("${credentials.cache.max-size:100000}") int maxSize,
+                           @Value("${credentials.cache.ttl-ms:30000}") long ttlMillis,
+                           @Value("${credentials.cache.stale-ttl-ms:600000}") long staleTtlMillis) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.maxSize = maxSize;
+        this.entries = new ConcurrentLongHashMap<>(maxSize, 16);
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.staleTtlNanos = Math.max(ttlMillis, staleTtlMillis) * 1_000_000L;
+    }
+
+    @Autowired(required = false)
+    public void setReplicaRouting(ReplicaRoutingDataSource replicaRouting) {
+        setReplicaLagMillis(replicaRouting.getMaxLagMillis());
+    }
+
+    public void setReplicaLagMillis(long replicaLagMillis) {
+        this.replicaLagNanos = replicaLagMillis * 1_000_000L;
+    }
+
+    /**
+     * @param id the user id
+     * @return the cached key if it is younger than the TTL
+     */
+    public Optional<String> getFresh(long id) {
+        return get(id, ttlNanos);
+    }
+
+    /**
+     * @param id the user id
+     * @return the cached key if it is younger than the stale TTL (for database outages)
+     */
+    public Optional<String> getStale(long id) {
+        return get(id, staleTtlNanos);
+    }
+
+    private Optional<String> get(long id, long maxAgeNanos) {
+        Entry entry = entries.get(id);
+        if (entry == null || System.nanoTime() - entry.loadedAt > maxAgeNanos) {
+            return Optional.empty();
+        }
+        return Optional.of(entry.symKey);
+    }
+
+    /**
+     * Current invalidation version; take it before reading from the database
+     * and pass it to {@link #putIfCurrent} afterwards
+     */
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * Cache a key loaded from the database, unless an invalidation happened since
+     * the load started or within the replica lag before it (the loaded value could
+     * already be outdated)
+     * @param id the user id
+     * @param symKey the user's key
+     * @param loadVersion the version taken before the load
+     */
+    public void putIfCurrent(long id, String symKey, long loadVersion) {
+        if (replicaLagNanos > 0 && loadVersion != 0 && System.nanoTime() - lastInvalidatedNanos <= replicaLagNanos) {
+            // A replica may not have the change behind that invalidation yet
+            return;
+        }
+        if (entries.size() >= maxSize && !entries.containsKey(id)) {
+            evictOne();
+        }
+        entries.put(id, new Entry(symKey, System.nanoTime()));
+        if (version.get() != loadVersion) {
+            // Raced with an invalidation; drop what we just stored
+            entries.remove(id);
+        }
+    }
+
+    public void invalidate(long id) {
+        lastInvalidatedNanos = System.nanoTime();
+        version.incrementAndGet();
+        entries.remove(id);
+    }
+
+    /**
+     * Drop a user's entry after a lookup found no active user. Unlike
+     * {@link #invalidate} this records no change, so loads of other users in
+     * flight are still cached
+     * @param id the user id
+     */
+    public void evict(long id) {
+        entries.remove(id);
+    }
+
+    public void invalidateAll() {
+        lastInvalidatedNanos = System.nanoTime();
+        version.incrementAndGet();
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    // Approximate LRU: drop the oldest of a few sampled entries
+    private void evictOne() {
+        long[] sample = new long[EVICTION_SAMPLE];
+        int sampled = entries.sampleKeys(sample);
+        Entry victim = null;
+        long victimId = 0;
+        for (int i = 0; i < sampled; i++) {
+            Entry candidate = entries.get(sample[i]);
+            if (candidate != null && (victim == null || candidate.loadedAt < victim.loadedAt)) {
+                victim = candidate;
+                victimId = sample[i];
+            }
+        }
+        if (victim != null) {
+            entries.remove(victimId, victim);
+        }
+    }
+
+    private static final class Entry {
+        private final String symKey;
+        private final long loadedAt;
+
+        Entry(String symKey, long loadedAt) {
+            this.symKey = symKey;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
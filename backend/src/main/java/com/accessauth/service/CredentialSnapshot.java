@@ -0,0 +1,372 @@
+package com.accessauth.service;
+
+import com.accessauth.collection.ConcurrentLongHashMap;
+import com.accessauth.datasource.ReplicaRoutingDataSource;
+import com.accessauth.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Memory-mapped snapshot file of all active (id, symmetric key) pairs, so keys
+ * can be served without a database round trip and survive restarts and outages.
+ * The database stays the source of truth: a background task re-reads the active
+ * users page by page and rewrites the file only when something changed.
+ *
+ * File layout: a 64-byte header (magic, format version, snapshot version,
+ * creation time, record count, record size, CRC32 of the records) followed by
+ * fixed-size records sorted by id, so a lookup is a binary search over the mapping.
+ * The file holds secret keys and is created readable by its owner only.
+ * When the pages are read from a replica, a pass only reflects changes made a
+ * replica lag before it started.
+ */
+@Component
+public class CredentialSnapshot {
+    private static final int MAGIC = 0x4141534E; // "AASN"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    // Record: id (8 bytes), key length (1 byte), key bytes padded to KEY_SLOT
+    private static final int KEY_SLOT = 63;
+    private static final int RECORD_SIZE = 8 + 1 + KEY_SLOT;
+    private static final int PAGE_SIZE = 10_000;
+    private static final byte[] PADDING = new byte[KEY_SLOT];
+
+    private final UserRepository userRepository;
+    private final boolean enabled;
+    private final Path path;
+    private final long refreshMillis;
+    private final long maxAgeMillis;
+
+    private volatile Mapping mapping = Mapping.EMPTY;
+    // When the mapped records were last confirmed against the database
+    private volatile long verifiedAtMillis;
+    // Ids changed through this process since the last refresh; the database answers for them
+    private final ConcurrentLongHashMap<Long> invalidated = new ConcurrentLongHashMap<>(64, 16);
+    // When all entries were last distrusted; only a refresh started after that makes the snapshot fresh
+    private volatile long invalidatedAllNanos = System.nanoTime();
+    // How far behind the primary the pages read may be (0 without replicas)
+    private volatile long replicaLagMillis;
+    private ScheduledExecutorService refresher;
+
+    public CredentialSnapshot(UserRepository userRepository,
+                              @Value("${credentials.snapshot.enabled:true}") boolean enabled,
+                              @Value("${credentials.snapshot.path:data/credentials.snapshot}") String path,
+                              @Value("${credentials.snapshot.refresh-ms:30000}") long refreshMillis,
+                              @Value("${credentials.snapshot.max-age-ms:60000}") long maxAgeMillis) {
+        if (refreshMillis <= 0 || maxAgeMillis <= 0) {
+            throw new IllegalArgumentException("refresh-ms and max-age-ms must be positive");
+        }
+        this.userRepository = userRepository;
+        this.enabled = enabled;
+        this.path = Paths.get(path);
+        this.refreshMillis = refreshMillis;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    @Autowired(required = false)
+    public void setReplicaRouting(ReplicaRoutingDataSource replicaRouting) {
+        setReplicaLagMillis(replicaRouting.getMaxLagMillis());
+    }
+
+    public void setReplicaLagMillis(long replicaLagMillis) {
+        this.replicaLagMillis = replicaLagMillis;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        load();
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "credential-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(this::refreshQuietly, 0, refreshMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    /**
+     * Map an existing snapshot file. A missing or damaged file leaves the snapshot empty.
+     * @return true if a snapshot was loaded
+     */
+    public boolean load() {
+        if (!Files.exists(path)) {
+            return false;
+        }
+        long started = System.nanoTime();
+        try {
+            Mapping loaded = Mapping.open(path);
+            mapping = loaded;
+            // Trusted as fresh only from the time it was written
+            verifiedAtMillis = loaded.createdAtMillis;
+            System.out.println("[CredentialSnapshot] Loaded " + loaded.recordCount + " keys (version "
+                    + loaded.version + ") in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " ms");
+            return true;
+        } catch (IOException e) {
+            System.err.println("[CredentialSnapshot] Ignoring unusable snapshot " + path + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @return true if the snapshot was confirmed against the database within max-age-ms
+     */
+    public boolean isFresh() {
+        return System.currentTimeMillis() - verifiedAtMillis <= maxAgeMillis;
+    }
+
+    /**
+     * Key of an active user as of the snapshot, whatever its age
+     * @param id the user id
+     * @return the key, or empty if the user is not in the snapshot or changed since
+     */
+    public Optional<String> get(long id) {
+        if (!invalidated.isEmpty() && invalidated.containsKey(id)) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(mapping.find(id));
+    }
+
+    // A user changed through this process: stop serving the snapshot entry until the next refresh
+    public void invalidate(long id) {
+        invalidated.put(id, System.nanoTime());
+    }
+
+    // Changes may have been missed: serve nothing without a query until the next refresh
+    public void invalidateAll() {
+        invalidatedAllNanos = System.nanoTime();
+        verifiedAtMillis = 0;
+    }
+
+    /**
+     * Re-read all active users from the database; the file is rewritten and
+     * remapped only if any key was added, changed or removed
+     * @return true if the snapshot changed
+     */
+    public boolean refresh() throws IOException {
+        // The data read is at least as recent as this
+        long lagMillis = replicaLagMillis;
+        long asOfNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(lagMillis);
+        long asOfMillis = System.currentTimeMillis() - lagMillis;
+        Mapping current = mapping;
+        Path temp = createTempFile();
+        boolean changed;
+        long version = current.version + 1;
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 1024);
+            CRC32 crc = new CRC32();
+            out.position(HEADER_SIZE);
+            int count = 0;
+            int differences = 0;
+            Long afterId = Long.MIN_VALUE;
+            List<Object[]> page;
+            do {
+                page = userRepository.findActiveCredentialsAfter(afterId, PageRequest.of(0, PAGE_SIZE));
+                for (Object[] row : page) {
+                    long id = (Long) row[0];
+                    byte[] key = ((String) row[1]).getBytes(StandardCharsets.UTF_8);
+                    if (key.length > KEY_SLOT) {
+                        continue; // not representable; such users are looked up in the database
+                    }
+                    // Both sides are sorted by id, so an unchanged snapshot matches record for record
+                    if (!current.matches(count, id, key)) {
+                        differences++;
+                    }
+                    if (buffer.remaining() < RECORD_SIZE) {
+                        writeRecords(out, buffer, crc);
+                    }
+                    buffer.putLong(id).put((byte) key.length).put(key).put(PADDING, 0, KEY_SLOT - key.length);
+                    count++;
+                }
+                if (!page.isEmpty()) {
+                    afterId = (Long) page.get(page.size() - 1)[0];
+                }
+            } while (page.size() == PAGE_SIZE);
+            writeRecords(out, buffer, crc);
+
+            changed = differences > 0 || count != current.recordCount || current == Mapping.EMPTY;
+            if (changed) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(version).putLong(asOfMillis)
+                        .putInt(count).putInt(RECORD_SIZE).putLong(crc.getValue());
+                header.clear();
+                out.write(header, 0);
+                out.force(true);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        if (changed) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            mapping = Mapping.open(path);
+        } else {
+            Files.delete(temp);
+        }
+        if (asOfNanos - invalidatedAllNanos >= 0) {
+            verifiedAtMillis = asOfMillis;
+        }
+        // Changes made before the data read are now reflected in the snapshot
+        invalidated.removeIf(recordedNanos -> recordedNanos - asOfNanos < 0);
+        return changed;
+    }
+
+    private void refreshQuietly() {
+        try {
+            long started = System.nanoTime();
+            if (refresh()) {
+                System.out.println("[CredentialSnapshot] Wrote version " + mapping.version + " with "
+                        + mapping.recordCount + " keys in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " ms");
+            }
+        } catch (IOException | RuntimeException e) {
+            // Keep serving the current snapshot; it only counts as fresh again after a successful pass
+            System.err.println("[CredentialSnapshot] Refresh failed: " + e.getMessage());
+        }
+    }
+
+    private Path createTempFile() throws IOException {
+        Path dir = path.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            return Files.createTempFile(dir, path.getFileName().toString(), ".tmp",
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        }
+        return Files.createTempFile(dir, path.getFileName().toString(), ".tmp");
+    }
+
+    private static void writeRecords(FileChannel out, ByteBuffer buffer, CRC32 crc) throws IOException {
+        buffer.flip();
+        crc.update(buffer.duplicate());
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    public long getVersion() {
+        return mapping.version;
+    }
+
+    public int size() {
+        return mapping.recordCount;
+    }
+
+    /**
+     * One mapped, validated snapshot file; immutable once opened
+     */
+    private static final class Mapping {
+        static final Mapping EMPTY = new Mapping(null, 0, 0, 0);
+
+        final ByteBuffer records;
+        final long version;
+        final long createdAtMillis;
+        final int recordCount;
+
+        private Mapping(ByteBuffer records, long version, long createdAtMillis, int recordCount) {
+            this.records = records;
+            this.version = version;
+            this.createdAtMillis = createdAtMillis;
+            this.recordCount = recordCount;
+        }
+
+        static Mapping open(Path path) throws IOException {
+            MappedByteBuffer file;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                if (channel.size() < HEADER_SIZE) {
+                    throw new IOException("file too short");
+                }
+                // The mapping stays valid after the channel is closed
+                file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            if (file.getInt(0) != MAGIC) {
+                throw new IOException("not a credential snapshot");
+            }
+            if (file.getInt(4) != FORMAT_VERSION || file.getInt(28) != RECORD_SIZE) {
+                throw new IOException("unsupported format version " + file.getInt(4));
+            }
+            long version = file.getLong(8);
+            long createdAtMillis = file.getLong(16);
+            int recordCount = file.getInt(24);
+            long expectedCrc = file.getLong(32);
+            if (file.capacity() != HEADER_SIZE + (long) recordCount * RECORD_SIZE) {
+                throw new IOException("record count does not match file size");
+            }
+            ByteBuffer records = file.slice(HEADER_SIZE, recordCount * RECORD_SIZE);
+            CRC32 crc = new CRC32();
+            crc.update(records.duplicate());
+            if (crc.getValue() != expectedCrc) {
+                throw new IOException("checksum mismatch");
+            }
+            return new Mapping(records, version, createdAtMillis, recordCount);
+        }
+
+        // Binary search by id; absolute reads only, so concurrent lookups are safe
+        String find(long id) {
+            int low = 0;
+            int high = recordCount - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long midId = records.getLong(mid * RECORD_SIZE);
+                if (midId < id) {
+                    low = mid + 1;
+                } else if (midId > id) {
+                    high = mid - 1;
+                } else {
+                    int offset = mid * RECORD_SIZE + 8;
+                    byte[] key = new byte[records.get(offset) & 0xff];
+                    records.get(offset + 1, key);
+                    return new String(key, StandardCharsets.UTF_8);
+                }
+            }
+            return null;
+        }
+
+        boolean matches(int index, long id, byte[] key) {
+            if (index >= recordCount) {
+                return false;
+            }
+            int offset = index * RECORD_SIZE;
+            if (records.getLong(offset) != id || (records.get(offset + 8) & 0xff) != key.length) {
+                return false;
+            }
+            for (int i = 0; i < key.length; i++) {
+                if (records.get(offset + 9 + i) != key[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -1,10 +1,14 @@
 package com.accessauth.service;
 
+import com.accessauth.collection.ConcurrentLongHashMap;
 import org.springframework.stereotype.Service;
 
 import javax.crypto.Cipher;
 import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Base64;
 
 @Service
@@ -13,15 +17,92 @@ public class CryptoService {
     private static final String ALGORITHM = "AES";
     private static final String TRANSFORMATION = "AES/ECB/PKCS5Padding";
     
+    // Upper bound of cached user keys
+    private static final int MAX_CACHED_KEYS = 100_000;
+    
+    // Cipher instances are not thread-safe, so each thread keeps its own pair;
+    // re-initialising a cipher with the key it already holds skips the AES key expansion
+    private static final ThreadLocal<Cipher> ENCRYPT_CIPHER = ThreadLocal.withInitial(CryptoService::newCipher);
+    private static final ThreadLocal<Cipher> DECRYPT_CIPHER = ThreadLocal.withInitial(CryptoService::newCipher);
+    
+    // One DRBG per thread: seeded once, and no contention on a shared generator
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(CryptoService::newDrbg);
+    
+    // Per-thread scratch space for decrypted responses, so verification allocates nothing
+    private static final ThreadLocal<byte[]> PLAINTEXT_BUFFER = ThreadLocal.withInitial(() -> new byte[256]);
+    
+    // Ready-to-use key specs per user id, invalidated when the user's key changes
+    private final ConcurrentLongHashMap<CachedKey> keyCache = new ConcurrentLongHashMap<>(1024, 16);
+    
     /**
      * Generate a random challenge
      * @return Base64 encoded challenge string
      */
     public String generateChallenge() {
-        SecureRandom random = new SecureRandom();
+        return new String(generateChallengeBytes(), StandardCharsets.US_ASCII);
+    }
+    
+    /**
+     * Generate a random challenge in byte form. The bytes are the ASCII of the
+     * same URL-safe Base64 text generateChallenge returns, so readers decrypt
+     * exactly what they did before.
+     * @return challenge bytes
+     */
+    public byte[] generateChallengeBytes() {
         byte[] bytes = new byte[32]; // 256-bit challenge
-        random.nextBytes(bytes);
-        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        RANDOM.get().nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encode(bytes);
+    }
+    
+    /**
+     * Encrypt challenge bytes using the cached key of a user
+     * @param userId the user owning the key
+     * @param challenge the challenge bytes
+     * @param symmetricKey the user's current symmetric key (Base64 encoded)
+     * @return raw ciphertext
+     * @throws Exception if encryption fails
+     */
+    public byte[] encryptChallenge(long userId, byte[] challenge, String symmetricKey) throws Exception {
+        try {
+            Cipher cipher = ENCRYPT_CIPHER.get();
+            cipher.init(Cipher.ENCRYPT_MODE, cachedKeySpec(userId, symmetricKey));
+            return cipher.doFinal(challenge);
+        } catch (GeneralSecurityException e) {
+            throw new Exception("Failed to encrypt challenge: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Decrypt a challenge response and compare it with the expected challenge in
+     * constant time. The plaintext only ever lives in a per-thread buffer.
+     * @param userId the user owning the key
+     * @param challenge the expected challenge bytes
+     * @param encryptedResponse buffer holding the raw ciphertext
+     * @param offset start of the ciphertext
+     * @param length ciphertext length
+     * @param symmetricKey the user's current symmetric key (Base64 encoded)
+     * @return true if the response decrypts to the challenge
+     * @throws Exception if decryption fails
+     */
+    public boolean verifyChallengeResponse(long userId, byte[] challenge, byte[] encryptedResponse, int offset,
+                                           int length, String symmetricKey) throws Exception {
+        try {
+            Cipher cipher = DECRYPT_CIPHER.get();
+            cipher.init(Cipher.DECRYPT_MODE, cachedKeySpec(userId, symmetricKey));
+            
+            byte[] plaintext = PLAINTEXT_BUFFER.get();
+            int outputSize = cipher.getOutputSize(length);
+            if (outputSize > plaintext.length) {
+                plaintext = new byte[outputSize];
+                PLAINTEXT_BUFFER.set(plaintext);
+            }
+            int plaintextLength = cipher.doFinal(encryptedResponse, offset, length, plaintext, 0);
+            boolean matches = ChallengeCodec.constantTimeEquals(challenge, plaintext, 0, plaintextLength);
+            Arrays.fill(plaintext, 0, plaintextLength, (byte) 0);
+            return matches;
+        } catch (GeneralSecurityException e) {
+            throw new Exception("Failed to decrypt challenge: " + e.getMessage(), e);
+        }
     }
     
     /**
@@ -32,13 +113,25 @@ public class CryptoService {
      * @throws Exception if encryption fails
      */
     public String encryptChallenge(String challenge, String symmetricKey) throws Exception {
+        return encryptChallenge(challenge, toKeySpec(symmetricKey));
+    }
+    
+    /**
+     * Encrypt challenge using the cached key of a user
+     * @param userId the user owning the key
+     * @param challenge the challenge to encrypt
+     * @param symmetricKey the user's current symmetric key (Base64 encoded)
+     * @return encrypted challenge as Base64 string
+     * @throws Exception if encryption fails
+     */
+    public String encryptChallenge(long userId, String challenge, String symmetricKey) throws Exception {
+        return encryptChallenge(challenge, cachedKeySpec(userId, symmetricKey));
+    }
+    
+    private String encryptChallenge(String challenge, SecretKeySpec secretKey) throws Exception {
         try {
-            // Decode the symmetric key from Base64
-            byte[] keyBytes = Base64.getDecoder().decode(symmetricKey);
-            SecretKeySpec secretKey = new SecretKeySpec(keyBytes, ALGORITHM);
-            
             // Initialize cipher for encryption
-            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            Cipher cipher = ENCRYPT_CIPHER.get();
             cipher.init(Cipher.ENCRYPT_MODE, secretKey);
             
             // Encrypt the challenge
@@ -61,13 +154,25 @@ public class CryptoService {
      * @throws Exception if decryption fails
      */
     public String decryptChallenge(String encryptedChallenge, String symmetricKey) throws Exception {
+        return decryptChallenge(encryptedChallenge, toKeySpec(symmetricKey));
+    }
+    
+    /**
+     * Decrypt challenge using the cached key of a user
+     * @param userId the user owning the key
+     * @param encryptedChallenge the encrypted challenge (Base64 encoded)
+     * @param symmetricKey the user's current symmetric key (Base64 encoded)
+     * @return decrypted challenge string
+     * @throws Exception if decryption fails
+     */
+    public String decryptChallenge(long userId, String encryptedChallenge, String symmetricKey) throws Exception {
+        return decryptChallenge(encryptedChallenge, cachedKeySpec(userId, symmetricKey));
+    }
+    
+    private String decryptChallenge(String encryptedChallenge, SecretKeySpec secretKey) throws Exception {
         try {
-            // Decode the symmetric key from Base64
-            byte[] keyBytes = Base64.getDecoder().decode(symmetricKey);
-            SecretKeySpec secretKey = new SecretKeySpec(keyBytes, ALGORITHM);
-            
             // Initialize cipher for decryption
-            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            Cipher cipher = DECRYPT_CIPHER.get();
             cipher.init(Cipher.DECRYPT_MODE, secretKey);
             
             // Decrypt the challenge
@@ -82,14 +187,81 @@ public class CryptoService {
         }
     }
     
+    /**
+     * Drop the cached key material of a user, e.g. after the key changed or the user was removed
+     * @param userId the user id
+     */
+    public void evictKey(long userId) {
+        keyCache.remove(userId);
+    }
+    
+    /**
+     * Drop all cached key material
+     */
+    public void clearKeyCache() {
+        keyCache.clear();
+    }
+    
+    private SecretKeySpec cachedKeySpec(long userId, String symmetricKey) throws Exception {
+        CachedKey cached = keyCache.get(userId);
+        if (cached != null && cached.encodedKey.equals(symmetricKey)) {
+            return cached.keySpec;
+        }
+        // Missing, or the user's key changed since it was cached
+        SecretKeySpec keySpec = toKeySpec(symmetricKey);
+        if (cached == null && keyCache.size() >= MAX_CACHED_KEYS) {
+            long[] victim = new long[1];
+            if (keyCache.sampleKeys(victim) > 0) {
+                keyCache.remove(victim[0]);
+            }
+        }
+        keyCache.put(userId, new CachedKey(symmetricKey, keySpec));
+        return keySpec;
+    }
+    
+    private static SecretKeySpec toKeySpec(String symmetricKey) throws Exception {
+        try {
+            // Decode the symmetric key from Base64
+            byte[] keyBytes = Base64.getDecoder().decode(symmetricKey);
+            return new SecretKeySpec(keyBytes, ALGORITHM);
+        } catch (IllegalArgumentException e) {
+            throw new Exception("Invalid symmetric key: " + e.getMessage(), e);
+        }
+    }
+    
+    private static Cipher newCipher() {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cipher " + TRANSFORMATION + " not available", e);
+        }
+    }
+    
+    private static SecureRandom newDrbg() {
+        try {
+            return SecureRandom.getInstance("DRBG");
+        } catch (GeneralSecurityException e) {
+            return new SecureRandom();
+        }
+    }
+    
+    private static final class CachedKey {
+        private final String encodedKey;
+        private final SecretKeySpec keySpec;
+        
+        CachedKey(String encodedKey, SecretKeySpec keySpec) {
+            this.encodedKey = encodedKey;
+            this.keySpec = keySpec;
+        }
+    }
+    
     /**
      * Generate a new symmetric key
      * @return Base64 encoded symmetric key
      */
     public String generateSymmetricKey() {
-        SecureRandom random = new SecureRandom();
         byte[] keyBytes = new byte[32]; // 256-bit key
-        random.nextBytes(keyBytes);
+        RANDOM.get().nextBytes(keyBytes);
         return Base64.getEncoder().encodeToString(keyBytes);
     }
 }
\ No newline at end of file
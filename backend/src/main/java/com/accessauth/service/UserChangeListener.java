@@ -0,0 +1,314 @@
+package com.accessauth.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Applies user changes made by other processes (user-manager) to this process's
+ * credential caches, so a deleted or deactivated user's key stops being served
+ * within a bounded delay instead of after the cache TTL.
+ *
+ * Changes arrive as "TYPE:id" payloads with TYPE one of ADDED, DELETED or DEACTIVATED,
+ * either as Postgres notifications (delivered when the writing transaction commits)
+ * or, as a local stand-in without Postgres, as lines appended to a shared file.
+ * Deleted and deactivated users are evicted from all caches. Added users enter
+ * the active-user filter; they have no cached key that could be outdated, so
+ * loads of other users in flight are not invalidated (bulk imports add many).
+ *
+ * Notifications sent while the listener is disconnected are lost, so every
+ * (re)connect drops all cached credentials and rebuilds the active-user filter.
+ * Until then the cache TTL bounds staleness, and the filter is suspended: users
+ * added meanwhile would be missing from it. Without a transport the filter stays
+ * suspended for good.
+ */
+@Component
+public class UserChangeListener {
+
+    public enum Type {
+        ADDED,
+        DELETED,
+        DEACTIVATED
+    }
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    @Autowired
+    private CredentialCache credentialCache;
+
+    @Autowired
+    private CredentialSnapshot credentialSnapshot;
+
+    @Autowired
+    private ActiveUserFilter activeUserFilter;
+
+    @Autowired
+    private CryptoService cryptoService;
+
+    // "postgres" (LISTEN/NOTIFY), "file" (tail a local change file) or "none"
+    @Value("${credentials.changes.transport:postgres}")
+    private String transport;
+
+    @Value("${credentials.changes.channel:user_changes}")
+    private String channel;
+
+    @Value("${credentials.changes.file:data/user-changes.log}")
+    private String file;
+
+    // Longest a change waits before it is applied (file) or a dead connection is noticed (postgres)
+    @Value("${credentials.changes.poll-ms:200}")
+    private long pollMillis;
+
+    @Value("${credentials.changes.reconnect-ms:5000}")
+    private long reconnectMillis;
+
+    @Value("${spring.datasource.url:}")
+    private String url;
+
+    @Value("${spring.datasource.username:}")
+    private String username;
+
+    @Value("${spring.datasource.password:}")
+    private String password;
+
+    private final LongAdder applied = new LongAdder();
+    private volatile boolean connected;
+    private volatile boolean running;
+    private Thread worker;
+    // Only touched by the worker thread: bytes of the change file already read
+    private long filePosition = -1;
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+    @PostConstruct
+    public void start() {
+        Runnable loop;
+        switch (transport.trim().toLowerCase(Locale.ROOT)) {
+            case "postgres":
+                if (!channel.matches("[a-z_][a-z0-9_]*")) {
+                    throw new IllegalArgumentException("Invalid notification channel: " + channel);
+                }
+                loop = this::listenLoop;
+                // Users added before the first LISTEN would be missed; the first connect resyncs
+                activeUserFilter.suspend();
+                break;
+            case "file":
+                loop = this::tailLoop;
+                break;
+            case "none":
+                System.out.println("[UserChangeListener] Not receiving user changes;"
+                        + " the active-user filter cannot reject unknown ids");
+                activeUserFilter.suspend();
+                return;
+            default:
+                throw new IllegalArgumentException("Unknown credentials.changes.transport: " + transport);
+        }
+        if (pollMillis <= 0 || reconnectMillis <= 0) {
+            throw new IllegalArgumentException("poll-ms and reconnect-ms must be positive");
+        }
+        running = true;
+        worker = new Thread(loop, "user-change-listener");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (worker != null) {
+            LockSupport.unpark(worker);
+            try {
+                worker.join(pollMillis + TimeUnit.SECONDS.toMillis(2));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Apply one change payload
+     * @param payload "TYPE:id", e.g. "DELETED:42"
+     * @return false if the payload was malformed and ignored
+     */
+    public boolean apply(String payload) {
+        Type type;
+        long id;
+        try {
+            int colon = payload.indexOf(':');
+            type = Type.valueOf(payload.substring(0, colon).trim());
+            id = Long.parseLong(payload.substring(colon + 1).trim());
+        } catch (RuntimeException e) {
+            System.err.println("[UserChangeListener] Ignoring malformed change: " + payload);
+            return false;
+        }
+        if (type == Type.ADDED) {
+            // A new user has no cached key that could be outdated, so loads in flight stay valid
+            credentialCache.evict(id);
+            activeUserFilter.add(id);
+        } else {
+            credentialCache.invalidate(id);
+            credentialSnapshot.invalidate(id);
+            cryptoService.evictKey(id);
+        }
+        applied.increment();
+        return true;
+    }
+
+    // Changes may have been missed: nothing cached can be trusted any more
+    void invalidateAll() {
+        credentialCache.invalidateAll();
+        credentialSnapshot.invalidateAll();
+        cryptoService.clearKeyCache();
+        activeUserFilter.resync();
+    }
+
+    public long getApplied() {
+        return applied.sum();
+    }
+
+    // True while changes are being received
+    public boolean isConnected() {
+        return connected;
+    }
+
+    private void listenLoop() {
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(url, username, password);
+                 Statement statement = connection.createStatement()) {
+                if (!connection.isWrapperFor(PGConnection.class)) {
+                    System.err.println("[UserChangeListener] " + url + " is not a Postgres database;"
+                            + " changes made by other processes are not received");
+                    return;
+                }
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                connection.setAutoCommit(true);
+                statement.execute("LISTEN " + channel);
+                invalidateAll();
+                connected = true;
+                System.out.println("[UserChangeListener] Listening for user changes on channel " + channel);
+
+                long lastCheck = System.nanoTime();
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications((int) pollMillis);
+                    if (notifications != null && notifications.length > 0) {
+                        for (PGNotification notification : notifications) {
+                            apply(notification.getParameter());
+                        }
+                    } else if (System.nanoTime() - lastCheck > TimeUnit.MILLISECONDS.toNanos(reconnectMillis)) {
+                        // A silent channel and a dead connection look the same; ask the server
+                        if (!connection.isValid((int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(reconnectMillis)))) {
+                            throw new SQLException("connection is no longer valid");
+                        }
+                        lastCheck = System.nanoTime();
+                    }
+                }
+            } catch (SQLException e) {
+                connected = false;
+                activeUserFilter.suspend();
+                if (running) {
+                    System.err.println("[UserChangeListener] Not receiving user changes: " + e.getMessage()
+                            + " (retrying in " + reconnectMillis + " ms)");
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(reconnectMillis));
+                }
+            }
+        }
+        connected = false;
+    }
+
+    private void tailLoop() {
+        System.out.println("[UserChangeListener] Watching " + file + " for user changes");
+        while (running) {
+            try {
+                tailOnce();
+                connected = true;
+            } catch (IOException e) {
+                if (connected) {
+                    System.err.println("[UserChangeListener] Cannot read " + file + ": " + e.getMessage());
+                }
+                connected = false;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(pollMillis));
+        }
+        connected = false;
+    }
+
+    /**
+     * Apply the complete lines appended to the change file since the last call.
+     * The first call only notes the end of the file: earlier changes predate this process.
+     * Package-private for tests.
+     * @return number of changes read
+     */
+    int tailOnce() throws IOException {
+        Path path = Paths.get(file);
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = in.size();
+            if (filePosition < 0) {
+                filePosition = size;
+                return 0;
+            }
+            if (size < filePosition) {
+                // Truncated or replaced: whatever was appended before that is unknown
+                invalidateAll();
+                filePosition = 0;
+            }
+            int changes = 0;
+            while (filePosition < size) {
+                readBuffer.clear();
+                int read = in.read(readBuffer, filePosition);
+                if (read <= 0) {
+                    break;
+                }
+                int lineStart = 0;
+                for (int i = 0; i < read; i++) {
+                    if (readBuffer.get(i) == '\n') {
+                        String line = new String(readBuffer.array(), lineStart, i - lineStart, StandardCharsets.UTF_8);
+                        if (!line.isBlank()) {
+                            apply(line);
+                            changes++;
+                        }
+                        lineStart = i + 1;
+                    }
+                }
+                if (lineStart == 0) {
+                    if (read < READ_BUFFER_SIZE) {
+                        // A partial last line; it is read again once complete
+                        break;
+                    }
+                    System.err.println("[UserChangeListener] Skipping oversized line in " + file);
+                    lineStart = read;
+                }
+                filePosition += lineStart;
+            }
+            return changes;
+        } catch (NoSuchFileException e) {
+            // Not written yet: every change will be new
+            if (filePosition < 0) {
+                filePosition = 0;
+            } else if (filePosition > 0) {
+                invalidateAll();
+                filePosition = 0;
+            }
+            return 0;
+        }
+    }
+}
@@ -1,12 +1,25 @@
 package com.accessauth.service;
 
 import com.accessauth.domain.User;
+import com.accessauth.log.EventLog;
+import com.accessauth.log.EventLog.Level;
 import com.accessauth.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 @Transactional
@@ -15,6 +28,21 @@ public class UserService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private CryptoService cryptoService;
+
+    @Autowired
+    private CredentialCache credentialCache;
+
+    @Autowired
+    private ActiveUserFilter activeUserFilter;
+
+    @Autowired
+    private CredentialSnapshot credentialSnapshot;
+
+    @Autowired
+    private EventLog eventLog;
+
     @Transactional(readOnly = true)
     public Optional<User> findById(Long id) {
         return userRepository.findById(id);
@@ -27,7 +55,7 @@ public class UserService {
 
     @Transactional(readOnly = true)
     public boolean userExists(Long id) {
-        return userRepository.existsByIdAndActiveTrue(id);
+        return activeUserFilter.mightBeActive(id) && userRepository.existsByIdAndActiveTrue(id);
     }
 
     @Transactional(readOnly = true)
@@ -35,13 +63,134 @@ public class UserService {
         return userRepository.getSymKeyById(id);
     }
 
+    /**
+     * Symmetric key of an active user, in a single query and fronted by the credential cache.
+     * Runs without a surrounding transaction so cache hits never touch the connection pool.
+     * Ids the active-user filter rules out are rejected without a query, and keys in a
+     * recently verified credential snapshot are served from it.
+     * If the database is unreachable, a cached or snapshot key is served instead.
+     * @param id the user id
+     * @return the key, or empty if the user does not exist or is inactive
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public Optional<String> getActiveSymmetricKey(long id) {
+        Optional<String> cached = credentialCache.getFresh(id);
+        if (cached.isPresent()) {
+            return cached;
+        }
+        if (!activeUserFilter.mightBeActive(id)) {
+            return Optional.empty();
+        }
+        if (credentialSnapshot.isFresh()) {
+            Optional<String> snapshotKey = credentialSnapshot.get(id);
+            if (snapshotKey.isPresent()) {
+                return snapshotKey;
+            }
+        }
+
+        long version = credentialCache.version();
+        try {
+            Optional<String> symKey = userRepository.getSymKeyById(id);
+            if (symKey.isPresent()) {
+                credentialCache.putIfCurrent(id, symKey.get(), version);
+            } else {
+                // Nothing changed: only drop a stale entry so an outage cannot serve it
+                credentialCache.evict(id);
+            }
+            return symKey;
+        } catch (DataAccessException | TransactionException e) {
+            Optional<String> stale = credentialCache.getStale(id);
+            if (!stale.isPresent()) {
+                stale = credentialSnapshot.get(id);
+            }
+            if (stale.isPresent()) {
+                eventLog.log(Level.WARN, "stale_key_served", -1, null, String.valueOf(id), e.getMessage());
+                return stale;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Symmetric keys of several active users, for batch authentication. Cached keys
+     * are served directly, then keys in a recently verified credential snapshot, and all
+     * remaining misses are resolved with a single IN (...) query.
+     * @param ids the user ids
+     * @return keys by user id; unknown or inactive users are absent
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public Map<Long, String> getActiveSymmetricKeys(Collection<Long> ids) {
+        Map<Long, String> keys = new HashMap<>();
+        Set<Long> misses = new LinkedHashSet<>();
+        for (Long id : ids) {
+            Optional<String> cached = credentialCache.getFresh(id);
+            if (cached.isPresent()) {
+                keys.put(id, cached.get());
+            } else if (activeUserFilter.mightBeActive(id)) {
+                misses.add(id);
+            }
+        }
+        if (!misses.isEmpty() && credentialSnapshot.isFresh()) {
+            for (Iterator<Long> it = misses.iterator(); it.hasNext(); ) {
+                Long id = it.next();
+                Optional<String> snapshotKey = credentialSnapshot.get(id);
+                if (snapshotKey.isPresent()) {
+                    keys.put(id, snapshotKey.get());
+                    it.remove();
+                }
+            }
+        }
+        if (misses.isEmpty()) {
+            return keys;
+        }
+
+        long version = credentialCache.version();
+        try {
+            for (Object[] row : userRepository.getSymKeysByIds(misses)) {
+                Long id = (Long) row[0];
+                String symKey = (String) row[1];
+                keys.put(id, symKey);
+                credentialCache.putIfCurrent(id, symKey, version);
+            }
+            for (Long id : misses) {
+                if (!keys.containsKey(id)) {
+                    credentialCache.evict(id);
+                }
+            }
+            return keys;
+        } catch (DataAccessException | TransactionException e) {
+            // As for a single lookup: only succeed if every missing key is still cached
+            for (Long id : misses) {
+                Optional<String> stale = credentialCache.getStale(id);
+                if (!stale.isPresent()) {
+                    stale = credentialSnapshot.get(id);
+                }
+                if (!stale.isPresent()) {
+                    throw e;
+                }
+                keys.put(id, stale.get());
+            }
+            eventLog.log(Level.WARN, "stale_keys_served", -1, null, null,
+                    misses.size() + " users: " + e.getMessage());
+            return keys;
+        }
+    }
+
     public User saveUser(User user) {
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        // The key or the active flag may have changed
+        Long id = saved.getId();
+        evictAfterCommit(id);
+        if (Boolean.TRUE.equals(saved.getActive())) {
+            afterCommit(() -> activeUserFilter.add(id));
+        }
+        return saved;
     }
 
     public void deleteUser(Long id) {
         userRepository.findById(id)
                 .ifPresent(user -> userRepository.delete(user));
+        evictAfterCommit(id);
     }
 
     public boolean deactivateUser(Long id) {
@@ -50,8 +199,36 @@ public class UserService {
             User user = userOpt.get();
             user.setActive(false);
             userRepository.save(user);
+            evictAfterCommit(id);
             return true;
         }
         return false;
     }
+
+    /**
+     * Drop every cached copy of a user's credentials once the change is committed.
+     * Evicting earlier would let a concurrent lookup read the still-committed old
+     * row and cache it again under the new cache version.
+     */
+    private void evictAfterCommit(long id) {
+        afterCommit(() -> {
+            credentialCache.invalidate(id);
+            credentialSnapshot.invalidate(id);
+            cryptoService.evictKey(id);
+        });
+    }
+
+    // Run once the surrounding transaction commits, or right away outside a transaction
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
 }
@@ -0,0 +1,127 @@
+package com.accessauth.socket;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A typed, length-prefixed frame of the binary reader protocol.
+ *
+ * Layout on the wire: [type: 1 byte][payload length: 2 bytes, big endian][payload].
+ * A binary client opens the connection with a HELLO frame carrying the framing
+ * version; the server answers with its own HELLO and both sides then exchange
+ * frames instead of JSON lines. Challenge and response travel as raw AES bytes.
+ */
+public class BinaryFrame {
+    public static final int HEADER_LENGTH = 3;
+    public static final int MAX_PAYLOAD_LENGTH = 1024;
+    public static final byte VERSION = 1;
+
+    // Frame types
+    public static final byte HELLO = 0x01;              // [version]
+    public static final byte AUTH_REQUEST = 0x02;       // [user id: int64]
+    public static final byte CHALLENGE = 0x03;          // [encrypted challenge]
+    public static final byte CHALLENGE_RESPONSE = 0x04; // [encrypted response]
+    public static final byte AUTH_SUCCESS = 0x05;       // [user id: int64][timestamp: int64]
+    public static final byte AUTH_ERROR = 0x06;         // [UTF-8 message]
+    public static final byte TIMEOUT = 0x07;            // [UTF-8 message]
+
+    private final byte type;
+    private final byte[] payload;
+
+    public BinaryFrame(byte type, byte[] payload) {
+        if (payload.length > MAX_PAYLOAD_LENGTH) {
+            throw new IllegalArgumentException("Frame payload exceeds " + MAX_PAYLOAD_LENGTH + " bytes");
+        }
+        this.type = type;
+        this.payload = payload;
+    }
+
+    public static BinaryFrame hello() {
+        return new BinaryFrame(HELLO, new byte[] { VERSION });
+    }
+
+    public static BinaryFrame authRequest(long userId) {
+        return new BinaryFrame(AUTH_REQUEST, ByteBuffer.allocate(8).putLong(userId).array());
+    }
+
+    public static BinaryFrame challenge(byte[] encryptedChallenge) {
+        return new BinaryFrame(CHALLENGE, encryptedChallenge);
+    }
+
+    public static BinaryFrame challengeResponse(byte[] encryptedResponse) {
+        return new BinaryFrame(CHALLENGE_RESPONSE, encryptedResponse);
+    }
+
+    public static BinaryFrame authSuccess(long userId, long timestamp) {
+        return new BinaryFrame(AUTH_SUCCESS, ByteBuffer.allocate(16).putLong(userId).putLong(timestamp).array());
+    }
+
+    public static BinaryFrame authError(String message) {
+        return new BinaryFrame(AUTH_ERROR, truncate(message));
+    }
+
+    public static BinaryFrame timeout(String message) {
+        return new BinaryFrame(TIMEOUT, truncate(message));
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    // True for a HELLO frame whose version this side speaks
+    public boolean isSupportedHello() {
+        return type == HELLO && payload.length >= 1 && payload[0] == VERSION;
+    }
+
+    /**
+     * @return the leading int64 of the payload (user id of AUTH_REQUEST / AUTH_SUCCESS)
+     * @throws IllegalArgumentException if the payload is too short
+     */
+    public long getLong() {
+        if (payload.length < 8) {
+            throw new IllegalArgumentException("Frame payload too short for a user id");
+        }
+        return ByteBuffer.wrap(payload).getLong();
+    }
+
+    public String getText() {
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+
+    // Encode header and payload into one array
+    public byte[] encode() {
+        byte[] encoded = new byte[HEADER_LENGTH + payload.length];
+        encoded[0] = type;
+        encoded[1] = (byte) (payload.length >>> 8);
+        encoded[2] = (byte) payload.length;
+        System.arraycopy(payload, 0, encoded, HEADER_LENGTH, payload.length);
+        return encoded;
+    }
+
+    /**
+     * Payload length announced by a frame header
+     * @param header buffer holding at least the header bytes
+     * @param offset start of the header
+     */
+    public static int payloadLength(byte[] header, int offset) {
+        return ((header[offset + 1] & 0xff) << 8) | (header[offset + 2] & 0xff);
+    }
+
+    private static byte[] truncate(String message) {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        return bytes.length <= MAX_PAYLOAD_LENGTH ? bytes : Arrays.copyOf(bytes, MAX_PAYLOAD_LENGTH);
+    }
+
+    @Override
+    public String toString() {
+        return "BinaryFrame{" +
+                "type=" + type +
+                ", length=" + payload.length +
+                '}';
+    }
+}
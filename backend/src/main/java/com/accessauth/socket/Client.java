@@ -1,19 +1,34 @@
 package com.accessauth.socket;
 
+import com.accessauth.service.CryptoService;
 import com.google.gson.*;
 
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-shot demo reader: authenticates one user with the real protocol.
+ * For load testing use com.accessauth.loadgen.LoadGenerator.
+ */
 public class Client {
     private SecureSocket socket;
     private String clientId;
     private String userId;
+    private String symmetricKey;
+    private CryptoService cryptoService = new CryptoService();
+    // Released once the server sent a final answer (success, error or timeout)
+    private final CountDownLatch finished = new CountDownLatch(1);
     
-    public Client(String host, int port, String clientId, String userId) throws Exception {
+    public Client(String host, int port, String clientId, String userId, String symmetricKey) throws Exception {
         this.socket = new SecureSocket(host, port, "src/main/resources/keystore.jks", "password");
         this.clientId = clientId;
         this.userId = userId;
+        this.symmetricKey = symmetricKey;
         
         // Start listening for messages from server
-        socket.startJsonListening(this::handleServerMessage);
+        socket.startJsonListening(this::handleServerMessage, finished::countDown);
         
         System.out.println("[" + clientId + "] Connected to protocol server!");
     }
@@ -33,7 +48,7 @@ public class Client {
                     handleAuthSuccess(message);
                     break;
                     
-                case "error":
+                case "auth_error":
                     handleError(message);
                     break;
                     
@@ -41,10 +56,6 @@ public class Client {
                     handleTimeout(message);
                     break;
                     
-                case "info":
-                    handleInfo(message);
-                    break;
-                    
                 default:
                     System.out.println("[" + clientId + "] Unknown message type: " + messageType);
                     System.out.println("Full message: " + message);
@@ -52,46 +63,45 @@ public class Client {
             }
         } catch (Exception e) {
             System.err.println("[" + clientId + "] Error handling message: " + e.getMessage());
+            finished.countDown();
         }
     }
     
-    private void handleChallenge(JsonObject message) {
-        String encryptedChallenge = message.get("challenge").getAsString();
+    private void handleChallenge(JsonObject message) throws Exception {
+        // The challenge travels as hex(Base64(AES ciphertext))
+        String challengeHex = message.getAsJsonObject("data").get("challenge").getAsString();
+        String encryptedChallenge = new String(HexFormat.of().parseHex(challengeHex), StandardCharsets.US_ASCII);
         System.out.println("[" + clientId + "] Received encrypted challenge: " + encryptedChallenge);
         
-        // In a real implementation, you would:
-        // 1. Decrypt the challenge using your symmetric key
-        // 2. Process the challenge (maybe add some data or transform it)
-        // 3. Encrypt the response with your symmetric key
-        
-        // For simulation, we'll send a dummy response
-        String dummyResponse = "dummy_challenge_response_" + System.currentTimeMillis();
+        // Prove knowledge of the key: decrypt the challenge and send it back encrypted
+        long id = Long.parseLong(userId);
+        String challenge = cryptoService.decryptChallenge(id, encryptedChallenge, symmetricKey);
+        String response = cryptoService.encryptChallenge(id, challenge, symmetricKey);
         
         JsonObject challengeResponse = new JsonObject();
-        challengeResponse.addProperty("challenge_response", dummyResponse);
+        challengeResponse.addProperty("type", "challenge_response");
+        challengeResponse.addProperty("response", HexFormat.of().formatHex(response.getBytes(StandardCharsets.US_ASCII)));
         
         socket.sendJson(challengeResponse);
-        System.out.println("[" + clientId + "] Sent challenge response: " + dummyResponse);
+        System.out.println("[" + clientId + "] Sent challenge response");
     }
     
     private void handleAuthSuccess(JsonObject message) {
         String successMessage = message.get("message").getAsString();
         System.out.println("[" + clientId + "] AUTHENTICATION SUCCESS: " + successMessage);
+        finished.countDown();
     }
     
     private void handleError(JsonObject message) {
         String errorMessage = message.get("message").getAsString();
         System.err.println("[" + clientId + "] ERROR: " + errorMessage);
+        finished.countDown();
     }
     
     private void handleTimeout(JsonObject message) {
         String timeoutMessage = message.get("message").getAsString();
         System.err.println("[" + clientId + "] TIMEOUT: " + timeoutMessage);
-    }
-    
-    private void handleInfo(JsonObject message) {
-        String infoMessage = message.get("message").getAsString();
-        System.out.println("[" + clientId + "] INFO: " + infoMessage);
+        finished.countDown();
     }
     
     public void startAuthentication() {
@@ -99,32 +109,40 @@ public class Client {
         
         // Send user ID to start the authentication process
         JsonObject idMessage = new JsonObject();
-        idMessage.addProperty("id", userId);
+        idMessage.addProperty("type", "auth_request");
+        idMessage.addProperty("user_id", userId);
         
         socket.sendJson(idMessage);
         System.out.println("[" + clientId + "] Sent user ID: " + userId);
     }
     
+    // Wait until the server answered the authentication, at most timeoutMillis
+    public boolean awaitResult(long timeoutMillis) throws InterruptedException {
+        return finished.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+    
     public void close() throws Exception {
         socket.close();
         System.out.println("[" + clientId + "] Connection closed");
     }
     
+    // Usage: Client <host> <port> <user_id> <symmetric_key>
     public static void main(String[] args) {
+        if (args.length < 4) {
+            System.err.println("Usage: Client <host> <port> <user_id> <symmetric_key>");
+            return;
+        }
         try {
-            // You can change the userId here to test different users
-            String testUserId = "2"; // Make sure this user exists in your database
-            Client client = new Client("192.168.1.113", 12345, "TestClient", testUserId);
-            
-            // Wait a moment for connection to establish
-            Thread.sleep(1000);
+            Client client = new Client(args[0], Integer.parseInt(args[1]), "TestClient", args[2], args[3]);
             
             // Start the authentication process
             client.startAuthentication();
             
-            // Keep the client running to receive all authentication messages
+            // Keep the client running until the server answered
             System.out.println("[TestClient] Waiting for authentication messages...");
-            Thread.sleep(15000); // Wait 15 seconds for authentication to complete
+            if (!client.awaitResult(15000)) {
+                System.err.println("[TestClient] No answer from server within 15 seconds");
+            }
             
             client.close();
             
@@ -133,4 +151,4 @@ public class Client {
             e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,79 @@
+package com.accessauth.socket;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory for the executors that run the blocking read loop of each accepted connection.
+ */
+public final class ConnectionThreads {
+
+    public static final String MODE_VIRTUAL = "virtual";
+    public static final String MODE_PLATFORM = "platform";
+
+    private ConnectionThreads() {}
+
+    /**
+     * Create a connection executor
+     * @param mode "virtual" for one virtual thread per connection, "platform" for pooled platform threads
+     * @param maxThreads upper bound of platform threads (ignored for virtual threads)
+     * @return the executor
+     */
+    public static ExecutorService create(String mode, int maxThreads) {
+        if (MODE_VIRTUAL.equalsIgnoreCase(mode)) {
+            ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+            if (virtual != null) {
+                return virtual;
+            }
+            System.err.println("[Server] Virtual threads need Java 21+, falling back to platform threads");
+        } else if (!MODE_PLATFORM.equalsIgnoreCase(mode)) {
+            throw new IllegalArgumentException("Unknown connection thread mode: " + mode);
+        }
+        return newPlatformExecutor(maxThreads);
+    }
+
+    /**
+     * @return true if the running JVM supports virtual threads
+     */
+    public static boolean virtualThreadsSupported() {
+        return findVirtualFactoryMethod() != null;
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        // Looked up reflectively so the service still builds and runs on Java 17
+        Method factory = findVirtualFactoryMethod();
+        if (factory == null) {
+            return null;
+        }
+        try {
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static Method findVirtualFactoryMethod() {
+        try {
+            return java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newPlatformExecutor(int maxThreads) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "protocol-conn-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        // Threads are created on demand up to maxThreads and retired after a minute idle
+        return new ThreadPoolExecutor(0, maxThreads, 60L, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), threadFactory);
+    }
+}
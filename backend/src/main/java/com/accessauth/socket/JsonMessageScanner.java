@@ -0,0 +1,79 @@
+package com.accessauth.socket;
+
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.IOException;
+
+/**
+ * Follows a client's JSON stream just closely enough to tell where each top-level
+ * object ends, without decoding it. This lets the length limit apply per message
+ * however the client splits it into lines. It also rejects top-level values other
+ * than objects, and comments, before they are buffered: the decoder runs lenient
+ * to accept a stream of objects and would otherwise allow both. Works on UTF-8
+ * bytes as well as chars, since multi-byte sequences never contain ASCII.
+ */
+final class JsonMessageScanner {
+    private final int maxMessageLength;
+    private int length;
+    private int depth;
+    // Quote character of the string being scanned, 0 outside strings
+    private int quote;
+    private boolean escaped;
+
+    JsonMessageScanner(int maxMessageLength) {
+        this.maxMessageLength = maxMessageLength;
+    }
+
+    /**
+     * Account for the next character of the stream
+     * @return true if the character closed a top-level object
+     * @throws MalformedJsonException if the stream is not a sequence of JSON objects
+     * @throws IOException if the current message grows beyond the limit
+     */
+    boolean next(int c) throws IOException {
+        if (depth == 0) {
+            // Whitespace between messages is not part of either
+            if (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                return false;
+            }
+            if (c != '{') {
+                throw new MalformedJsonException("Expected a JSON object");
+            }
+        }
+        if (++length > maxMessageLength) {
+            throw new IOException("Message exceeds " + maxMessageLength + " bytes");
+        }
+        if (quote != 0) {
+            if (escaped) {
+                escaped = false;
+            } else if (c == '\\') {
+                escaped = true;
+            } else if (c == quote) {
+                quote = 0;
+            }
+            return false;
+        }
+        switch (c) {
+            case '"':
+            case '\'':
+                quote = c;
+                return false;
+            case '{':
+            case '[':
+                depth++;
+                return false;
+            case '}':
+            case ']':
+                if (--depth == 0) {
+                    length = 0;
+                    return true;
+                }
+                return false;
+            case '/':
+            case '#':
+                throw new MalformedJsonException("Comments are not allowed");
+            default:
+                return false;
+        }
+    }
+}
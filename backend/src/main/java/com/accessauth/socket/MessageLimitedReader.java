@@ -0,0 +1,54 @@
+package com.accessauth.socket;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reader that fails once a single JSON message grows beyond a limit, however
+ * many lines it spans, so a client cannot make the decoder buffer unbounded
+ * input. Input that is not a stream of JSON objects fails here too. Characters
+ * read before the failure are still returned, so messages the client completed
+ * ahead of it are handled before the connection closes.
+ */
+class MessageLimitedReader extends FilterReader {
+    private final JsonMessageScanner scanner;
+    private IOException failure;
+
+    MessageLimitedReader(Reader in, int maxMessageLength) {
+        super(in);
+        this.scanner = new JsonMessageScanner(maxMessageLength);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        int c = super.read();
+        if (c >= 0) {
+            scanner.next(c);
+        }
+        return c;
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        int read = super.read(buffer, offset, length);
+        for (int i = offset; i < offset + read; i++) {
+            try {
+                scanner.next(buffer[i]);
+            } catch (IOException e) {
+                if (i == offset) {
+                    throw e;
+                }
+                failure = e;
+                return i - offset;
+            }
+        }
+        return read;
+    }
+}
@@ -0,0 +1,579 @@
+package com.accessauth.socket;
+
+import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.MalformedJsonException;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Non-blocking TLS connection driven by an {@link NioEventLoop}.
+ * Network I/O and SSLEngine wrap/unwrap run on the event loop thread;
+ * decoded messages are handed to the handler executor one at a time and in order.
+ * JSON is decoded with the same streaming reader and error contract as
+ * {@link SecureSocket}: input that is not a stream of JSON objects, or a message
+ * over the length limit, closes the connection.
+ * Outgoing data is wrapped only while the peer keeps reading: once a TLS record
+ * cannot be written out, wrapping stops until the channel is writable again, and
+ * a connection whose queued replies exceed maxQueuedBytes is closed.
+ */
+public class NioSecureConnection implements ProtocolConnection {
+    private static final Gson GSON = new Gson();
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final SocketChannel channel;
+    private final SSLEngine engine;
+    private final TlsContext tlsContext;
+    private final long acceptedMillis = System.currentTimeMillis();
+    private final long acceptedNanos = System.nanoTime();
+    private final NioEventLoop eventLoop;
+    private final Executor handlerExecutor;
+    private final Runnable onClose;
+    private final long maxQueuedBytes;
+
+    private SelectionKey key;
+    private ByteBuffer netIn;
+    private ByteBuffer appIn;
+    private ByteBuffer netOut;
+    private boolean handshakeDone = false;
+
+    // Partial JSON message (or binary frame) collected across reads
+    private byte[] line = new byte[256];
+    private int lineLength = 0;
+    private final JsonMessageScanner scanner = new JsonMessageScanner(ProtocolMessage.MAX_MESSAGE_LENGTH);
+    private volatile WireFormat wireFormat = WireFormat.UNKNOWN;
+    private boolean helloReceived = false;
+
+    private final Queue<ByteBuffer> pendingWrites = new ConcurrentLinkedQueue<>();
+    // Bytes in pendingWrites not yet wrapped
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final AtomicBoolean overflowed = new AtomicBoolean(false);
+    private final Queue<Runnable> inbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    private volatile Consumer<ProtocolMessage> messageHandler;
+    // Decoded into by the (serial) inbox tasks, so one instance serves all messages
+    private final ProtocolMessage message = new ProtocolMessage();
+    // One streaming reader decodes every JSON message, fed one complete message at a time
+    private final MessageInput messageInput = new MessageInput();
+    private final JsonReader json = new JsonReader(new InputStreamReader(messageInput, StandardCharsets.UTF_8));
+    private boolean rejected = false;
+    private volatile Runnable closeHandler;
+    private volatile BiConsumer<String, String> errorListener = STDERR_ERRORS;
+    private volatile boolean listening = false;
+
+    NioSecureConnection(SocketChannel channel, SSLEngine engine, TlsContext tlsContext, NioEventLoop eventLoop,
+                        Executor handlerExecutor, Runnable onClose, long maxQueuedBytes) {
+        this.channel = channel;
+        this.engine = engine;
+        this.tlsContext = tlsContext;
+        this.eventLoop = eventLoop;
+        this.handlerExecutor = handlerExecutor;
+        this.onClose = onClose;
+        this.maxQueuedBytes = maxQueuedBytes;
+
+        int packetSize = engine.getSession().getPacketBufferSize();
+        this.netIn = ByteBuffer.allocate(packetSize);
+        this.netOut = ByteBuffer.allocate(packetSize);
+        this.appIn = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+        // Lenient: the connection is a sequence of top-level objects
+        json.setLenient(true);
+    }
+
+    // Called on the event loop
+    void register(Selector selector) throws IOException {
+        key = channel.register(selector, SelectionKey.OP_READ, this);
+        engine.beginHandshake();
+    }
+
+    @Override
+    public void sendJson(JsonObject jsonObject) {
+        if (closed.get()) {
+            throw new IllegalStateException("Socket not connected");
+        }
+        byte[] bytes = (GSON.toJson(jsonObject) + "\n").getBytes(StandardCharsets.UTF_8);
+        enqueueWrite(bytes);
+    }
+
+    @Override
+    public void sendFrame(BinaryFrame frame) {
+        if (closed.get()) {
+            throw new IllegalStateException("Socket not connected");
+        }
+        enqueueWrite(frame.encode());
+    }
+
+    private void enqueueWrite(byte[] bytes) {
+        if (queuedBytes.addAndGet(bytes.length) > maxQueuedBytes) {
+            // The peer stopped reading; buffering more would only grow the heap
+            if (overflowed.compareAndSet(false, true)) {
+                errorListener.accept("peer_not_reading", queuedBytes.get() + " bytes queued");
+                close();
+            }
+            return;
+        }
+        pendingWrites.add(ByteBuffer.wrap(bytes));
+        eventLoop.execute(() -> {
+            try {
+                flushPendingWrites();
+            } catch (IOException e) {
+                closeNow();
+            }
+        });
+    }
+
+    @Override
+    public void setMaxBatchSize(int maxBatchSize) {
+        message.setMaxBatchSize(maxBatchSize);
+    }
+
+    @Override
+    public void setErrorListener(BiConsumer<String, String> errorListener) {
+        this.errorListener = errorListener;
+    }
+
+    @Override
+    public void startListening(Consumer<ProtocolMessage> messageHandler, Runnable closeHandler) {
+        this.messageHandler = messageHandler;
+        this.closeHandler = closeHandler;
+        this.listening = true;
+        scheduleDrain();
+    }
+
+    @Override
+    public WireFormat getWireFormat() {
+        return wireFormat;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return !closed.get() && channel.isOpen();
+    }
+
+    @Override
+    public void close() {
+        if (eventLoop.inEventLoop()) {
+            closeNow();
+        } else {
+            eventLoop.execute(this::closeNow);
+        }
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        try {
+            return String.valueOf(channel.getRemoteAddress());
+        } catch (IOException e) {
+            return "unknown";
+        }
+    }
+
+    // Called on the event loop when the channel is readable
+    void handleRead() throws IOException {
+        int read = channel.read(netIn);
+        if (read < 0) {
+            try {
+                engine.closeInbound();
+            } catch (SSLException e) {
+                // Peer closed without close_notify
+            }
+            closeNow();
+            return;
+        }
+        unwrapAll();
+    }
+
+    // Called on the event loop when the channel is writable again; resumes what a full netOut held up
+    void handleWrite() throws IOException {
+        flushNetOut();
+        if (netOut.position() > 0) {
+            return;
+        }
+        if (!handshakeDone) {
+            processHandshake(engine.getHandshakeStatus());
+        }
+        flushPendingWrites();
+        if (netOut.position() == 0 && netIn.position() > 0) {
+            // Records read before the writes stalled
+            unwrapAll();
+        }
+    }
+
+    private void unwrapAll() throws IOException {
+        netIn.flip();
+        try {
+            while (netIn.hasRemaining() && !closed.get()) {
+                SSLEngineResult result = engine.unwrap(netIn, appIn);
+                switch (result.getStatus()) {
+                    case OK:
+                        break;
+                    case BUFFER_OVERFLOW:
+                        appIn = enlarge(appIn, engine.getSession().getApplicationBufferSize());
+                        continue;
+                    case BUFFER_UNDERFLOW:
+                        // Wait for the rest of the TLS record
+                        return;
+                    case CLOSED:
+                        closeNow();
+                        return;
+                }
+                if (appIn.position() > 0) {
+                    deliverApplicationData();
+                }
+                processHandshake(result.getHandshakeStatus());
+                if (netOut.position() > 0) {
+                    // The peer is not reading; the rest is unwrapped from handleWrite
+                    return;
+                }
+            }
+        } finally {
+            netIn.compact();
+            int packetSize = engine.getSession().getPacketBufferSize();
+            if (netIn.capacity() < packetSize) {
+                netIn = enlarge(netIn, packetSize);
+            }
+        }
+    }
+
+    private void processHandshake(HandshakeStatus status) throws IOException {
+        while (true) {
+            switch (status) {
+                case NEED_TASK:
+                    Runnable task;
+                    while ((task = engine.getDelegatedTask()) != null) {
+                        task.run();
+                    }
+                    status = engine.getHandshakeStatus();
+                    break;
+                case NEED_WRAP:
+                    SSLEngineResult wrapped = wrap(EMPTY);
+                    if (wrapped == null) {
+                        // Continued from handleWrite
+                        return;
+                    }
+                    status = wrapped.getHandshakeStatus();
+                    break;
+                case FINISHED:
+                case NOT_HANDSHAKING:
+                    if (!handshakeDone) {
+                        tlsContext.handshakeCompleted(engine.getSession(), acceptedMillis, acceptedNanos);
+                    }
+                    handshakeDone = true;
+                    flushPendingWrites();
+                    return;
+                default:
+                    // NEED_UNWRAP: more data from the peer is needed
+                    return;
+            }
+        }
+    }
+
+    // Wrap one record and write it out; null if netOut has no room because the peer is not reading
+    private SSLEngineResult wrap(ByteBuffer source) throws IOException {
+        while (true) {
+            SSLEngineResult result = engine.wrap(source, netOut);
+            switch (result.getStatus()) {
+                case OK:
+                case CLOSED:
+                    flushNetOut();
+                    return result;
+                case BUFFER_OVERFLOW:
+                    flushNetOut();
+                    int packetSize = engine.getSession().getPacketBufferSize();
+                    if (netOut.remaining() < packetSize) {
+                        if (netOut.position() > 0) {
+                            // OP_WRITE is registered; handleWrite resumes once the peer reads
+                            return null;
+                        }
+                        // The session's packet size grew
+                        netOut = enlarge(netOut, packetSize);
+                    }
+                    break;
+                default:
+                    throw new SSLException("Unexpected wrap status: " + result.getStatus());
+            }
+        }
+    }
+
+    private void flushPendingWrites() throws IOException {
+        if (!handshakeDone || closed.get()) {
+            return;
+        }
+        ByteBuffer buffer;
+        while ((buffer = pendingWrites.peek()) != null) {
+            while (buffer.hasRemaining()) {
+                // Keep at most what the socket did not take; the rest waits in pendingWrites
+                if (netOut.position() > 0) {
+                    return;
+                }
+                SSLEngineResult result = wrap(buffer);
+                if (result == null) {
+                    return;
+                }
+                if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                    return;
+                }
+            }
+            pendingWrites.poll();
+            queuedBytes.addAndGet(-buffer.capacity());
+        }
+    }
+
+    private void flushNetOut() throws IOException {
+        netOut.flip();
+        while (netOut.hasRemaining()) {
+            if (channel.write(netOut) == 0) {
+                break;
+            }
+        }
+        netOut.compact();
+        if (key != null && key.isValid()) {
+            // While the peer is not reading, stop reading its requests too
+            int ops = netOut.position() > 0 ? SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+            if (key.interestOps() != ops) {
+                key.interestOps(ops);
+            }
+        }
+    }
+
+    private void deliverApplicationData() throws IOException {
+        appIn.flip();
+        if (wireFormat == WireFormat.UNKNOWN && appIn.hasRemaining()) {
+            // A binary client opens with a HELLO frame, JSON starts with '{' or whitespace
+            boolean binary = appIn.get(appIn.position()) == BinaryFrame.HELLO;
+            wireFormat = binary ? WireFormat.BINARY : WireFormat.JSON;
+        }
+        if (wireFormat == WireFormat.BINARY) {
+            deliverFrames();
+        } else {
+            deliverMessages();
+        }
+        appIn.clear();
+    }
+
+    // Collect the bytes of each JSON object and hand complete ones to the handler
+    private void deliverMessages() throws IOException {
+        try {
+            while (appIn.hasRemaining()) {
+                byte b = appIn.get();
+                boolean complete = scanner.next(b);
+                if (lineLength == 0 && b != '{') {
+                    // Whitespace between messages
+                    continue;
+                }
+                if (lineLength == line.length) {
+                    line = Arrays.copyOf(line, Math.min(line.length * 2, ProtocolMessage.MAX_MESSAGE_LENGTH));
+                }
+                line[lineLength++] = b;
+                if (complete) {
+                    emitMessage(Arrays.copyOf(line, lineLength));
+                    lineLength = 0;
+                }
+            }
+        } catch (MalformedJsonException e) {
+            appIn.clear();
+            errorListener.accept("invalid_json", e.getMessage());
+            throw e;
+        } catch (IOException e) {
+            appIn.clear();
+            errorListener.accept("read_failed", e.getMessage());
+            throw e;
+        }
+    }
+
+    private void deliverFrames() throws IOException {
+        int available = lineLength + appIn.remaining();
+        if (available > line.length) {
+            line = Arrays.copyOf(line, Math.max(available, line.length * 2));
+        }
+        int chunk = appIn.remaining();
+        appIn.get(line, lineLength, chunk);
+        lineLength = available;
+
+        int offset = 0;
+        while (lineLength - offset >= BinaryFrame.HEADER_LENGTH) {
+            int payloadLength = BinaryFrame.payloadLength(line, offset);
+            if (payloadLength > BinaryFrame.MAX_PAYLOAD_LENGTH) {
+                throw new IOException("Frame payload exceeds " + BinaryFrame.MAX_PAYLOAD_LENGTH + " bytes");
+            }
+            int frameEnd = offset + BinaryFrame.HEADER_LENGTH + payloadLength;
+            if (frameEnd > lineLength) {
+                break;
+            }
+            BinaryFrame frame = new BinaryFrame(line[offset],
+                    Arrays.copyOfRange(line, offset + BinaryFrame.HEADER_LENGTH, frameEnd));
+            offset = frameEnd;
+            emitFrame(frame);
+        }
+        System.arraycopy(line, offset, line, 0, lineLength - offset);
+        lineLength -= offset;
+    }
+
+    private void emitFrame(BinaryFrame frame) throws IOException {
+        if (!helloReceived) {
+            // The first frame negotiates the framing version
+            if (!frame.isSupportedHello()) {
+                sendFrame(BinaryFrame.authError("Unsupported framing version"));
+                flushPendingWrites();
+                throw new IOException("Unsupported binary framing hello");
+            }
+            helloReceived = true;
+            sendFrame(BinaryFrame.hello());
+            return;
+        }
+        inbox.add(() -> {
+            Consumer<ProtocolMessage> handler = messageHandler;
+            if (handler != null) {
+                message.readFrame(frame.getType(), frame.getPayload(), 0, frame.getPayload().length);
+                handler.accept(message);
+            }
+        });
+        scheduleDrain();
+    }
+
+    private void emitMessage(byte[] bytes) {
+        inbox.add(() -> {
+            Consumer<ProtocolMessage> handler = messageHandler;
+            if (handler == null || rejected) {
+                return;
+            }
+            messageInput.set(bytes);
+            try {
+                message.readJson(json);
+            } catch (IOException | IllegalStateException e) {
+                // The stream cannot be resynchronised after a syntax error
+                rejected = true;
+                errorListener.accept("invalid_json", e.getMessage());
+                close();
+                return;
+            }
+            handler.accept(message);
+        });
+        scheduleDrain();
+    }
+
+    // Run queued handler work on the handler executor, never more than one task at a time
+    private void scheduleDrain() {
+        if (!listening || inbox.isEmpty()) {
+            return;
+        }
+        if (draining.compareAndSet(false, true)) {
+            handlerExecutor.execute(this::drainInbox);
+        }
+    }
+
+    private void drainInbox() {
+        while (true) {
+            Runnable work;
+            while ((work = inbox.poll()) != null) {
+                try {
+                    work.run();
+                } catch (RuntimeException e) {
+                    errorListener.accept("handler_failed", e.toString());
+                }
+            }
+            draining.set(false);
+            if (inbox.isEmpty() || !draining.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    // Close on the event loop (or after the loop has stopped)
+    void closeNow() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            if (handshakeDone && channel.isOpen()) {
+                engine.closeOutbound();
+                wrap(EMPTY);
+            }
+        } catch (IOException e) {
+            // Best effort close_notify
+        }
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing channel: " + e.getMessage());
+        }
+        pendingWrites.clear();
+        queuedBytes.set(0);
+        if (onClose != null) {
+            onClose.run();
+        }
+        // The close handler runs after any messages still queued for the handler
+        inbox.add(() -> {
+            Runnable handler = closeHandler;
+            if (handler != null) {
+                handler.run();
+            }
+        });
+        scheduleDrain();
+    }
+
+    private static ByteBuffer enlarge(ByteBuffer buffer, int minimumGrowth) {
+        ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() + Math.max(minimumGrowth, buffer.capacity()));
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+
+    // The bytes of the message being decoded; ends where the message ends
+    private static final class MessageInput extends InputStream {
+        private byte[] bytes = new byte[0];
+        private int position;
+
+        void set(byte[] bytes) {
+            this.bytes = bytes;
+            this.position = 0;
+        }
+
+        @Override
+        public int read() {
+            return position < bytes.length ? bytes[position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            int count = Math.min(length, bytes.length - position);
+            if (count <= 0) {
+                return -1;
+            }
+            System.arraycopy(bytes, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return bytes.length - position;
+        }
+    }
+}
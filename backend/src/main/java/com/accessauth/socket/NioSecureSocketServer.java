@@ -0,0 +1,152 @@
+package com.accessauth.socket;
+
+import javax.net.ssl.SSLEngine;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * TLS server built on SSLEngine and selectors: a small, fixed number of event
+ * loops multiplex all client connections, while protocol handling runs on the
+ * handler executor.
+ */
+public class NioSecureSocketServer {
+    public static final long DEFAULT_MAX_QUEUED_BYTES = 1024 * 1024;
+
+    private final TlsContext tlsContext;
+    private final ServerSocketChannel serverChannel;
+    private final NioEventLoop[] eventLoops;
+    private final ExecutorService handlerExecutor;
+    private final int maxConnections;
+    private final AtomicInteger openConnections = new AtomicInteger();
+    // Replies queued for a connection beyond this many bytes close it
+    private volatile long maxQueuedBytes = DEFAULT_MAX_QUEUED_BYTES;
+    private int nextLoop = 0;
+    private Thread acceptThread;
+    private volatile boolean isRunning = false;
+
+    public NioSecureSocketServer(int port, String keystorePath, String password, int eventLoopCount,
+                                 ExecutorService handlerExecutor, int maxConnections) throws Exception {
+        this(port, new TlsContext(keystorePath, password), eventLoopCount, handlerExecutor, maxConnections);
+    }
+
+    public NioSecureSocketServer(int port, TlsContext tlsContext, int eventLoopCount,
+                                 ExecutorService handlerExecutor, int maxConnections) throws IOException {
+        if (eventLoopCount <= 0 || maxConnections <= 0) {
+            throw new IllegalArgumentException("eventLoopCount and maxConnections must be positive");
+        }
+        this.tlsContext = tlsContext;
+        this.handlerExecutor = handlerExecutor;
+        this.maxConnections = maxConnections;
+        this.eventLoops = new NioEventLoop[eventLoopCount];
+        for (int i = 0; i < eventLoopCount; i++) {
+            eventLoops[i] = new NioEventLoop("protocol-nio-" + i);
+        }
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(new InetSocketAddress(port));
+    }
+
+    // Set before start
+    public void setMaxQueuedBytes(long maxQueuedBytes) {
+        if (maxQueuedBytes <= 0) {
+            throw new IllegalArgumentException("maxQueuedBytes must be positive");
+        }
+        this.maxQueuedBytes = maxQueuedBytes;
+    }
+
+    /**
+     * Start the event loops and the accept thread
+     * @param connectionHandler called for every new connection, before any data is read;
+     *                          it must call startListening to receive messages
+     */
+    public void start(Consumer<NioSecureConnection> connectionHandler) {
+        isRunning = true;
+        for (NioEventLoop loop : eventLoops) {
+            loop.start();
+        }
+        acceptThread = new Thread(() -> acceptLoop(connectionHandler), "protocol-nio-acceptor");
+        acceptThread.start();
+        System.out.println("NIO server started on port " + serverChannel.socket().getLocalPort()
+                + " with " + eventLoops.length + " event loops");
+    }
+
+    private void acceptLoop(Consumer<NioSecureConnection> connectionHandler) {
+        while (isRunning) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (IOException e) {
+                if (isRunning) {
+                    System.err.println("Error accepting connection: " + e.getMessage());
+                }
+                continue;
+            }
+            try {
+                if (openConnections.incrementAndGet() > maxConnections) {
+                    openConnections.decrementAndGet();
+                    System.err.println("Connection limit reached, rejecting " + channel.getRemoteAddress());
+                    channel.close();
+                    continue;
+                }
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+
+                SSLEngine engine = tlsContext.getSslContext().createSSLEngine();
+                engine.setUseClientMode(false);
+
+                NioEventLoop loop = eventLoops[nextLoop];
+                nextLoop = (nextLoop + 1) % eventLoops.length;
+
+                NioSecureConnection connection = new NioSecureConnection(channel, engine, tlsContext, loop,
+                        handlerExecutor, openConnections::decrementAndGet, maxQueuedBytes);
+                connectionHandler.accept(connection);
+                loop.register(connection);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Error setting up connection: " + e.getMessage());
+                try {
+                    channel.close();
+                } catch (IOException closeError) {
+                    // Already failing
+                }
+            }
+        }
+    }
+
+    // Stop accepting, close all connections and release the threads
+    public void stop() throws IOException {
+        isRunning = false;
+        try {
+            serverChannel.close();
+        } finally {
+            for (NioEventLoop loop : eventLoops) {
+                loop.shutdown();
+            }
+            handlerExecutor.shutdown();
+            try {
+                if (!handlerExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                    handlerExecutor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                handlerExecutor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public boolean isRunning() {
+        return isRunning;
+    }
+
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    public int getLocalPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+}
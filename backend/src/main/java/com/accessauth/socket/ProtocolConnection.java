@@ -0,0 +1,44 @@
+package com.accessauth.socket;
+
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * A server-side client connection speaking the reader protocol (JSON lines or
+ * binary frames), independent of the transport (blocking SSLSocket or NIO SSLEngine).
+ */
+public interface ProtocolConnection {
+
+    // Error listener used until one is set, e.g. by clients outside the server
+    BiConsumer<String, String> STDERR_ERRORS = (event, detail) -> System.err.println("[" + event + "] " + detail);
+
+    // Send a JSON object; safe to call from any thread
+    void sendJson(JsonObject jsonObject);
+
+    // Send a binary frame; only valid once the client negotiated binary framing
+    void sendFrame(BinaryFrame frame);
+
+    // Deliver received messages to messageHandler, one at a time and in order, and run
+    // closeHandler once the connection is gone. A client opening with a binary HELLO
+    // frame is served in binary framing mode, any other client speaks JSON.
+    // The message instance may be reused for the next message once the handler returns.
+    void startListening(Consumer<ProtocolMessage> messageHandler, Runnable closeHandler);
+
+    // Largest batch to decode, set before startListening; see ProtocolMessage.setMaxBatchSize
+    void setMaxBatchSize(int maxBatchSize);
+
+    // Receives errors on the connection as (event, detail), e.g. invalid input that closes it,
+    // so the server can log them with its session; set before startListening
+    void setErrorListener(BiConsumer<String, String> errorListener);
+
+    WireFormat getWireFormat();
+
+    boolean isConnected();
+
+    void close() throws IOException;
+
+    String getRemoteAddress();
+}
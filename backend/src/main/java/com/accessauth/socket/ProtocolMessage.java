@@ -0,0 +1,292 @@
+package com.accessauth.socket;
+
+import com.accessauth.service.ChallengeCodec;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A client message of the reader protocol, decoded from either wire format.
+ * Only the fields the server acts on are kept, everything else is skipped
+ * while decoding. A connection reuses one instance for all its messages, so
+ * handlers must not hold on to it (or its response buffer) after returning.
+ */
+public class ProtocolMessage {
+    // Longest JSON message accepted from a client, however it is split into lines; fits a few hundred batched responses
+    public static final int MAX_MESSAGE_LENGTH = 64 * 1024;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 256;
+
+    public static final String AUTH_REQUEST = "auth_request";
+    public static final String CHALLENGE_RESPONSE = "challenge_response";
+
+    private String type;
+    private String userId;
+    // Optional correlation id; tagged messages may interleave on one connection
+    private String requestId;
+    // Raw ciphertext of a challenge response; JSON carries it as hex(Base64(ciphertext))
+    private byte[] response = new byte[64];
+    private int responseLength;
+    private boolean hasResponse;
+    private boolean responseMalformed;
+    // Batch fields: user ids of an auth_batch, responses of a challenge_response_batch
+    private final List<String> userIds = new ArrayList<>();
+    private byte[][] batchResponses = new byte[0][];
+    // Length of each batched response, -1 if missing or malformed
+    private int[] batchResponseLengths = new int[0];
+    private int batchResponseCount;
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+    /**
+     * Limit the entries kept from a batch array. One entry past the limit is still
+     * kept so the handler can see the batch was too large; the rest are skipped.
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be positive");
+        }
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public void reset() {
+        type = null;
+        userId = null;
+        requestId = null;
+        responseLength = 0;
+        hasResponse = false;
+        responseMalformed = false;
+        userIds.clear();
+        batchResponseCount = 0;
+    }
+
+    /**
+     * Decode the next JSON object from a lenient reader, pulling only the known fields
+     * @param reader reader positioned before a JSON object
+     * @throws IOException on malformed JSON or end of input
+     * @throws IllegalStateException if the next value is not an object
+     */
+    public void readJson(JsonReader reader) throws IOException {
+        reset();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "type":
+                    type = nextString(reader);
+                    break;
+                case "user_id":
+                    userId = nextString(reader);
+                    break;
+                case "request_id":
+                    requestId = nextString(reader);
+                    break;
+                case "response":
+                    setHexResponse(nextString(reader));
+                    break;
+                case "user_ids":
+                    readUserIds(reader);
+                    break;
+                case "responses":
+                    readBatchResponses(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+    }
+
+    // Scalar as text (user_id may arrive as a number); objects and arrays count as missing
+    private static String nextString(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        switch (token) {
+            case STRING:
+            case NUMBER:
+                return reader.nextString();
+            case BOOLEAN:
+                return String.valueOf(reader.nextBoolean());
+            case NULL:
+                reader.nextNull();
+                return null;
+            default:
+                reader.skipValue();
+                return null;
+        }
+    }
+
+    private void setHexResponse(String hex) {
+        if (hex == null) {
+            return;
+        }
+        hasResponse = true;
+        ensureResponseCapacity(hex.length() / 2);
+        try {
+            // hex -> Base64 text -> ciphertext, decoded in place
+            int base64Length = ChallengeCodec.decodeHex(hex, response, 0);
+            responseLength = ChallengeCodec.decodeBase64(response, 0, base64Length, response, 0);
+        } catch (IllegalArgumentException e) {
+            responseMalformed = true;
+            responseLength = 0;
+        }
+    }
+
+    private void readUserIds(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return;
+        }
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (userIds.size() > maxBatchSize) {
+                reader.skipValue();
+                continue;
+            }
+            userIds.add(nextString(reader));
+        }
+        reader.endArray();
+    }
+
+    private void readBatchResponses(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return;
+        }
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (batchResponseCount > maxBatchSize) {
+                reader.skipValue();
+                continue;
+            }
+            String hex = nextString(reader);
+            int index = batchResponseCount++;
+            ensureBatchCapacity(batchResponseCount);
+            if (hex == null) {
+                batchResponseLengths[index] = -1;
+                continue;
+            }
+            byte[] buffer = batchResponses[index];
+            if (buffer == null || buffer.length < hex.length() / 2) {
+                buffer = new byte[Math.max(64, hex.length() / 2)];
+                batchResponses[index] = buffer;
+            }
+            try {
+                int base64Length = ChallengeCodec.decodeHex(hex, buffer, 0);
+                batchResponseLengths[index] = ChallengeCodec.decodeBase64(buffer, 0, base64Length, buffer, 0);
+            } catch (IllegalArgumentException e) {
+                batchResponseLengths[index] = -1;
+            }
+        }
+        reader.endArray();
+    }
+
+    private void ensureBatchCapacity(int capacity) {
+        if (batchResponses.length < capacity) {
+            int grown = Math.max(capacity, batchResponses.length * 2);
+            batchResponses = Arrays.copyOf(batchResponses, grown);
+            batchResponseLengths = Arrays.copyOf(batchResponseLengths, grown);
+        }
+    }
+
+    /**
+     * Decode a binary frame straight from its payload bytes
+     * @param frameType frame type, see BinaryFrame
+     * @param payload buffer holding the payload
+     * @param offset start of the payload
+     * @param length payload length
+     */
+    public void readFrame(byte frameType, byte[] payload, int offset, int length) {
+        reset();
+        switch (frameType) {
+            case BinaryFrame.AUTH_REQUEST:
+                type = AUTH_REQUEST;
+                if (length >= 8) {
+                    userId = Long.toString(ByteBuffer.wrap(payload, offset, 8).getLong());
+                }
+                break;
+            case BinaryFrame.CHALLENGE_RESPONSE:
+                type = CHALLENGE_RESPONSE;
+                hasResponse = true;
+                ensureResponseCapacity(length);
+                System.arraycopy(payload, offset, response, 0, length);
+                responseLength = length;
+                break;
+            default:
+                type = "frame_" + (frameType & 0xff);
+                break;
+        }
+    }
+
+    private void ensureResponseCapacity(int capacity) {
+        if (response.length < capacity) {
+            response = new byte[capacity];
+        }
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    // Correlation id of the message, null if untagged (binary frames are always untagged)
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public boolean hasResponse() {
+        return hasResponse;
+    }
+
+    // True if the response field was present but not valid hex(Base64)
+    public boolean isResponseMalformed() {
+        return responseMalformed;
+    }
+
+    // Buffer holding the raw response in [0, getResponseLength())
+    public byte[] getResponse() {
+        return response;
+    }
+
+    public int getResponseLength() {
+        return responseLength;
+    }
+
+    // User ids of an auth_batch, in request order; entries may be null. Holds at most
+    // max batch size + 1 entries, so a larger list means the batch was too large.
+    public List<String> getUserIds() {
+        return userIds;
+    }
+
+    // Responses of a challenge_response_batch, at most max batch size + 1 like getUserIds()
+    public int getBatchResponseCount() {
+        return batchResponseCount;
+    }
+
+    // Buffer holding batched response i in [0, getBatchResponseLength(i))
+    public byte[] getBatchResponse(int index) {
+        return batchResponses[index];
+    }
+
+    // Length of batched response i, -1 if it was missing or malformed
+    public int getBatchResponseLength(int index) {
+        return batchResponseLengths[index];
+    }
+
+    @Override
+    public String toString() {
+        return "ProtocolMessage{" +
+                "type='" + type + '\'' +
+                ", userId='" + userId + '\'' +
+                ", requestId='" + requestId + '\'' +
+                ", responseLength=" + responseLength +
+                (userIds.isEmpty() ? "" : ", userIds=" + userIds.size()) +
+                (batchResponseCount == 0 ? "" : ", responses=" + batchResponseCount) +
+                '}';
+    }
+}
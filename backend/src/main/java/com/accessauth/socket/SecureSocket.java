@@ -3,41 +3,96 @@ package com.accessauth.socket;
 import javax.net.ssl.*;
 import java.io.*;
 import java.net.*;
-import java.security.KeyStore;
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
 
-public class SecureSocket {
+public class SecureSocket implements ProtocolConnection {
     private SSLSocket socket;
+    private BufferedInputStream input;
+    private OutputStream output;
     private BufferedReader reader;
     private PrintWriter writer;
+    private final boolean serverSide;
+    private volatile WireFormat wireFormat = WireFormat.UNKNOWN;
     private boolean isConnected = false;
     private ExecutorService listenerExecutor;
+    private boolean ownsListenerExecutor;
+    private Runnable onClose;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
     private Consumer<JsonObject> messageHandler;
     private Gson gson;
+    private volatile int maxBatchSize = ProtocolMessage.DEFAULT_MAX_BATCH_SIZE;
+    private volatile BiConsumer<String, String> errorListener = STDERR_ERRORS;
     
     // Constructor for client connection
     public SecureSocket(String host, int port, String keystorePath, String password) throws Exception {
+        this(host, port, new TlsContext(keystorePath, password));
+    }
+    
+    // Constructor for client connection sharing a TLS context, so reconnects resume the cached session
+    public SecureSocket(String host, int port, TlsContext tlsContext) throws IOException {
         this.gson = new Gson();
-        SSLContext sslContext = createSSLContext(keystorePath, password);
-        SSLSocketFactory factory = sslContext.getSocketFactory();
+        this.serverSide = false;
+        SSLSocketFactory factory = tlsContext.getSslContext().getSocketFactory();
         this.socket = (SSLSocket) factory.createSocket(host, port);
         initializeStreams();
     }
     
+    // Run the TLS handshake now rather than on the first message (client side)
+    public void startHandshake() throws IOException {
+        socket.startHandshake();
+    }
+    
+    // Fail blocking reads after this long (0 waits forever)
+    public void setReadTimeout(int timeoutMillis) throws IOException {
+        socket.setSoTimeout(timeoutMillis);
+    }
+    
     // Constructor for server-side socket (when you accept a connection)
     public SecureSocket(SSLSocket acceptedSocket) throws IOException {
+        this(acceptedSocket, null, null);
+    }
+    
+    // Constructor for server-side socket whose read loop runs on a shared connection executor;
+    // onClose runs once when the socket is closed
+    public SecureSocket(SSLSocket acceptedSocket, ExecutorService connectionExecutor, Runnable onClose) throws IOException {
         this.gson = new Gson();
+        this.serverSide = true;
         this.socket = acceptedSocket;
-        initializeStreams();
+        this.onClose = onClose;
+        try {
+            initializeStreams(connectionExecutor);
+        } catch (IOException e) {
+            releaseOnClose();
+            throw e;
+        }
     }
     
     private void initializeStreams() throws IOException {
-        this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        this.writer = new PrintWriter(socket.getOutputStream(), true);
+        initializeStreams(null);
+    }
+    
+    private void initializeStreams(ExecutorService connectionExecutor) throws IOException {
+        // The reader sits on a buffered stream so the first byte can be peeked to detect binary framing
+        this.input = new BufferedInputStream(socket.getInputStream());
+        this.output = new BufferedOutputStream(socket.getOutputStream());
+        this.reader = new BufferedReader(new InputStreamReader(input));
+        this.writer = new PrintWriter(output, true);
         this.isConnected = true;
-        this.listenerExecutor = Executors.newSingleThreadExecutor();
+        if (connectionExecutor != null) {
+            this.listenerExecutor = connectionExecutor;
+            this.ownsListenerExecutor = false;
+        } else {
+            this.listenerExecutor = Executors.newSingleThreadExecutor();
+            this.ownsListenerExecutor = true;
+        }
     }
     
     // Send a JSON object
@@ -56,6 +111,39 @@ public class SecureSocket {
         writer.println(gson.toJson(object));
     }
     
+    // Send a binary frame
+    public void sendFrame(BinaryFrame frame) {
+        if (!isConnected) {
+            throw new IllegalStateException("Socket not connected");
+        }
+        try {
+            synchronized (output) {
+                output.write(frame.encode());
+                output.flush();
+            }
+        } catch (IOException e) {
+            errorListener.accept("write_failed", e.getMessage());
+        }
+    }
+    
+    // Client side: switch this connection to binary framing; the server's HELLO reply is consumed internally
+    public void sendHello() {
+        wireFormat = WireFormat.BINARY;
+        sendFrame(BinaryFrame.hello());
+    }
+    
+    // Read a single binary frame (blocking); null at end of stream
+    public BinaryFrame receiveFrame() throws IOException {
+        if (!isConnected) {
+            throw new IllegalStateException("Socket not connected");
+        }
+        return readFrame(new DataInputStream(input));
+    }
+    
+    public WireFormat getWireFormat() {
+        return wireFormat;
+    }
+    
     // Send a message (legacy method)
     public void send(String message) {
         if (!isConnected) {
@@ -84,26 +172,144 @@ public class SecureSocket {
     
     // Start listening for JSON messages asynchronously
     public void startJsonListening(Consumer<JsonObject> messageHandler) {
+        startJsonListening(messageHandler, null);
+    }
+    
+    // Start listening for JSON messages asynchronously, running closeHandler once the peer disconnects
+    public void startJsonListening(Consumer<JsonObject> messageHandler, Runnable closeHandler) {
         this.messageHandler = messageHandler;
         listenerExecutor.submit(() -> {
             try {
                 String message;
                 while (isConnected && (message = reader.readLine()) != null) {
                     try {
-                        JsonObject jsonObject = JsonParser.parseString(message).getAsJsonObject();
-                        messageHandler.accept(jsonObject);
-                    } catch (JsonSyntaxException e) {
-                        System.err.println("Invalid JSON received: " + message);
+                        messageHandler.accept(JsonParser.parseString(message).getAsJsonObject());
+                    } catch (JsonSyntaxException | IllegalStateException e) {
+                        errorListener.accept("invalid_json", e.getMessage());
                     }
                 }
             } catch (IOException e) {
                 if (isConnected) {
-                    System.err.println("Error reading JSON message: " + e.getMessage());
+                    errorListener.accept("read_failed", e.getMessage());
+                }
+            } finally {
+                stopListening();
+                if (closeHandler != null) {
+                    closeHandler.run();
+                }
+            }
+        });
+    }
+    
+    @Override
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+    
+    @Override
+    public void setErrorListener(BiConsumer<String, String> errorListener) {
+        this.errorListener = errorListener;
+    }
+    
+    // Server side: decode client messages (JSON, or binary frames once negotiated) into one reused message
+    public void startListening(Consumer<ProtocolMessage> messageHandler, Runnable closeHandler) {
+        listenerExecutor.submit(() -> {
+            ProtocolMessage message = new ProtocolMessage();
+            message.setMaxBatchSize(maxBatchSize);
+            try {
+                if (peekBinaryHello()) {
+                    readFrames(message, messageHandler);
+                } else {
+                    wireFormat = WireFormat.JSON;
+                    readJsonStream(message, messageHandler);
+                }
+            } catch (MalformedJsonException | IllegalStateException e) {
+                // The stream cannot be resynchronised after a syntax error
+                errorListener.accept("invalid_json", e.getMessage());
+            } catch (EOFException e) {
+                // Peer disconnected (possibly mid-message)
+            } catch (IOException e) {
+                if (isConnected) {
+                    errorListener.accept("read_failed", e.getMessage());
+                }
+            } finally {
+                // The loop also ends on oversized or malformed input, so drop the connection here
+                closeQuietly();
+                if (closeHandler != null) {
+                    closeHandler.run();
                 }
             }
         });
     }
     
+    // Stream JSON objects straight off the socket; no line Strings and no JSON tree per message
+    private void readJsonStream(ProtocolMessage message, Consumer<ProtocolMessage> messageHandler) throws IOException {
+        JsonReader json = new JsonReader(new MessageLimitedReader(
+                new InputStreamReader(input, StandardCharsets.UTF_8), ProtocolMessage.MAX_MESSAGE_LENGTH));
+        // Lenient: the connection is a sequence of top-level objects
+        json.setLenient(true);
+        while (isConnected && json.peek() != JsonToken.END_DOCUMENT) {
+            message.readJson(json);
+            messageHandler.accept(message);
+        }
+    }
+    
+    // True if the first byte on the wire starts a binary HELLO frame (JSON starts with '{' or whitespace)
+    private boolean peekBinaryHello() throws IOException {
+        if (wireFormat == WireFormat.BINARY) {
+            return true;
+        }
+        input.mark(1);
+        int first = input.read();
+        input.reset();
+        return first == BinaryFrame.HELLO;
+    }
+    
+    private void readFrames(ProtocolMessage message, Consumer<ProtocolMessage> messageHandler) throws IOException {
+        DataInputStream frames = new DataInputStream(input);
+        BinaryFrame hello = readFrame(frames);
+        if (hello == null) {
+            return;
+        }
+        if (!hello.isSupportedHello()) {
+            if (serverSide) {
+                sendFrame(BinaryFrame.authError("Unsupported framing version"));
+            }
+            throw new IOException("Unsupported binary framing hello");
+        }
+        wireFormat = WireFormat.BINARY;
+        if (serverSide) {
+            sendFrame(BinaryFrame.hello());
+        }
+        // Payloads are decoded from one scratch buffer into the reused message
+        byte[] payload = new byte[BinaryFrame.MAX_PAYLOAD_LENGTH];
+        int type;
+        while (isConnected && (type = frames.read()) >= 0) {
+            int length = frames.readUnsignedShort();
+            if (length > BinaryFrame.MAX_PAYLOAD_LENGTH) {
+                throw new IOException("Frame payload exceeds " + BinaryFrame.MAX_PAYLOAD_LENGTH + " bytes");
+            }
+            frames.readFully(payload, 0, length);
+            message.readFrame((byte) type, payload, 0, length);
+            messageHandler.accept(message);
+        }
+    }
+    
+    // Package-private for tests
+    static BinaryFrame readFrame(DataInputStream in) throws IOException {
+        int type = in.read();
+        if (type < 0) {
+            return null;
+        }
+        int length = in.readUnsignedShort();
+        if (length > BinaryFrame.MAX_PAYLOAD_LENGTH) {
+            throw new IOException("Frame payload exceeds " + BinaryFrame.MAX_PAYLOAD_LENGTH + " bytes");
+        }
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return new BinaryFrame((byte) type, payload);
+    }
+    
     // Start listening for messages asynchronously (legacy method)
     public void startListening(Consumer<String> messageHandler) {
         listenerExecutor.submit(() -> {
@@ -114,15 +320,17 @@ public class SecureSocket {
                 }
             } catch (IOException e) {
                 if (isConnected) {
-                    System.err.println("Error reading message: " + e.getMessage());
+                    errorListener.accept("read_failed", e.getMessage());
                 }
+            } finally {
+                stopListening();
             }
         });
     }
     
-    // Stop listening
+    // Stop listening; a shared connection executor is left running for the other connections
     public void stopListening() {
-        if (listenerExecutor != null && !listenerExecutor.isShutdown()) {
+        if (ownsListenerExecutor && listenerExecutor != null && !listenerExecutor.isShutdown()) {
             listenerExecutor.shutdown();
         }
     }
@@ -136,32 +344,32 @@ public class SecureSocket {
     public void close() throws IOException {
         isConnected = false;
         stopListening();
-        if (reader != null) reader.close();
-        if (writer != null) writer.close();
-        if (socket != null) socket.close();
+        try {
+            // Close the socket first so a read loop blocked in readLine() is released
+            if (socket != null) socket.close();
+            if (reader != null) reader.close();
+            if (writer != null) writer.close();
+        } finally {
+            releaseOnClose();
+        }
+    }
+    
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException e) {
+            // already gone
+        }
+    }
+    
+    private void releaseOnClose() {
+        if (closed.compareAndSet(false, true) && onClose != null) {
+            onClose.run();
+        }
     }
     
     // Get remote address info
     public String getRemoteAddress() {
         return socket.getRemoteSocketAddress().toString();
     }
-    
-    // Helper method to create SSL context
-    private static SSLContext createSSLContext(String keystorePath, String password) throws Exception {
-        KeyStore keyStore = KeyStore.getInstance("JKS");
-        try (InputStream is = new FileInputStream(keystorePath)) {
-            keyStore.load(is, password.toCharArray());
-        }
-        
-        KeyManagerFactory kmf = KeyManagerFactory.getInstance("SunX509");
-        kmf.init(keyStore, password.toCharArray());
-        
-        TrustManagerFactory tmf = TrustManagerFactory.getInstance("SunX509");
-        tmf.init(keyStore);
-        
-        SSLContext sslContext = SSLContext.getInstance("TLS");
-        sslContext.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
-        
-        return sslContext;
-    }
 }
\ No newline at end of file
@@ -2,26 +2,79 @@ package com.accessauth.socket;
 
 import javax.net.ssl.*;
 import java.io.*;
-import java.security.KeyStore;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 public class SecureSocketServer {
     private SSLServerSocket serverSocket;
-    private SSLContext sslContext;
-    private boolean isRunning = false;
+    private TlsContext tlsContext;
+    private volatile boolean isRunning = false;
+    
+    // Optional shared executor for the read loops of accepted connections
+    private ExecutorService connectionExecutor;
+    private Semaphore connectionPermits;
+    private int maxConnections;
     
     public SecureSocketServer(int port, String keystorePath, String password) throws Exception {
-        this.sslContext = createSSLContext(keystorePath, password);
-        SSLServerSocketFactory factory = sslContext.getServerSocketFactory();
+        this(port, new TlsContext(keystorePath, password));
+    }
+    
+    // Server using a shared TLS context and its session cache
+    public SecureSocketServer(int port, TlsContext tlsContext) throws IOException {
+        this.tlsContext = tlsContext;
+        SSLServerSocketFactory factory = tlsContext.getSslContext().getServerSocketFactory();
         this.serverSocket = (SSLServerSocket) factory.createServerSocket(port);
     }
+    
+    // Server whose accepted connections run on connectionExecutor, with at most maxConnections open at once
+    public SecureSocketServer(int port, String keystorePath, String password,
+                              ExecutorService connectionExecutor, int maxConnections) throws Exception {
+        this(port, new TlsContext(keystorePath, password), connectionExecutor, maxConnections);
+    }
+    
+    public SecureSocketServer(int port, TlsContext tlsContext,
+                              ExecutorService connectionExecutor, int maxConnections) throws IOException {
+        this(port, tlsContext);
+        if (maxConnections <= 0) {
+            throw new IllegalArgumentException("maxConnections must be positive");
+        }
+        this.connectionExecutor = connectionExecutor;
+        this.maxConnections = maxConnections;
+        this.connectionPermits = new Semaphore(maxConnections);
+    }
 
     // Accept a connection and return a SecureSocket
     public SecureSocket acceptConnection() throws IOException {
         if (!isRunning) {
             throw new IllegalStateException("Server not started");
         }
-        SSLSocket clientSocket = (SSLSocket) serverSocket.accept();
-        return new SecureSocket(clientSocket);
+        if (connectionExecutor == null) {
+            SSLSocket clientSocket = (SSLSocket) serverSocket.accept();
+            tlsContext.track(clientSocket);
+            return new SecureSocket(clientSocket);
+        }
+        
+        // Stop accepting while at capacity; a permit is returned when a connection closes
+        try {
+            connectionPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a free connection slot");
+        }
+        try {
+            SSLSocket clientSocket = (SSLSocket) serverSocket.accept();
+            tlsContext.track(clientSocket);
+            return new SecureSocket(clientSocket, connectionExecutor, connectionPermits::release);
+        } catch (IOException | RuntimeException e) {
+            connectionPermits.release();
+            throw e;
+        }
+    }
+    
+    // Number of currently open connections (only tracked with a connection executor)
+    public int getOpenConnections() {
+        return connectionPermits == null ? 0 : maxConnections - connectionPermits.availablePermits();
     }
     
     // Start the server
@@ -33,30 +86,26 @@ public class SecureSocketServer {
     // Stop the server
     public void stop() throws IOException {
         isRunning = false;
-        if (serverSocket != null) {
-            serverSocket.close();
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } finally {
+            if (connectionExecutor != null) {
+                connectionExecutor.shutdown();
+                try {
+                    if (!connectionExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                        connectionExecutor.shutdownNow();
+                    }
+                } catch (InterruptedException e) {
+                    connectionExecutor.shutdownNow();
+                    Thread.currentThread().interrupt();
+                }
+            }
         }
     }
     
     public boolean isRunning() {
         return isRunning;
     }
-    
-    private static SSLContext createSSLContext(String keystorePath, String password) throws Exception {
-        KeyStore keyStore = KeyStore.getInstance("JKS");
-        try (InputStream is = new FileInputStream(keystorePath)) {
-            keyStore.load(is, password.toCharArray());
-        }
-        
-        KeyManagerFactory kmf = KeyManagerFactory.getInstance("SunX509");
-        kmf.init(keyStore, password.toCharArray());
-        
-        TrustManagerFactory tmf = TrustManagerFactory.getInstance("SunX509");
-        tmf.init(keyStore);
-        
-        SSLContext sslContext = SSLContext.getInstance("TLS");
-        sslContext.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
-        
-        return sslContext;
-    }
 }
\ No newline at end of file
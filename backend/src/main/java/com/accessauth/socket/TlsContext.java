@@ -0,0 +1,104 @@
+package com.accessauth.socket;
+
+import javax.net.ssl.*;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+/**
+ * TLS configuration shared by all protocol transports: the keystore is loaded
+ * once, and one SSLContext (and so one session cache) serves every connection.
+ * Clients reconnecting with a cached session or a session ticket resume it and
+ * skip the certificate and key-exchange work of a full handshake.
+ * Session tickets are on by default; the JDK reads their setting once, when TLS is
+ * first used, so they can only be turned off with the JVM options
+ * -Djdk.tls.server.enableSessionTicketExtension=false and
+ * -Djdk.tls.client.enableSessionTicketExtension=false.
+ */
+public class TlsContext {
+    private final SSLContext sslContext;
+    private final LongAdder fullHandshakes = new LongAdder();
+    private final LongAdder resumedHandshakes = new LongAdder();
+    // Receives the duration in nanoseconds of each completed server handshake
+    private volatile LongConsumer handshakeListener;
+
+    // Context with the JDK's default session cache settings
+    public TlsContext(String keystorePath, String password) throws Exception {
+        this(keystorePath, password, 0, 0);
+    }
+
+    /**
+     * @param sessionCacheSize sessions kept for resumption (0 keeps the JDK default)
+     * @param sessionTimeoutSeconds lifetime of a cached session (0 keeps the JDK default)
+     */
+    public TlsContext(String keystorePath, String password, int sessionCacheSize, int sessionTimeoutSeconds)
+            throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        try (InputStream is = new FileInputStream(keystorePath)) {
+            keyStore.load(is, password.toCharArray());
+        }
+
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance("SunX509");
+        kmf.init(keyStore, password.toCharArray());
+
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance("SunX509");
+        tmf.init(keyStore);
+
+        this.sslContext = SSLContext.getInstance("TLS");
+        this.sslContext.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
+
+        for (SSLSessionContext sessions : new SSLSessionContext[] {
+                sslContext.getServerSessionContext(), sslContext.getClientSessionContext() }) {
+            if (sessionCacheSize > 0) {
+                sessions.setSessionCacheSize(sessionCacheSize);
+            }
+            if (sessionTimeoutSeconds > 0) {
+                sessions.setSessionTimeout(sessionTimeoutSeconds);
+            }
+        }
+    }
+
+    public SSLContext getSslContext() {
+        return sslContext;
+    }
+
+    public void setHandshakeListener(LongConsumer handshakeListener) {
+        this.handshakeListener = handshakeListener;
+    }
+
+    // Count the handshake of an accepted socket once it completes
+    void track(SSLSocket socket) {
+        long startedMillis = System.currentTimeMillis();
+        long startedNanos = System.nanoTime();
+        socket.addHandshakeCompletedListener(event -> handshakeCompleted(event.getSession(), startedMillis, startedNanos));
+    }
+
+    /**
+     * Record a completed handshake. A resumed session (by session id or ticket)
+     * was created before this handshake started, a full handshake creates a new one.
+     * @param session the negotiated session
+     * @param startedMillis when the connection was accepted
+     * @param startedNanos System.nanoTime() when the connection was accepted
+     */
+    void handshakeCompleted(SSLSession session, long startedMillis, long startedNanos) {
+        LongConsumer listener = handshakeListener;
+        if (listener != null) {
+            listener.accept(System.nanoTime() - startedNanos);
+        }
+        if (session.getCreationTime() < startedMillis) {
+            resumedHandshakes.increment();
+        } else {
+            fullHandshakes.increment();
+        }
+    }
+
+    public long getFullHandshakes() {
+        return fullHandshakes.sum();
+    }
+
+    public long getResumedHandshakes() {
+        return resumedHandshakes.sum();
+    }
+}
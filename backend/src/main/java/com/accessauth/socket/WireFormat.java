@@ -0,0 +1,14 @@
+package com.accessauth.socket;
+
+/**
+ * Wire format of a connection, decided by the first byte the client sends:
+ * a binary HELLO frame selects {@link #BINARY}, anything else {@link #JSON}.
+ */
+public enum WireFormat {
+    // Nothing received yet
+    UNKNOWN,
+    // Newline-delimited JSON messages
+    JSON,
+    // Length-prefixed frames, see BinaryFrame
+    BINARY
+}
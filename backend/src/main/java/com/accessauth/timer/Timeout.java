@@ -0,0 +1,17 @@
+package com.accessauth.timer;
+
+/**
+ * Handle of a task scheduled on a {@link HashedWheelTimer}.
+ */
+public interface Timeout {
+
+    /**
+     * Cancel the task if it has not run yet; O(1), safe from any thread
+     * @return true if the task was cancelled by this call
+     */
+    boolean cancel();
+
+    boolean isCancelled();
+
+    boolean isExpired();
+}
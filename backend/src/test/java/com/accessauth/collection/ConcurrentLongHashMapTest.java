@@ -0,0 +1,172 @@
+package com.accessauth.collection;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentLongHashMapTest {
+
+    @Test
+    @DisplayName("put, get and remove behave like a map")
+    void testBasicOperations() {
+        ConcurrentLongHashMap<String> map = new ConcurrentLongHashMap<>();
+
+        assertNull(map.put(1, "a"));
+        assertEquals("a", map.put(1, "b"));
+        assertEquals("b", map.putIfAbsent(1, "c"));
+        assertNull(map.putIfAbsent(2, "c"));
+        assertEquals("b", map.get(1));
+        assertTrue(map.containsKey(2));
+        assertEquals(2, map.size());
+
+        assertFalse(map.remove(1, "a"), "Only removed while mapped to the given value");
+        assertTrue(map.remove(1, "b"));
+        assertEquals("c", map.remove(2));
+        assertNull(map.remove(2));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    @DisplayName("any long can be a key")
+    void testExtremeKeys() {
+        ConcurrentLongHashMap<String> map = new ConcurrentLongHashMap<>(0, 1);
+        long[] keys = { 0, -1, Long.MIN_VALUE, Long.MAX_VALUE };
+        for (long key : keys) {
+            map.put(key, "v" + key);
+        }
+        for (long key : keys) {
+            assertEquals("v" + key, map.get(key));
+        }
+        assertNull(map.get(1));
+    }
+
+    @Test
+    @DisplayName("random operations match a HashMap through resizes and removals")
+    void testMatchesHashMap() {
+        ConcurrentLongHashMap<Integer> map = new ConcurrentLongHashMap<>(0, 4);
+        Map<Long, Integer> reference = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(3000);
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertEquals(reference.put(key, i), map.put(key, i));
+                    break;
+                case 1:
+                    assertEquals(reference.remove(key), map.remove(key));
+                    break;
+                default:
+                    assertEquals(reference.get(key), map.get(key));
+                    break;
+            }
+        }
+        assertEquals(reference.size(), map.size());
+        assertEquals(new HashSet<>(reference.values()), new HashSet<>(map.values()));
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(reference.keySet().iterator().next()));
+    }
+
+    @Test
+    @DisplayName("sampled keys are present in the map")
+    void testSampleKeys() {
+        ConcurrentLongHashMap<String> map = new ConcurrentLongHashMap<>();
+        long[] sample = new long[8];
+        assertEquals(0, map.sampleKeys(sample));
+
+        for (long key = 100; key < 103; key++) {
+            map.put(key, "v");
+        }
+        assertEquals(3, map.sampleKeys(sample));
+        Set<Long> sampled = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+            sampled.add(sample[i]);
+        }
+        assertEquals(Set.of(100L, 101L, 102L), sampled);
+    }
+
+    @Test
+    @DisplayName("removeIf drops exactly the matching values, keeping the rest reachable")
+    void testRemoveIf() {
+        // One dense segment, so probe runs wrap around the end of the table
+        ConcurrentLongHashMap<Integer> map = new ConcurrentLongHashMap<>(0, 1);
+        Map<Long, Integer> reference = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 5000; i++) {
+            long key = random.nextLong();
+            map.put(key, i);
+            reference.put(key, i);
+        }
+
+        assertEquals(2500, map.removeIf(value -> value % 2 == 0));
+        reference.values().removeIf(value -> value % 2 == 0);
+
+        assertEquals(reference.size(), map.size());
+        for (Map.Entry<Long, Integer> entry : reference.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+        assertEquals(0, map.removeIf(value -> value % 2 == 0));
+    }
+
+    @Test
+    @DisplayName("null values are rejected")
+    void testNullValue() {
+        ConcurrentLongHashMap<String> map = new ConcurrentLongHashMap<>();
+        assertThrows(NullPointerException.class, () -> map.put(1, null));
+    }
+
+    @Test
+    @DisplayName("readers never miss stable keys while other keys are written")
+    void testConcurrentReadsDuringWrites() throws Exception {
+        ConcurrentLongHashMap<String> map = new ConcurrentLongHashMap<>(16, 4);
+        for (long key = 0; key < 1000; key++) {
+            map.put(key, "stable-" + key);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 2; t++) {
+                long base = 1_000_000L * (t + 1);
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 300_000; i++) {
+                        long key = base + i % 20_000;
+                        if (i % 3 == 2) {
+                            map.remove(key);
+                        } else {
+                            map.put(key, "churn");
+                        }
+                    }
+                }));
+            }
+            for (int t = 0; t < 2; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 500_000; i++) {
+                        long key = i % 1000;
+                        if (!Objects.equals("stable-" + key, map.get(key))) {
+                            throw new AssertionError("Lost key " + key);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.accessauth.controller;
+
+import com.accessauth.log.EventLog;
+import com.accessauth.metrics.ProtocolMetrics;
+import com.accessauth.service.ChallengePool;
+import com.accessauth.service.CryptoService;
+import com.accessauth.service.UserService;
+import com.accessauth.socket.BinaryFrame;
+import com.accessauth.socket.ProtocolConnection;
+import com.accessauth.socket.ProtocolMessage;
+import com.accessauth.socket.WireFormat;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class AccessAuthorizationControllerTest {
+    private static final long TIMEOUT_MILLIS = 100;
+
+    private AccessAuthorizationController controller;
+    private InMemoryConnection connection;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        UserService userService = mock(UserService.class);
+        when(userService.getActiveSymmetricKey(anyLong())).thenReturn(Optional.of("key"));
+        CryptoService cryptoService = mock(CryptoService.class);
+        when(cryptoService.encryptChallenge(anyLong(), any(byte[].class), anyString())).thenReturn(new byte[16]);
+        when(cryptoService.verifyChallengeResponse(anyLong(), any(), any(), anyInt(), anyInt(), anyString()))
+                .thenReturn(true);
+        ChallengePool challengePool = mock(ChallengePool.class);
+        when(challengePool.take()).thenReturn(new byte[16]);
+
+        controller = new AccessAuthorizationController();
+        ReflectionTestUtils.setField(controller, "sessionRegistry", new SessionRegistry());
+        ReflectionTestUtils.setField(controller, "userService", userService);
+        ReflectionTestUtils.setField(controller, "cryptoService", cryptoService);
+        ReflectionTestUtils.setField(controller, "challengePool", challengePool);
+        ReflectionTestUtils.setField(controller, "metrics", mock(ProtocolMetrics.class));
+        ReflectionTestUtils.setField(controller, "eventLog", mock(EventLog.class));
+        ReflectionTestUtils.setField(controller, "connectionThreads", "platform");
+        ReflectionTestUtils.setField(controller, "maxConnections", 4);
+        ReflectionTestUtils.setField(controller, "maxInFlight", 64);
+        ReflectionTestUtils.setField(controller, "maxBatchSize", 256);
+        ReflectionTestUtils.setField(controller, "challengeResponseTimeout", TIMEOUT_MILLIS);
+        ReflectionTestUtils.setField(controller, "timerTickMillis", 10L);
+        ReflectionTestUtils.setField(controller, "timerWheelSize", 64);
+        controller.initTimer();
+
+        connection = new InMemoryConnection();
+        controller.handleClient(connection);
+    }
+
+    @AfterEach
+    void tearDown() {
+        controller.cleanup();
+    }
+
+    @Test
+    @DisplayName("an unanswered challenge times out")
+    void testChallengeTimeout() throws Exception {
+        connection.receive("{\"type\":\"auth_request\",\"user_id\":\"1\"}");
+        Thread.sleep(TIMEOUT_MILLIS * 5);
+
+        assertEquals(List.of("challenge", "timeout"), connection.sentTypes());
+    }
+
+    @Test
+    @DisplayName("a successful untagged authentication sends nothing more once its timeout is due")
+    void testNoTimeoutAfterSuccess() throws Exception {
+        connection.receive("{\"type\":\"auth_request\",\"user_id\":\"1\"}");
+        connection.receive("{\"type\":\"challenge_response\",\"response\":\"41414141\"}");
+        Thread.sleep(TIMEOUT_MILLIS * 5);
+
+        assertEquals(List.of("challenge", "auth_success"), connection.sentTypes());
+    }
+
+    @Test
+    @DisplayName("a successful tagged authentication sends nothing more once its timeout is due")
+    void testNoTimeoutAfterTaggedSuccess() throws Exception {
+        connection.receive("{\"type\":\"auth_request\",\"request_id\":\"a\",\"user_id\":\"1\"}");
+        connection.receive("{\"type\":\"challenge_response\",\"request_id\":\"a\",\"response\":\"41414141\"}");
+        Thread.sleep(TIMEOUT_MILLIS * 5);
+
+        assertEquals(List.of("challenge", "auth_success"), connection.sentTypes());
+    }
+
+    /**
+     * A JSON client connection without a socket; messages are fed in directly
+     */
+    private static class InMemoryConnection implements ProtocolConnection {
+        private final ProtocolMessage message = new ProtocolMessage();
+        private final List<JsonObject> sent = new CopyOnWriteArrayList<>();
+        private Consumer<ProtocolMessage> messageHandler;
+
+        void receive(String json) throws IOException {
+            JsonReader reader = new JsonReader(new StringReader(json));
+            reader.setLenient(true);
+            message.readJson(reader);
+            messageHandler.accept(message);
+        }
+
+        List<String> sentTypes() {
+            return sent.stream().map(json -> json.get("type").getAsString()).toList();
+        }
+
+        @Override
+        public void sendJson(JsonObject jsonObject) {
+            sent.add(jsonObject);
+        }
+
+        @Override
+        public void sendFrame(BinaryFrame frame) {
+            throw new UnsupportedOperationException("JSON connection");
+        }
+
+        @Override
+        public void startListening(Consumer<ProtocolMessage> messageHandler, Runnable closeHandler) {
+            this.messageHandler = messageHandler;
+        }
+
+        @Override
+        public void setMaxBatchSize(int maxBatchSize) {
+        }
+
+        @Override
+        public void setErrorListener(BiConsumer<String, String> errorListener) {
+        }
+
+        @Override
+        public WireFormat getWireFormat() {
+            return WireFormat.JSON;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String getRemoteAddress() {
+            return "in-memory";
+        }
+    }
+}
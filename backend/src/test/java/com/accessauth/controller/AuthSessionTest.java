@@ -0,0 +1,71 @@
+package com.accessauth.controller;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuthSessionTest {
+
+    @Test
+    @DisplayName("untagged messages share the default attempt")
+    void testDefaultAttempt() {
+        AuthSession session = new AuthSession(1, null);
+
+        AuthAttempt attempt = session.beginAttempt(null);
+        assertSame(attempt, session.getAttempt(null));
+        assertSame(attempt, session.beginAttempt(null));
+
+        attempt.setState("WAITING_CHALLENGE_RESPONSE");
+        session.endAttempt(attempt);
+        assertSame(attempt, session.getAttempt(null));
+        assertNull(attempt.getState());
+        assertEquals(0, session.getTaggedAttemptCount());
+    }
+
+    @Test
+    @DisplayName("tagged attempts are independent and freed when ended")
+    void testTaggedAttempts() {
+        AuthSession session = new AuthSession(1, null);
+
+        AuthAttempt first = session.beginAttempt("a");
+        AuthAttempt second = session.beginAttempt("b");
+        assertNotSame(first, second);
+        assertSame(first, session.beginAttempt("a"));
+        assertEquals(2, session.getTaggedAttemptCount());
+
+        byte[] challenge = { 1, 2, 3 };
+        first.setChallenge(challenge);
+        session.endAttempt(first);
+        assertNull(session.getAttempt("a"));
+        assertSame(second, session.getAttempt("b"));
+        assertArrayEquals(new byte[3], challenge);
+
+        session.reset();
+        assertNull(session.getAttempt("b"));
+        assertEquals(0, session.getTaggedAttemptCount());
+    }
+
+    @Test
+    @DisplayName("a batch replaces the attempt under its request id and wipes its challenges")
+    void testBatchReplacesAttempt() {
+        AuthSession session = new AuthSession(1, null);
+        AuthAttempt single = session.beginAttempt("a");
+        single.setState("WAITING_CHALLENGE_RESPONSE");
+
+        AuthBatch batch = session.beginBatch("a");
+        assertSame(batch, session.getAttempt("a"));
+        assertNull(single.getState());
+
+        batch.init(2);
+        byte[] challenge = { 1, 2 };
+        batch.setEntry(1, 7L, challenge, "key");
+        session.endAttempt(batch);
+        assertArrayEquals(new byte[2], challenge);
+        assertNull(batch.getChallenge(1));
+        assertNull(session.getAttempt("a"));
+
+        session.beginBatch(null);
+        assertFalse(session.beginAttempt(null) instanceof AuthBatch);
+    }
+}
@@ -0,0 +1,169 @@
+package com.accessauth.datasource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ReplicaRoutingDataSourceTest {
+    // Each replica reports its lag from a table, so tests can make it fall behind
+    private static final String LAG_QUERY = "SELECT lag_ms FROM replication";
+
+    private DataSource primary;
+    private DataSource replica1;
+    private DataSource replica2;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        primary = database("primary");
+        replica1 = database("replica1");
+        replica2 = database("replica2");
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        for (DataSource dataSource : List.of(primary, replica1, replica2)) {
+            execute(dataSource, "DROP ALL OBJECTS");
+        }
+    }
+
+    @Test
+    @DisplayName("read-only transactions go to the replicas in turn, others to the primary")
+    void testRouting() throws SQLException {
+        ReplicaRoutingDataSource routing = routing(replica1, replica2);
+
+        assertEquals("primary", serverOf(routing));
+
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        Set<String> servers = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            servers.add(serverOf(routing));
+        }
+        assertEquals(Set.of("replica1", "replica2"), servers);
+        assertEquals(4, routing.getReplicaConnections());
+    }
+
+    @Test
+    @DisplayName("a replica lagging beyond max-lag gets no reads until it catches up")
+    void testLaggingReplica() throws SQLException {
+        ReplicaRoutingDataSource routing = routing(replica1, replica2);
+        execute(replica1, "UPDATE replication SET lag_ms = 5000");
+        routing.checkLag();
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals("replica2", serverOf(routing));
+        }
+        assertEquals(1, routing.getUsableReplicas());
+
+        execute(replica1, "UPDATE replication SET lag_ms = 0");
+        routing.checkLag();
+        assertEquals(2, routing.getUsableReplicas());
+    }
+
+    @Test
+    @DisplayName("reads fall back to the primary when no replica is usable")
+    void testFallbackToPrimary() throws SQLException {
+        DataSource down = mock(DataSource.class);
+        when(down.getConnection()).thenThrow(new SQLException("Connection refused"));
+        ReplicaRoutingDataSource routing = routing(down, replica1);
+        execute(replica1, "UPDATE replication SET lag_ms = 5000");
+        routing.checkLag();
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        assertEquals(0, routing.getUsableReplicas());
+        assertEquals("primary", serverOf(routing));
+        assertEquals(1, routing.getPrimaryFallbacks());
+    }
+
+    @Test
+    @DisplayName("a replica that refuses a connection is skipped until its next check")
+    void testReplicaFailsBetweenChecks() throws SQLException {
+        DataSource flaky = mock(DataSource.class);
+        Connection checkConnection = replica2.getConnection();
+        when(flaky.getConnection()).thenReturn(checkConnection).thenThrow(new SQLException("Connection refused"));
+        ReplicaRoutingDataSource routing = routing(flaky, replica1);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals("replica1", serverOf(routing));
+        }
+        assertEquals(1, routing.getUsableReplicas());
+        verify(flaky, times(2)).getConnection();
+    }
+
+    @Test
+    @DisplayName("work run on the primary ignores the read-only flag")
+    void testOnPrimary() throws SQLException {
+        ReplicaRoutingDataSource routing = routing(replica1);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        String server = ReplicaRoutingDataSource.onPrimary(() -> {
+            try {
+                return serverOf(routing);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        assertEquals("primary", server);
+        assertEquals("replica1", serverOf(routing), "Routing resumes after onPrimary");
+    }
+
+    @Test
+    @DisplayName("lag checks must run more often than the lag allowed")
+    void testRejectsCheckIntervalAboveMaxLag() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new ReplicaRoutingDataSource(primary, List.of(replica1), 1000, 1000, LAG_QUERY));
+        assertThrows(IllegalArgumentException.class,
+                () -> new ReplicaRoutingDataSource(primary, List.of(), 1000, 100, LAG_QUERY));
+    }
+
+    private ReplicaRoutingDataSource routing(DataSource... replicas) {
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary, List.of(replicas), 1000, 100,
+                LAG_QUERY);
+        routing.checkLag();
+        return routing;
+    }
+
+    // In-memory H2 database named after its role, standing in for a Postgres server
+    private static DataSource database(String name) throws SQLException {
+        DataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        execute(dataSource, "CREATE TABLE server (name VARCHAR(32))");
+        execute(dataSource, "INSERT INTO server VALUES ('" + name + "')");
+        execute(dataSource, "CREATE TABLE replication (lag_ms BIGINT)");
+        execute(dataSource, "INSERT INTO replication VALUES (0)");
+        return dataSource;
+    }
+
+    private static String serverOf(DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT name FROM server")) {
+            assertTrue(result.next());
+            return result.getString(1);
+        }
+    }
+
+    private static void execute(DataSource dataSource, String sql) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.accessauth.log;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventLogTest {
+
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    private EventLog eventLog(String level, double... sampleRates) {
+        return new EventLog(level, sampleRates, 4, new PrintStream(output, true, StandardCharsets.UTF_8));
+    }
+
+    private String written() {
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    @DisplayName("events are written as logfmt lines with quoted values")
+    void testFormat() {
+        EventLog log = eventLog("DEBUG", 1, 1, 1, 1);
+        log.log(EventLog.Level.INFO, "auth_rejected", 12, "r-1", "42", "user not \"found\"");
+        log.drainOnce();
+
+        String line = written();
+        assertTrue(line.startsWith("ts="));
+        assertTrue(line.contains(" level=INFO event=auth_rejected session=12 request_id=r-1 user_id=42"
+                + " msg=\"user not \\\"found\\\"\"\n"), line);
+    }
+
+    @Test
+    @DisplayName("events below the threshold or sampled out are not written")
+    void testFiltering() {
+        EventLog log = eventLog("INFO", 1, 0, 1, 1);
+        assertFalse(log.isEnabled(EventLog.Level.DEBUG));
+        assertFalse(log.isEnabled(EventLog.Level.INFO));
+        assertTrue(log.isEnabled(EventLog.Level.WARN));
+
+        log.log(EventLog.Level.DEBUG, "session_opened", 1, null, null, null);
+        log.log(EventLog.Level.INFO, "auth_success", 1, null, "7", null);
+        log.log(EventLog.Level.WARN, "malformed_message", 1, null, null, null);
+        log.drainOnce();
+
+        assertFalse(written().contains("session_opened"));
+        assertFalse(written().contains("auth_success"));
+        assertTrue(written().contains("event=malformed_message session=1\n"));
+        assertEquals(1, log.getSampledOut());
+    }
+
+    @Test
+    @DisplayName("a full buffer drops events and reports how many")
+    void testDropped() {
+        EventLog log = eventLog("DEBUG", 1, 1, 1, 1);
+        for (int i = 0; i < 6; i++) {
+            log.log(EventLog.Level.INFO, "auth_success", i, null, null, null);
+        }
+        assertEquals(2, log.getDropped());
+
+        assertEquals(4, log.drainOnce());
+        assertTrue(written().contains("event=log_events_dropped count=2"));
+    }
+
+    @Test
+    @DisplayName("sample rates outside 0..1 are rejected")
+    void testInvalidRate() {
+        assertThrows(IllegalArgumentException.class, () -> eventLog("INFO", 1, 1.5, 1, 1));
+    }
+}
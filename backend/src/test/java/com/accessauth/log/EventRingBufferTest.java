@@ -0,0 +1,76 @@
+package com.accessauth.log;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventRingBufferTest {
+
+    @Test
+    @DisplayName("events are drained in publication order")
+    void testOrder() {
+        EventRingBuffer buffer = new EventRingBuffer(8);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(buffer.offer(i, EventLog.Level.INFO, "event" + i, i, null, null, null));
+        }
+        List<String> events = new ArrayList<>();
+        assertEquals(5, buffer.drain(event -> events.add(event.getEvent()), 100));
+        assertEquals(List.of("event0", "event1", "event2", "event3", "event4"), events);
+        assertEquals(0, buffer.drain(event -> fail("buffer should be empty"), 100));
+    }
+
+    @Test
+    @DisplayName("a full buffer rejects events until the consumer frees slots")
+    void testFull() {
+        EventRingBuffer buffer = new EventRingBuffer(5);
+        assertEquals(8, buffer.capacity());
+        for (int i = 0; i < 8; i++) {
+            assertTrue(buffer.offer(i, EventLog.Level.DEBUG, "e", -1, null, null, null));
+        }
+        assertFalse(buffer.offer(8, EventLog.Level.DEBUG, "e", -1, null, null, null));
+
+        assertEquals(2, buffer.drain(event -> { }, 2));
+        assertTrue(buffer.offer(9, EventLog.Level.DEBUG, "e", -1, null, null, null));
+        assertTrue(buffer.offer(10, EventLog.Level.DEBUG, "e", -1, null, null, null));
+        assertFalse(buffer.offer(11, EventLog.Level.DEBUG, "e", -1, null, null, null));
+    }
+
+    @Test
+    @DisplayName("concurrent producers lose no event while there is room")
+    void testConcurrentProducers() throws InterruptedException {
+        int producers = 4;
+        int perProducer = 10_000;
+        EventRingBuffer buffer = new EventRingBuffer(producers * perProducer);
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            threads[p] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    assertTrue(buffer.offer(producer * perProducer + i, EventLog.Level.INFO, "e", -1, null, null, null));
+                }
+            });
+            threads[p].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Set<Long> seen = new HashSet<>();
+        buffer.drain(event -> seen.add(event.getTimestampMillis()), Integer.MAX_VALUE);
+        assertEquals(producers * perProducer, seen.size());
+    }
+}
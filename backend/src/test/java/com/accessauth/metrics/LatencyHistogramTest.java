@@ -0,0 +1,59 @@
+package com.accessauth.metrics;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    @DisplayName("small values are exact and buckets cover every value once")
+    void testBuckets() {
+        for (long micros = 0; micros < 64; micros++) {
+            assertEquals(micros, LatencyHistogram.bucketValue(LatencyHistogram.bucketIndex(micros)));
+        }
+        int previous = LatencyHistogram.bucketIndex(63);
+        for (long micros = 64; micros < 1 << 20; micros++) {
+            int index = LatencyHistogram.bucketIndex(micros);
+            assertTrue(index == previous || index == previous + 1, "Buckets must be contiguous at " + micros);
+            previous = index;
+        }
+    }
+
+    @Test
+    @DisplayName("percentiles stay within 3% of the exact values")
+    void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(1);
+        long[] values = new long[100_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextGaussian() * 1.5 + 7);
+            histogram.recordNanos(TimeUnit.MICROSECONDS.toNanos(values[i]));
+        }
+        Arrays.sort(values);
+
+        for (double percentile : new double[] { 50, 99, 99.9 }) {
+            long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long estimate = histogram.getPercentileMicros(percentile);
+            assertEquals(exact, estimate, exact * 0.03 + 1, "p" + percentile);
+        }
+        assertEquals(values[values.length - 1], histogram.getPercentileMicros(100));
+        assertEquals(values.length, histogram.getCount());
+    }
+
+    @Test
+    @DisplayName("reset empties the histogram")
+    void testReset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanos(5_000_000);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileMicros(99));
+    }
+}
@@ -0,0 +1,55 @@
+package com.accessauth.metrics;
+
+import com.accessauth.metrics.ProtocolMetrics.Outcome;
+import com.accessauth.metrics.ProtocolMetrics.Step;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProtocolMetricsTest {
+
+    @Test
+    @DisplayName("steps and outcomes are recorded separately")
+    void testRecord() {
+        ProtocolMetrics metrics = new ProtocolMetrics();
+        metrics.recordNanos(Step.KEY_LOOKUP, 2_000_000);
+        metrics.recordNanos(Step.KEY_LOOKUP, 4_000_000);
+        metrics.increment(Outcome.SUCCESS);
+        metrics.add(Outcome.UNKNOWN_USER, 3);
+
+        assertEquals(2, metrics.getHistogram(Step.KEY_LOOKUP).getCount());
+        assertEquals(0, metrics.getHistogram(Step.VERIFICATION).getCount());
+        assertEquals(1, metrics.getCount(Outcome.SUCCESS));
+        assertEquals(3, metrics.getCount(Outcome.UNKNOWN_USER));
+        assertEquals(0, metrics.getCount(Outcome.TIMEOUT));
+    }
+
+    @Test
+    @DisplayName("render produces Prometheus text with quantiles, counters and gauges")
+    void testRender() {
+        ProtocolMetrics metrics = new ProtocolMetrics();
+        metrics.recordNanos(Step.TLS_HANDSHAKE, 1_500_000);
+        metrics.increment(Outcome.BAD_RESPONSE);
+        metrics.registerGauge("sessions_active", () -> 7);
+
+        String page = metrics.render();
+
+        assertTrue(page.contains("accessauth_step_latency_seconds{step=\"tls_handshake\",quantile=\"0.99\"} 0.001500\n"));
+        assertTrue(page.contains("accessauth_step_latency_seconds_count{step=\"tls_handshake\"} 1\n"));
+        assertTrue(page.contains("accessauth_outcomes_total{outcome=\"bad_response\"} 1\n"));
+        assertTrue(page.contains("accessauth_sessions_active 7\n"));
+    }
+
+    @Test
+    @DisplayName("reset clears histograms and counters")
+    void testReset() {
+        ProtocolMetrics metrics = new ProtocolMetrics();
+        metrics.recordNanos(Step.AUTH_REQUEST, 1_000);
+        metrics.increment(Outcome.MALFORMED_MESSAGE);
+        metrics.reset();
+
+        assertEquals(0, metrics.getHistogram(Step.AUTH_REQUEST).getCount());
+        assertEquals(0, metrics.getCount(Outcome.MALFORMED_MESSAGE));
+    }
+}
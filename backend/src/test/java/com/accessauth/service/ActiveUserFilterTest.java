@@ -0,0 +1,103 @@
+package com.accessauth.service;
+
+import com.accessauth.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ActiveUserFilterTest {
+
+    private UserRepository repository;
+    private ActiveUserFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(UserRepository.class);
+        filter = new ActiveUserFilter(repository, true, 0.01, 1, 60_000);
+    }
+
+    private static List<Long> ids(long from, long to) {
+        return LongStream.range(from, to).boxed().collect(Collectors.toList());
+    }
+
+    @Test
+    @DisplayName("every id passes until the first build")
+    void testFailsOpen() {
+        assertFalse(filter.isReady());
+        assertTrue(filter.mightBeActive(123));
+        assertEquals(0, filter.getRejected());
+    }
+
+    @Test
+    @DisplayName("rebuild pages through all active ids by keyset")
+    void testRebuild() {
+        when(repository.countByActiveTrue()).thenReturn(10_005L);
+        when(repository.findActiveIdsAfter(eq(Long.MIN_VALUE), any(Pageable.class))).thenReturn(ids(1, 10_001));
+        when(repository.findActiveIdsAfter(eq(10_000L), any(Pageable.class))).thenReturn(ids(10_001, 10_006));
+
+        assertEquals(10_005, filter.rebuild());
+
+        assertTrue(filter.isReady());
+        for (long id = 1; id < 10_006; id++) {
+            assertTrue(filter.mightBeActive(id));
+        }
+        assertFalse(filter.mightBeActive(-1) && filter.mightBeActive(-2) && filter.mightBeActive(-3));
+        verify(repository, times(2)).findActiveIdsAfter(anyLong(), any(Pageable.class));
+    }
+
+    @Test
+    @DisplayName("users added after a build pass immediately")
+    void testAdd() {
+        when(repository.countByActiveTrue()).thenReturn(0L);
+        when(repository.findActiveIdsAfter(anyLong(), any(Pageable.class))).thenReturn(List.of());
+        filter.rebuild();
+        assertFalse(filter.mightBeActive(77));
+
+        filter.add(77);
+
+        assertTrue(filter.mightBeActive(77));
+        assertEquals(1, filter.getRejected());
+    }
+
+    @Test
+    @DisplayName("a suspended filter passes every id until a rebuild started after resync")
+    void testSuspendAndResync() {
+        when(repository.countByActiveTrue()).thenReturn(0L);
+        when(repository.findActiveIdsAfter(anyLong(), any(Pageable.class))).thenReturn(List.of());
+        filter.rebuild();
+
+        filter.suspend();
+        filter.rebuild();
+        assertTrue(filter.mightBeActive(77), "Users added while suspended may be missing");
+
+        filter.resync();
+        assertTrue(filter.mightBeActive(77));
+        filter.rebuild();
+        assertTrue(filter.isComplete());
+        assertFalse(filter.mightBeActive(77));
+    }
+
+    @Test
+    @DisplayName("a rebuild already running when changes were missed does not complete the filter")
+    void testResyncDuringRebuild() {
+        when(repository.countByActiveTrue()).thenReturn(0L);
+        when(repository.findActiveIdsAfter(anyLong(), any(Pageable.class))).thenAnswer(invocation -> {
+            filter.resync();
+            return List.of();
+        });
+
+        filter.rebuild();
+
+        assertTrue(filter.isReady());
+        assertFalse(filter.isComplete());
+        assertTrue(filter.mightBeActive(77));
+    }
+}
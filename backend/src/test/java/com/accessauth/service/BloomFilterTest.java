@@ -0,0 +1,48 @@
+package com.accessauth.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BloomFilterTest {
+
+    @Test
+    @DisplayName("added keys are always found and absent keys rarely")
+    void testFalsePositiveRate() {
+        BloomFilter filter = new BloomFilter(100_000, 0.01, Long.MAX_VALUE);
+        for (long id = 1; id <= 100_000; id++) {
+            filter.add(id);
+        }
+        for (long id = 1; id <= 100_000; id++) {
+            assertTrue(filter.mightContain(id), "False negative for " + id);
+        }
+        int falsePositives = 0;
+        for (long id = 1_000_001; id <= 1_100_000; id++) {
+            if (filter.mightContain(id)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 1_500, "False-positive rate too high: " + falsePositives + " of 100000");
+        assertEquals(0.01, filter.expectedFalsePositiveRate(100_000), 0.002);
+    }
+
+    @Test
+    @DisplayName("the memory budget caps the bit array")
+    void testMemoryBudget() {
+        BloomFilter filter = new BloomFilter(1_000_000, 0.001, 8 * 1024 * 8);
+
+        assertEquals(8 * 1024 * 8, filter.getBitCount());
+        assertTrue(filter.getHashCount() >= 1);
+        filter.add(42);
+        assertTrue(filter.mightContain(42));
+    }
+
+    @Test
+    @DisplayName("invalid parameters are rejected")
+    void testInvalidParameters() {
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(10, 0, 1024));
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(10, 1, 1024));
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(10, 0.01, 8));
+    }
+}
@@ -0,0 +1,59 @@
+package com.accessauth.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChallengeCodecTest {
+
+    @Test
+    @DisplayName("Base64 matches the JDK encoder and decodes in place")
+    void testBase64RoundTrip() {
+        Random random = new Random(42);
+        byte[] buffer = new byte[512];
+        for (int length = 0; length < 100; length++) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+
+            int encoded = ChallengeCodec.encodeBase64(data, 0, length, buffer, 0);
+            assertEquals(Base64.getEncoder().encodeToString(data), new String(buffer, 0, encoded));
+
+            int decoded = ChallengeCodec.decodeBase64(buffer, 0, encoded, buffer, 0);
+            assertArrayEquals(data, Arrays.copyOf(buffer, decoded));
+        }
+    }
+
+    @Test
+    @DisplayName("hex round trip accepts both cases and rejects bad digits")
+    void testHexRoundTrip() {
+        byte[] data = { 0, 1, (byte) 0x7f, (byte) 0x80, (byte) 0xff };
+        byte[] hex = new byte[ChallengeCodec.hexLength(data.length)];
+        ChallengeCodec.encodeHex(data, 0, data.length, hex, 0);
+        assertEquals("00017f80ff", new String(hex));
+
+        byte[] decoded = new byte[data.length];
+        assertEquals(data.length, ChallengeCodec.decodeHex("00017F80FF", decoded, 0));
+        assertArrayEquals(data, decoded);
+
+        assertThrows(IllegalArgumentException.class, () -> ChallengeCodec.decodeHex("0g", decoded, 0));
+        assertThrows(IllegalArgumentException.class, () -> ChallengeCodec.decodeHex("abc", decoded, 0));
+        assertThrows(IllegalArgumentException.class, () -> ChallengeCodec.decodeHex("00".repeat(6), decoded, 0));
+    }
+
+    @Test
+    @DisplayName("constant-time comparison honours content and length")
+    void testConstantTimeEquals() {
+        byte[] expected = "challenge".getBytes();
+        byte[] buffer = "xxchallengexx".getBytes();
+
+        assertTrue(ChallengeCodec.constantTimeEquals(expected, buffer, 2, 9));
+        assertFalse(ChallengeCodec.constantTimeEquals(expected, buffer, 2, 8));
+        assertFalse(ChallengeCodec.constantTimeEquals(expected, buffer, 2, 10));
+        assertFalse(ChallengeCodec.constantTimeEquals(expected, buffer, 1, 9));
+    }
+}
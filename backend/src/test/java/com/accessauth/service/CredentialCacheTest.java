@@ -0,0 +1,65 @@
+package com.accessauth.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CredentialCacheTest {
+
+    @Test
+    @DisplayName("entries are fresh within the TTL and stale afterwards")
+    void testFreshAndStale() throws InterruptedException {
+        CredentialCache cache = new CredentialCache(10, 20, 10_000);
+        cache.putIfCurrent(1L, "key-1", cache.version());
+
+        assertEquals(Optional.of("key-1"), cache.getFresh(1L));
+
+        Thread.sleep(40);
+        assertTrue(cache.getFresh(1L).isEmpty(), "Entry should no longer be fresh");
+        assertEquals(Optional.of("key-1"), cache.getStale(1L), "Entry should still serve outages");
+    }
+
+    @Test
+    @DisplayName("a load that raced with an invalidation is not cached")
+    void testInvalidationDuringLoad() {
+        CredentialCache cache = new CredentialCache(10, 10_000, 10_000);
+
+        long version = cache.version();
+        cache.invalidate(1L); // e.g. the user was deactivated while we queried
+        cache.putIfCurrent(1L, "old-key", version);
+
+        assertTrue(cache.getFresh(1L).isEmpty());
+        assertTrue(cache.getStale(1L).isEmpty());
+    }
+
+    @Test
+    @DisplayName("keys loaded within the replica lag of an invalidation are not cached")
+    void testReplicaLagAfterInvalidation() throws InterruptedException {
+        CredentialCache cache = new CredentialCache(10, 10_000, 10_000);
+        cache.setReplicaLagMillis(50);
+
+        cache.invalidate(1L); // e.g. the key was rotated on the primary
+        cache.putIfCurrent(1L, "key-from-lagging-replica", cache.version());
+        assertTrue(cache.getFresh(1L).isEmpty(), "A replica may not have the new key yet");
+
+        Thread.sleep(80);
+        cache.putIfCurrent(1L, "new-key", cache.version());
+        assertEquals(Optional.of("new-key"), cache.getFresh(1L));
+    }
+
+    @Test
+    @DisplayName("cache never grows beyond its maximum size")
+    void testBounded() {
+        CredentialCache cache = new CredentialCache(100, 10_000, 10_000);
+
+        for (long id = 0; id < 1_000; id++) {
+            cache.putIfCurrent(id, "key-" + id, cache.version());
+        }
+
+        assertTrue(cache.size() <= 100, "Cache size was " + cache.size());
+        assertEquals(Optional.of("key-999"), cache.getFresh(999L), "Latest entry should be cached");
+    }
+}
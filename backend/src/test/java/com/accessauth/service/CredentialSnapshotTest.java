@@ -0,0 +1,130 @@
+package com.accessauth.service;
+
+import com.accessauth.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.domain.Pageable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CredentialSnapshotTest {
+
+    @TempDir
+    Path dir;
+
+    private final TreeMap<Long, String> users = new TreeMap<>();
+    private UserRepository repository;
+    private Path file;
+
+    @BeforeEach
+    void setUp() {
+        for (long id = 1; id <= 25_000; id++) {
+            users.put(id * 2, "key-" + id);
+        }
+        repository = mock(UserRepository.class);
+        // Serve keyset pages from the in-memory table
+        when(repository.findActiveCredentialsAfter(anyLong(), any(Pageable.class))).thenAnswer(invocation -> {
+            long afterId = invocation.getArgument(0);
+            int pageSize = invocation.<Pageable>getArgument(1).getPageSize();
+            List<Object[]> page = new ArrayList<>();
+            for (Map.Entry<Long, String> user : users.tailMap(afterId, false).entrySet()) {
+                if (page.size() == pageSize) {
+                    break;
+                }
+                page.add(new Object[] { user.getKey(), user.getValue() });
+            }
+            return page;
+        });
+        file = dir.resolve("credentials.snapshot");
+    }
+
+    private CredentialSnapshot snapshot() {
+        return new CredentialSnapshot(repository, true, file.toString(), 30_000, 60_000);
+    }
+
+    @Test
+    @DisplayName("refresh writes every active key and lookups find them")
+    void testRefresh() throws IOException {
+        CredentialSnapshot snapshot = snapshot();
+        assertFalse(snapshot.isFresh());
+
+        assertTrue(snapshot.refresh());
+
+        assertTrue(snapshot.isFresh());
+        assertEquals(25_000, snapshot.size());
+        assertEquals(1, snapshot.getVersion());
+        assertEquals(Optional.of("key-1"), snapshot.get(2));
+        assertEquals(Optional.of("key-25000"), snapshot.get(50_000));
+        assertEquals(Optional.empty(), snapshot.get(3));
+    }
+
+    @Test
+    @DisplayName("the file is only rewritten when a key changed")
+    void testIncrementalRefresh() throws IOException {
+        CredentialSnapshot snapshot = snapshot();
+        snapshot.refresh();
+
+        assertFalse(snapshot.refresh());
+        assertEquals(1, snapshot.getVersion());
+
+        users.put(4L, "rotated");
+        users.remove(6L);
+        assertTrue(snapshot.refresh());
+        assertEquals(2, snapshot.getVersion());
+        assertEquals(Optional.of("rotated"), snapshot.get(4));
+        assertEquals(Optional.empty(), snapshot.get(6));
+    }
+
+    @Test
+    @DisplayName("a restarted instance loads the file without the database")
+    void testLoad() throws IOException {
+        snapshot().refresh();
+
+        CredentialSnapshot restarted = snapshot();
+        assertTrue(restarted.load());
+
+        assertEquals(25_000, restarted.size());
+        assertEquals(Optional.of("key-7"), restarted.get(14));
+    }
+
+    @Test
+    @DisplayName("a damaged file is ignored")
+    void testCorruptFile() throws IOException {
+        snapshot().refresh();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] { 42 }), Files.size(file) - 1);
+        }
+
+        CredentialSnapshot restarted = snapshot();
+        assertFalse(restarted.load());
+        assertEquals(0, restarted.size());
+    }
+
+    @Test
+    @DisplayName("a user invalidated in this process is not served until the next refresh")
+    void testInvalidate() throws IOException {
+        CredentialSnapshot snapshot = snapshot();
+        snapshot.refresh();
+
+        snapshot.invalidate(2);
+        assertEquals(Optional.empty(), snapshot.get(2));
+
+        snapshot.refresh();
+        assertEquals(Optional.of("key-1"), snapshot.get(2));
+    }
+}
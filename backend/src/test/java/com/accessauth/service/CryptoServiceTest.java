@@ -0,0 +1,91 @@
+package com.accessauth.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CryptoServiceTest {
+
+    private CryptoService cryptoService;
+
+    @BeforeEach
+    void setUp() {
+        cryptoService = new CryptoService();
+    }
+
+    @Test
+    @DisplayName("cached key round trip matches the uncached path")
+    void testCachedRoundTrip() throws Exception {
+        String key = cryptoService.generateSymmetricKey();
+        String challenge = cryptoService.generateChallenge();
+
+        String cached = cryptoService.encryptChallenge(1L, challenge, key);
+        String uncached = cryptoService.encryptChallenge(challenge, key);
+
+        assertEquals(uncached, cached, "AES/ECB output must not depend on caching");
+        assertEquals(challenge, cryptoService.decryptChallenge(1L, cached, key));
+    }
+
+    @Test
+    @DisplayName("a changed user key replaces the cached key")
+    void testKeyChangeInvalidatesCache() throws Exception {
+        String oldKey = cryptoService.generateSymmetricKey();
+        String newKey = cryptoService.generateSymmetricKey();
+        String challenge = cryptoService.generateChallenge();
+
+        cryptoService.encryptChallenge(1L, challenge, oldKey);
+        String encrypted = cryptoService.encryptChallenge(1L, challenge, newKey);
+
+        assertEquals(cryptoService.encryptChallenge(challenge, newKey), encrypted);
+
+        String decryptedWithOldKey;
+        try {
+            decryptedWithOldKey = cryptoService.decryptChallenge(1L, encrypted, oldKey);
+        } catch (Exception e) {
+            decryptedWithOldKey = null; // usually a padding error
+        }
+        assertNotEquals(challenge, decryptedWithOldKey);
+    }
+
+    @Test
+    @DisplayName("evicted keys are rebuilt on next use")
+    void testEvictKey() throws Exception {
+        String key = cryptoService.generateSymmetricKey();
+        String challenge = cryptoService.generateChallenge();
+
+        String before = cryptoService.encryptChallenge(1L, challenge, key);
+        cryptoService.evictKey(1L);
+        String after = cryptoService.encryptChallenge(1L, challenge, key);
+
+        assertEquals(before, after);
+    }
+
+    @Test
+    @DisplayName("byte pipeline stays wire compatible with the String pipeline")
+    void testBytePipelineCompatible() throws Exception {
+        String key = cryptoService.generateSymmetricKey();
+        byte[] challenge = cryptoService.generateChallengeBytes();
+
+        byte[] ciphertext = cryptoService.encryptChallenge(1L, challenge, key);
+        String legacy = cryptoService.encryptChallenge(new String(challenge, StandardCharsets.US_ASCII), key);
+
+        assertEquals(legacy, Base64.getEncoder().encodeToString(ciphertext));
+    }
+
+    @Test
+    @DisplayName("verification accepts the challenge and rejects any other response")
+    void testVerifyChallengeResponse() throws Exception {
+        String key = cryptoService.generateSymmetricKey();
+        byte[] challenge = cryptoService.generateChallengeBytes();
+        byte[] response = cryptoService.encryptChallenge(1L, challenge, key);
+        byte[] otherResponse = cryptoService.encryptChallenge(1L, cryptoService.generateChallengeBytes(), key);
+
+        assertTrue(cryptoService.verifyChallengeResponse(1L, challenge, response, 0, response.length, key));
+        assertFalse(cryptoService.verifyChallengeResponse(1L, challenge, otherResponse, 0, otherResponse.length, key));
+    }
+}
@@ -0,0 +1,142 @@
+package com.accessauth.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class UserChangeListenerTest {
+
+    @TempDir
+    Path dir;
+
+    private CredentialCache cache;
+    private CredentialSnapshot snapshot;
+    private ActiveUserFilter filter;
+    private CryptoService cryptoService;
+    private Path changes;
+    private UserChangeListener listener;
+
+    @BeforeEach
+    void setUp() {
+        cache = new CredentialCache(100, 60_000, 60_000);
+        snapshot = mock(CredentialSnapshot.class);
+        filter = mock(ActiveUserFilter.class);
+        cryptoService = mock(CryptoService.class);
+        changes = dir.resolve("user-changes.log");
+        listener = new UserChangeListener();
+        ReflectionTestUtils.setField(listener, "credentialCache", cache);
+        ReflectionTestUtils.setField(listener, "credentialSnapshot", snapshot);
+        ReflectionTestUtils.setField(listener, "activeUserFilter", filter);
+        ReflectionTestUtils.setField(listener, "cryptoService", cryptoService);
+        ReflectionTestUtils.setField(listener, "file", changes.toString());
+    }
+
+    private void append(String text) throws Exception {
+        Files.write(changes, text.getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @Test
+    @DisplayName("a deleted user is evicted from every cache")
+    void testDeleteEvicts() {
+        cache.putIfCurrent(7L, "key-7", cache.version());
+        cache.putIfCurrent(8L, "key-8", cache.version());
+
+        assertTrue(listener.apply("DELETED:7"));
+
+        assertFalse(cache.getStale(7L).isPresent());
+        assertTrue(cache.getFresh(8L).isPresent());
+        verify(snapshot).invalidate(7L);
+        verify(cryptoService).evictKey(7L);
+        verify(filter, never()).add(anyLong());
+        assertEquals(1, listener.getApplied());
+    }
+
+    @Test
+    @DisplayName("an added user enters the active-user filter")
+    void testAddUpdatesFilter() {
+        assertTrue(listener.apply("ADDED:12"));
+        assertTrue(listener.apply("DEACTIVATED:13"));
+
+        verify(filter).add(12L);
+        verify(filter, never()).add(13L);
+        verify(snapshot).invalidate(13L);
+    }
+
+    @Test
+    @DisplayName("an added user does not stop loads in flight from being cached")
+    void testAddKeepsCacheVersion() {
+        long version = cache.version();
+
+        assertTrue(listener.apply("ADDED:12"));
+        cache.putIfCurrent(8L, "key-8", version);
+
+        assertEquals(version, cache.version());
+        assertTrue(cache.getFresh(8L).isPresent());
+        verify(snapshot, never()).invalidate(12L);
+    }
+
+    @Test
+    @DisplayName("malformed changes are ignored")
+    void testMalformed() {
+        assertFalse(listener.apply("DELETED"));
+        assertFalse(listener.apply("RENAMED:1"));
+        assertFalse(listener.apply("DELETED:abc"));
+        assertEquals(0, listener.getApplied());
+        verifyNoInteractions(snapshot, cryptoService, filter);
+    }
+
+    @Test
+    @DisplayName("the change file is tailed from its end, one complete line at a time")
+    void testTail() throws Exception {
+        append("DELETED:1\n");
+        assertEquals(0, listener.tailOnce(), "Changes from before startup are skipped");
+
+        append("DELETED:2\nADDED:3\nDEACT");
+        assertEquals(2, listener.tailOnce());
+        verify(snapshot).invalidate(2L);
+        verify(filter).add(3L);
+        verify(snapshot, never()).invalidate(1L);
+
+        append("IVATED:4\n");
+        assertEquals(1, listener.tailOnce(), "A partial line is applied once complete");
+        verify(snapshot).invalidate(4L);
+        assertEquals(0, listener.tailOnce());
+    }
+
+    @Test
+    @DisplayName("a truncated change file drops everything cached")
+    void testTruncation() throws Exception {
+        append("DELETED:1\nDELETED:2\n");
+        listener.tailOnce();
+        cache.putIfCurrent(5L, "key-5", cache.version());
+
+        Files.write(changes, "ADDED:9\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals(1, listener.tailOnce());
+
+        assertEquals(0, cache.size());
+        verify(snapshot).invalidateAll();
+        verify(cryptoService).clearKeyCache();
+        verify(filter).resync();
+        verify(filter).add(9L);
+    }
+
+    @Test
+    @DisplayName("a change file created after startup is read from the start")
+    void testFileCreatedLater() throws Exception {
+        assertEquals(0, listener.tailOnce());
+        append("DELETED:6\n");
+        assertEquals(1, listener.tailOnce());
+        verify(snapshot).invalidate(6L);
+    }
+}
@@ -0,0 +1,164 @@
+package com.accessauth.service;
+
+import com.accessauth.domain.User;
+import com.accessauth.log.EventLog;
+import com.accessauth.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class UserServiceTest {
+
+    private UserRepository repository;
+    private CredentialCache cache;
+    private ActiveUserFilter filter;
+    private CredentialSnapshot snapshot;
+    private UserService userService;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(UserRepository.class);
+        cache = new CredentialCache(100, 10_000, 10_000);
+        // Not built yet, so every id passes
+        filter = new ActiveUserFilter(repository, true, 0.01, 1, 60_000);
+        // Never refreshed, so only used during outages
+        snapshot = mock(CredentialSnapshot.class);
+        when(snapshot.get(anyLong())).thenReturn(Optional.empty());
+        userService = new UserService();
+        ReflectionTestUtils.setField(userService, "userRepository", repository);
+        ReflectionTestUtils.setField(userService, "credentialCache", cache);
+        ReflectionTestUtils.setField(userService, "activeUserFilter", filter);
+        ReflectionTestUtils.setField(userService, "credentialSnapshot", snapshot);
+        ReflectionTestUtils.setField(userService, "cryptoService", mock(CryptoService.class));
+        ReflectionTestUtils.setField(userService, "eventLog", mock(EventLog.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    @DisplayName("batch lookup serves cached keys and loads the misses in one query")
+    void testBatchLookup() {
+        cache.putIfCurrent(1L, "key-1", cache.version());
+        when(repository.getSymKeysByIds(any())).thenReturn(List.<Object[]>of(new Object[] { 2L, "key-2" }));
+
+        Map<Long, String> keys = userService.getActiveSymmetricKeys(Arrays.asList(1L, 2L, 3L, 2L));
+
+        assertEquals(Map.of(1L, "key-1", 2L, "key-2"), keys);
+        verify(repository, times(1)).getSymKeysByIds(argThat((Collection<Long> ids) ->
+                ids.size() == 2 && ids.containsAll(List.of(2L, 3L))));
+        assertEquals("key-2", cache.getFresh(2L).orElse(null), "Loaded keys should be cached");
+    }
+
+    @Test
+    @DisplayName("batch lookup without misses never queries the database")
+    void testBatchLookupAllCached() {
+        cache.putIfCurrent(1L, "key-1", cache.version());
+
+        assertEquals(Map.of(1L, "key-1"), userService.getActiveSymmetricKeys(List.of(1L)));
+        verify(repository, never()).getSymKeysByIds(any());
+    }
+
+    @Test
+    @DisplayName("batch lookup fails during an outage unless every miss is cached")
+    void testBatchLookupOutage() {
+        when(repository.getSymKeysByIds(any())).thenThrow(new DataAccessResourceFailureException("down"));
+
+        assertThrows(DataAccessResourceFailureException.class,
+                () -> userService.getActiveSymmetricKeys(List.of(1L)));
+    }
+
+    @Test
+    @DisplayName("looking up an unknown id does not stop a concurrent load from being cached")
+    void testMissDuringLoad() {
+        cache.setReplicaLagMillis(60_000);
+        when(repository.getSymKeyById(99L)).thenReturn(Optional.empty());
+        when(repository.getSymKeyById(1L)).thenAnswer(invocation -> {
+            // Another connection swipes an unknown card while this load runs
+            assertEquals(Optional.empty(), userService.getActiveSymmetricKey(99L));
+            return Optional.of("key-1");
+        });
+
+        assertEquals(Optional.of("key-1"), userService.getActiveSymmetricKey(1L));
+        assertEquals(Optional.of("key-1"), cache.getFresh(1L));
+    }
+
+    @Test
+    @DisplayName("ids ruled out by the active-user filter never reach the database")
+    void testFilterRejectsUnknownIds() {
+        when(repository.countByActiveTrue()).thenReturn(1L);
+        when(repository.findActiveIdsAfter(eq(Long.MIN_VALUE), any())).thenReturn(List.of(1L));
+        filter.rebuild();
+        when(repository.getSymKeyById(1L)).thenReturn(Optional.of("key-1"));
+
+        assertEquals(Optional.of("key-1"), userService.getActiveSymmetricKey(1L));
+        // Sized for 1024 ids, the filter holding one id has a negligible false-positive rate
+        for (long id = 1_000_000; id < 1_000_010; id++) {
+            assertEquals(Optional.empty(), userService.getActiveSymmetricKey(id));
+        }
+        assertEquals(10, filter.getRejected());
+        verify(repository, times(1)).getSymKeyById(anyLong());
+    }
+
+    @Test
+    @DisplayName("a fresh snapshot answers without a query")
+    void testSnapshotLookup() {
+        when(snapshot.isFresh()).thenReturn(true);
+        when(snapshot.get(5L)).thenReturn(Optional.of("key-5"));
+
+        assertEquals(Optional.of("key-5"), userService.getActiveSymmetricKey(5L));
+        assertEquals(Map.of(5L, "key-5"), userService.getActiveSymmetricKeys(List.of(5L)));
+        verify(repository, never()).getSymKeyById(anyLong());
+        verify(repository, never()).getSymKeysByIds(any());
+    }
+
+    @Test
+    @DisplayName("a stale snapshot still serves keys while the database is down")
+    void testSnapshotDuringOutage() {
+        when(snapshot.get(5L)).thenReturn(Optional.of("key-5"));
+        when(repository.getSymKeyById(5L)).thenThrow(new DataAccessResourceFailureException("down"));
+
+        assertEquals(Optional.of("key-5"), userService.getActiveSymmetricKey(5L));
+    }
+
+    @Test
+    @DisplayName("a lookup between a key change and its commit cannot keep the old key cached")
+    void testLookupBeforeCommit() {
+        when(repository.getSymKeyById(7L)).thenReturn(Optional.of("old-key"));
+        User user = new User("new-key");
+        user.setId(7L);
+        when(repository.save(user)).thenReturn(user);
+
+        // The update is written but not committed yet, so lookups still read the old row
+        TransactionSynchronizationManager.initSynchronization();
+        userService.saveUser(user);
+        assertEquals(Optional.of("old-key"), userService.getActiveSymmetricKey(7L));
+
+        // Commit
+        when(repository.getSymKeyById(7L)).thenReturn(Optional.of("new-key"));
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(TransactionSynchronization::afterCommit);
+
+        assertEquals(Optional.of("new-key"), userService.getActiveSymmetricKey(7L));
+        verify(snapshot).invalidate(7L);
+    }
+}
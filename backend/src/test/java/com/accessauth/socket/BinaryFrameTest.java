@@ -0,0 +1,51 @@
+package com.accessauth.socket;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryFrameTest {
+
+    @Test
+    @DisplayName("frames survive an encode/decode round trip")
+    void testRoundTrip() throws IOException {
+        byte[] encoded = BinaryFrame.authSuccess(42L, 1700000000000L).encode();
+
+        BinaryFrame decoded = SecureSocket.readFrame(new DataInputStream(new ByteArrayInputStream(encoded)));
+
+        assertNotNull(decoded);
+        assertEquals(BinaryFrame.AUTH_SUCCESS, decoded.getType());
+        assertEquals(42L, decoded.getLong());
+        assertEquals(BinaryFrame.HEADER_LENGTH + 16, encoded.length);
+    }
+
+    @Test
+    @DisplayName("a 48 byte challenge fits in a 51 byte frame")
+    void testChallengeFrameSize() {
+        assertEquals(51, BinaryFrame.challenge(new byte[48]).encode().length);
+    }
+
+    @Test
+    @DisplayName("only a HELLO with the supported version negotiates binary framing")
+    void testHelloVersion() {
+        assertTrue(BinaryFrame.hello().isSupportedHello());
+        assertFalse(new BinaryFrame(BinaryFrame.HELLO, new byte[] { 99 }).isSupportedHello());
+        assertFalse(BinaryFrame.authRequest(1L).isSupportedHello());
+    }
+
+    @Test
+    @DisplayName("oversized payloads are rejected")
+    void testOversizedPayload() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new BinaryFrame(BinaryFrame.CHALLENGE, new byte[BinaryFrame.MAX_PAYLOAD_LENGTH + 1]));
+
+        byte[] header = { BinaryFrame.CHALLENGE, (byte) 0xff, (byte) 0xff };
+        assertThrows(IOException.class,
+                () -> SecureSocket.readFrame(new DataInputStream(new ByteArrayInputStream(header))));
+    }
+}
@@ -0,0 +1,167 @@
+package com.accessauth.socket;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.MalformedJsonException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProtocolMessageTest {
+
+    private static JsonReader lenientReader(String json) {
+        JsonReader reader = new JsonReader(new StringReader(json));
+        reader.setLenient(true);
+        return reader;
+    }
+
+    private static String toWireHex(byte[] ciphertext) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : Base64.getEncoder().encodeToString(ciphertext).getBytes(StandardCharsets.US_ASCII)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    @Test
+    @DisplayName("known fields are decoded and unknown ones skipped")
+    void testReadJson() throws IOException {
+        ProtocolMessage message = new ProtocolMessage();
+        message.readJson(lenientReader("{\"type\":\"auth_request\",\"extra\":{\"a\":[1,2]},\"user_id\":42}"));
+
+        assertEquals(ProtocolMessage.AUTH_REQUEST, message.getType());
+        assertEquals("42", message.getUserId());
+        assertFalse(message.hasResponse());
+    }
+
+    @Test
+    @DisplayName("one instance decodes a stream of messages without leaking fields")
+    void testReuse() throws IOException {
+        byte[] ciphertext = { 1, 2, 3, (byte) 0xff };
+        JsonReader reader = lenientReader("{\"type\":\"auth_request\",\"user_id\":\"7\"}\n"
+                + "{\"type\":\"challenge_response\",\"response\":\"" + toWireHex(ciphertext) + "\"}\n");
+        ProtocolMessage message = new ProtocolMessage();
+
+        message.readJson(reader);
+        assertEquals("7", message.getUserId());
+
+        message.readJson(reader);
+        assertEquals(ProtocolMessage.CHALLENGE_RESPONSE, message.getType());
+        assertNull(message.getUserId());
+        assertTrue(message.hasResponse());
+        assertArrayEquals(ciphertext, Arrays.copyOf(message.getResponse(), message.getResponseLength()));
+    }
+
+    @Test
+    @DisplayName("request_id is decoded as text and cleared for untagged messages")
+    void testRequestId() throws IOException {
+        JsonReader reader = lenientReader("{\"type\":\"auth_request\",\"user_id\":\"7\",\"request_id\":12}\n"
+                + "{\"type\":\"auth_request\",\"user_id\":\"8\"}\n");
+        ProtocolMessage message = new ProtocolMessage();
+
+        message.readJson(reader);
+        assertEquals("12", message.getRequestId());
+
+        message.readJson(reader);
+        assertNull(message.getRequestId());
+    }
+
+    @Test
+    @DisplayName("batch fields are decoded per entry, bad entries are marked")
+    void testReadBatch() throws IOException {
+        byte[] first = { 1, 2, 3 };
+        byte[] third = { 9 };
+        ProtocolMessage message = new ProtocolMessage();
+
+        message.readJson(lenientReader("{\"type\":\"auth_batch\",\"user_ids\":[\"1\",2,null]}"));
+        assertEquals(Arrays.asList("1", "2", null), message.getUserIds());
+
+        message.readJson(lenientReader("{\"type\":\"challenge_response_batch\",\"responses\":[\""
+                + toWireHex(first) + "\",\"zz\",\"" + toWireHex(third) + "\",null]}"));
+        assertTrue(message.getUserIds().isEmpty());
+        assertEquals(4, message.getBatchResponseCount());
+        assertArrayEquals(first, Arrays.copyOf(message.getBatchResponse(0), message.getBatchResponseLength(0)));
+        assertEquals(-1, message.getBatchResponseLength(1));
+        assertArrayEquals(third, Arrays.copyOf(message.getBatchResponse(2), message.getBatchResponseLength(2)));
+        assertEquals(-1, message.getBatchResponseLength(3));
+    }
+
+    @Test
+    @DisplayName("an undecodable response is flagged instead of thrown")
+    void testMalformedResponse() throws IOException {
+        ProtocolMessage message = new ProtocolMessage();
+        message.readJson(lenientReader("{\"type\":\"challenge_response\",\"response\":\"zz\"}"));
+
+        assertTrue(message.hasResponse());
+        assertTrue(message.isResponseMalformed());
+    }
+
+    @Test
+    @DisplayName("binary frames decode into the same message")
+    void testReadFrame() {
+        ProtocolMessage message = new ProtocolMessage();
+        byte[] payload = BinaryFrame.authRequest(123L).getPayload();
+
+        message.readFrame(BinaryFrame.AUTH_REQUEST, payload, 0, payload.length);
+
+        assertEquals(ProtocolMessage.AUTH_REQUEST, message.getType());
+        assertEquals("123", message.getUserId());
+    }
+
+    @Test
+    @DisplayName("batch entries past the limit are skipped, keeping one to flag the overflow")
+    void testBatchLimit() throws IOException {
+        ProtocolMessage message = new ProtocolMessage();
+        message.setMaxBatchSize(2);
+        String hex = toWireHex(new byte[]{1});
+
+        message.readJson(lenientReader("{\"type\":\"auth_batch\",\"user_ids\":[\"1\",\"2\",\"3\",\"4\",\"5\"],"
+                + "\"responses\":[\"" + hex + "\",\"" + hex + "\",\"" + hex + "\",\"" + hex + "\"]}"));
+
+        assertEquals(Arrays.asList("1", "2", "3"), message.getUserIds());
+        assertEquals(3, message.getBatchResponseCount());
+    }
+
+    @Test
+    @DisplayName("a message is limited as a whole, however many lines it spans")
+    void testMessageLimitSpansLines() throws IOException {
+        StringBuilder json = new StringBuilder("{\"type\":\"auth_batch\",\"user_ids\":[");
+        while (json.length() < ProtocolMessage.MAX_MESSAGE_LENGTH) {
+            json.append("\"1\",\n");
+        }
+        json.append("\"1\"]}");
+        JsonReader reader = new JsonReader(new MessageLimitedReader(new StringReader(json.toString()),
+                ProtocolMessage.MAX_MESSAGE_LENGTH));
+        reader.setLenient(true);
+
+        IOException e = assertThrows(IOException.class, () -> new ProtocolMessage().readJson(reader));
+        assertTrue(e.getMessage().contains("exceeds"));
+    }
+
+    @Test
+    @DisplayName("the limit restarts with each message and messages before bad input are still read")
+    void testMessageLimitPerMessage() throws IOException {
+        String small = "{\"type\":\"auth_request\",\n\"user_id\":\"7\"}\n";
+        StringBuilder stream = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            stream.append(small);
+        }
+        stream.append("[1]");
+        JsonReader reader = new JsonReader(new MessageLimitedReader(new StringReader(stream.toString()),
+                small.length()));
+        reader.setLenient(true);
+        ProtocolMessage message = new ProtocolMessage();
+
+        for (int i = 0; i < 10; i++) {
+            message.readJson(reader);
+            assertEquals("7", message.getUserId());
+        }
+        assertThrows(MalformedJsonException.class, reader::peek);
+    }
+}
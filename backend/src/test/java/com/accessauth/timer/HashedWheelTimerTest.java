@@ -0,0 +1,150 @@
+package com.accessauth.timer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashedWheelTimerTest {
+
+    private HashedWheelTimer timer;
+
+    @BeforeEach
+    void setUp() {
+        timer = new HashedWheelTimer("test-timer", 10, TimeUnit.MILLISECONDS, 8);
+    }
+
+    @AfterEach
+    void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    @DisplayName("wheel size is rounded up to a power of two")
+    void testWheelSizeRounding() {
+        HashedWheelTimer other = new HashedWheelTimer("test-timer-2", 10, TimeUnit.MILLISECONDS, 100);
+        try {
+            assertEquals(128, other.getWheelSize());
+        } finally {
+            other.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("timeout fires after its delay")
+    void testTimeoutFires() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+        long start = System.nanoTime();
+
+        Timeout timeout = timer.newTimeout(fired::countDown, 50, TimeUnit.MILLISECONDS);
+
+        assertTrue(fired.await(2, TimeUnit.SECONDS), "Timeout should fire");
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 50, "Timeout fired too early");
+        assertTrue(timeout.isExpired());
+    }
+
+    @Test
+    @DisplayName("timeout longer than one wheel rotation waits for its round")
+    void testTimeoutSpanningRounds() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+        long start = System.nanoTime();
+
+        // 8 buckets x 10ms = 80ms per rotation
+        timer.newTimeout(fired::countDown, 250, TimeUnit.MILLISECONDS);
+
+        assertTrue(fired.await(2, TimeUnit.SECONDS), "Timeout should fire");
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 250, "Timeout fired too early");
+    }
+
+    @Test
+    @DisplayName("cancelled timeout never fires")
+    void testCancel() throws InterruptedException {
+        AtomicInteger fired = new AtomicInteger();
+
+        Timeout timeout = timer.newTimeout(fired::incrementAndGet, 30, TimeUnit.MILLISECONDS);
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel(), "Second cancel should report false");
+
+        Thread.sleep(150);
+        assertEquals(0, fired.get());
+        assertTrue(timeout.isCancelled());
+    }
+
+    @Test
+    @DisplayName("many timeouts due together expire in one batch")
+    void testBatchExpiry() throws InterruptedException {
+        int count = 10_000;
+        CountDownLatch fired = new CountDownLatch(count / 2);
+        AtomicInteger cancelledFired = new AtomicInteger();
+
+        for (int i = 0; i < count; i++) {
+            if (i % 2 == 0) {
+                timer.newTimeout(fired::countDown, 40, TimeUnit.MILLISECONDS);
+            } else {
+                timer.newTimeout(cancelledFired::incrementAndGet, 40, TimeUnit.MILLISECONDS).cancel();
+            }
+        }
+
+        assertTrue(fired.await(2, TimeUnit.SECONDS), "All live timeouts should fire");
+        Thread.sleep(50);
+        assertEquals(0, cancelledFired.get());
+        assertEquals(count / 2, timer.getExpiredCount());
+    }
+
+    @Test
+    @DisplayName("a blocked task on the task executor does not delay other timeouts")
+    void testBlockedTaskOffWorker() throws InterruptedException {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        HashedWheelTimer other = new HashedWheelTimer("test-timer-3", 10, TimeUnit.MILLISECONDS, 8, executor);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch fired = new CountDownLatch(1);
+        try {
+            other.newTimeout(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, 10, TimeUnit.MILLISECONDS);
+            other.newTimeout(fired::countDown, 50, TimeUnit.MILLISECONDS);
+
+            assertTrue(fired.await(2, TimeUnit.SECONDS), "Second timeout should fire while the first blocks");
+        } finally {
+            release.countDown();
+            other.stop();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("a task the executor rejects is retried on a later tick")
+    void testRejectedTaskRetried() throws InterruptedException {
+        AtomicInteger rejections = new AtomicInteger();
+        CountDownLatch fired = new CountDownLatch(1);
+        HashedWheelTimer other = new HashedWheelTimer("test-timer-4", 10, TimeUnit.MILLISECONDS, 8, task -> {
+            if (rejections.incrementAndGet() <= 3) {
+                throw new RejectedExecutionException("busy");
+            }
+            task.run();
+        });
+        try {
+            Timeout timeout = other.newTimeout(fired::countDown, 20, TimeUnit.MILLISECONDS);
+
+            assertTrue(fired.await(2, TimeUnit.SECONDS), "Timeout should fire once the executor accepts it");
+            assertEquals(4, rejections.get());
+            assertTrue(timeout.isExpired());
+            assertEquals(1, other.getExpiredCount());
+        } finally {
+            other.stop();
+        }
+    }
+}
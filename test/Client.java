@@ -1,78 +1,58 @@
+import com.accessauth.service.CryptoService;
+import com.accessauth.socket.SecureSocket;
 import com.google.gson.*;
 
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+
+/**
+ * Standalone demo reader speaking the real protocol, one synchronous authentication.
+ * Compile and run against the backend classes:
+ *   java -cp ../backend/target/classes:<gson.jar> Client.java <user_id> <symmetric_key>
+ * For load testing use com.accessauth.loadgen.LoadGenerator.
+ */
 public class Client {
     private SecureSocket socket;
     private String clientId;
+    private CryptoService cryptoService = new CryptoService();
     
     public Client(String host, int port, String clientId) throws Exception {
         this.socket = new SecureSocket(host, port, "../backend/src/main/resources/keystore.jks", "password");
+        this.socket.setReadTimeout(15000);
         this.clientId = clientId;
         
-        // Start listening for messages from server
-        socket.startJsonListening(this::handleServerMessage);
-        
         System.out.println("[" + clientId + "] Connected to protocol server!");
     }
     
-    private void handleServerMessage(JsonObject message) {
-        try {
-            String messageType = message.get("type").getAsString();
-            
-            switch (messageType) {
-                case "layer_message":
-                    handleLayerMessage(message);
-                    break;
-                    
-                case "success":
-                    handleSuccess(message);
-                    break;
-                    
-                case "error":
-                    handleError(message);
-                    break;
-                    
-                default:
-                    System.out.println("[" + clientId + "] Unknown message: " + messageType);
-                    System.out.println("Full message: " + message);
-                    break;
-            }
-        } catch (Exception e) {
-            System.err.println("[" + clientId + "] Error handling message: " + e.getMessage());
-        }
-    }
-    
-    private void handleLayerMessage(JsonObject message) {
-        String layerMessage = message.get("message").getAsString();
-        System.out.println("[" + clientId + "] Received: " + layerMessage);
+    // Run one authentication; true if the server granted access
+    public boolean authenticate(String userId, String symmetricKey) throws Exception {
+        JsonObject request = new JsonObject();
+        request.addProperty("type", "auth_request");
+        request.addProperty("user_id", userId);
+        socket.sendJson(request);
+        System.out.println("[" + clientId + "] Sent auth_request for user " + userId);
         
-        // Send acknowledgment back to server
-        JsonObject response = new JsonObject();
-        response.addProperty("type", "layer_ack");
-        response.addProperty("message", "OK");
-        socket.sendJson(response);
+        JsonObject reply = socket.receiveJson();
+        System.out.println("[" + clientId + "] Received: " + reply);
+        if (reply == null || !"challenge".equals(reply.get("type").getAsString())) {
+            return false;
+        }
         
-        System.out.println("[" + clientId + "] Sent acknowledgment");
-    }
-    
-    private void handleSuccess(JsonObject message) {
-        String successMessage = message.get("message").getAsString();
-        System.out.println("[" + clientId + "] SUCCESS: " + successMessage);
-    }
-    
-    private void handleError(JsonObject message) {
-        String errorMessage = message.get("message").getAsString();
-        System.err.println("[" + clientId + "] ERROR: " + errorMessage);
-    }
-    
-    public void startProtocol() {
-        System.out.println("[" + clientId + "] Starting protocol...");
+        // The challenge travels as hex(Base64(AES ciphertext)); answer with it re-encrypted under our key
+        String challengeHex = reply.getAsJsonObject("data").get("challenge").getAsString();
+        String encrypted = new String(HexFormat.of().parseHex(challengeHex), StandardCharsets.US_ASCII);
+        String challenge = cryptoService.decryptChallenge(encrypted, symmetricKey);
+        String response = cryptoService.encryptChallenge(challenge, symmetricKey);
         
-        JsonObject protocolStart = new JsonObject();
-        protocolStart.addProperty("type", "protocol_start");
-        protocolStart.addProperty("user_id", "user123");
+        JsonObject answer = new JsonObject();
+        answer.addProperty("type", "challenge_response");
+        answer.addProperty("response", HexFormat.of().formatHex(response.getBytes(StandardCharsets.US_ASCII)));
+        socket.sendJson(answer);
+        System.out.println("[" + clientId + "] Sent challenge_response");
         
-        socket.sendJson(protocolStart);
-        System.out.println("[" + clientId + "] Sent protocol_start message");
+        reply = socket.receiveJson();
+        System.out.println("[" + clientId + "] Received: " + reply);
+        return reply != null && "auth_success".equals(reply.get("type").getAsString());
     }
     
     public void close() throws Exception {
@@ -81,18 +61,17 @@ public class Client {
     }
     
     public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: Client <user_id> <symmetric_key> [host] [port]");
+            return;
+        }
         try {
-            Client client = new Client("localhost", 12345, "TestClient");
-            
-            // Wait a moment for connection to establish
-            Thread.sleep(1000);
-            
-            // Start the protocol
-            client.startProtocol();
+            String host = args.length > 2 ? args[2] : "localhost";
+            int port = args.length > 3 ? Integer.parseInt(args[3]) : 12345;
+            Client client = new Client(host, port, "TestClient");
             
-            // Keep the client running to receive all protocol messages
-            System.out.println("[TestClient] Waiting for protocol messages...");
-            Thread.sleep(15000); // Wait 15 seconds for protocol to complete
+            boolean granted = client.authenticate(args[0], args[1]);
+            System.out.println("[TestClient] " + (granted ? "GREEN LIGHT: access granted" : "RED LIGHT: access denied"));
             
             client.close();
             
@@ -101,4 +80,4 @@ public class Client {
             e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+}
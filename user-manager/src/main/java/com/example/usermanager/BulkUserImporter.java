@@ -0,0 +1,296 @@
+package com.example.usermanager;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Imports many users at once from a CSV ("username,email" per line, email optional)
+ * or JSONL ({"username": ..., "email": ...} per line) file. Lines are read in
+ * batches; the AES-256 keys of the next batch are generated on worker threads
+ * while the current batch is inserted. Ids come from the users table's sequence,
+ * a batch at a time, so rows go in as JDBC batch inserts (JPA cannot batch
+ * IDENTITY inserts). Each batch is committed on its own, then its ids and keys
+ * are appended to the key file used for card personalization.
+ */
+@Component
+public class BulkUserImporter {
+
+    private static final String INSERT_USER =
+            "INSERT INTO users (id, sym_key, username, email, active) VALUES (?, ?, ?, ?, true)";
+    private static final String NEXT_IDS =
+            "SELECT nextval(pg_get_serial_sequence('users', 'id')) FROM generate_series(1, ?)";
+
+    // AES-256 key drawn from a per-thread DRBG, as KeyGenerator would
+    private static final int KEY_BYTES = 32;
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(BulkUserImporter::newDrbg);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private UserChangePublisher userChangePublisher;
+
+    @Value("${user.import.batch-size:1000}")
+    private int batchSize;
+
+    // Key generation threads; 0 uses one per processor
+    @Value("${user.import.key-threads:0}")
+    private int keyThreads;
+
+    /**
+     * Import every user in the input file
+     * @param input CSV or JSONL (by extension .jsonl / .ndjson) file of users
+     * @param keysOut new file receiving one "user_id,symmetric_key" line per imported user
+     * @return number of users imported
+     */
+    public long importUsers(Path input, Path keysOut) throws IOException {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("user.import.batch-size must be positive");
+        }
+        boolean jsonl = isJsonl(input);
+        int threads = keyThreads > 0 ? keyThreads : Runtime.getRuntime().availableProcessors();
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        ExecutorService keyPool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "import-keygen");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long started = System.nanoTime();
+        long imported = 0;
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             BufferedWriter keys = createKeyFile(keysOut)) {
+            keys.write("# user_id,symmetric_key");
+            keys.newLine();
+            Source source = new Source(reader, jsonl);
+            Batch pending = null;
+            while (true) {
+                Batch next = readBatch(source);
+                if (next != null) {
+                    next.generateKeys(keyPool, threads);
+                }
+                // Insert the previous batch while this one's keys are generated
+                if (pending != null) {
+                    imported += insert(pending, transaction, keys);
+                    System.out.println("Imported " + imported + " users...");
+                }
+                if (next == null) {
+                    break;
+                }
+                pending = next;
+            }
+        } finally {
+            keyPool.shutdownNow();
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        System.out.println("Imported " + imported + " users in " + millis + " ms ("
+                + (millis > 0 ? imported * 1000 / millis : imported) + " users/s); keys written to " + keysOut);
+        return imported;
+    }
+
+    private Batch readBatch(Source source) throws IOException {
+        Batch batch = new Batch(batchSize);
+        String line;
+        while (batch.size() < batchSize && (line = source.reader.readLine()) != null) {
+            source.lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            boolean first = source.firstRecord;
+            source.firstRecord = false;
+            String username;
+            String email;
+            if (source.jsonl) {
+                try {
+                    JsonNode node = objectMapper.readTree(line);
+                    username = node.path("username").asText(null);
+                    email = node.path("email").asText(null);
+                } catch (JsonProcessingException e) {
+                    System.out.println("Skipping line " + source.lineNumber + ": not a JSON object");
+                    continue;
+                }
+            } else {
+                String[] fields = line.split(",", -1);
+                username = fields[0].trim();
+                email = fields.length > 1 ? fields[1].trim() : null;
+                if (first && username.equalsIgnoreCase("username")) {
+                    continue; // header
+                }
+            }
+            if (username == null || username.isBlank()) {
+                System.out.println("Skipping line " + source.lineNumber + ": no username");
+                continue;
+            }
+            batch.add(username, email == null || email.isBlank() ? generateRandomEmail(username) : email);
+        }
+        return batch.size() > 0 ? batch : null;
+    }
+
+    private int insert(Batch batch, TransactionTemplate transaction, BufferedWriter keys) throws IOException {
+        String[] encodedKeys = batch.awaitKeys();
+        List<Long> ids = jdbcTemplate.queryForList(NEXT_IDS, Long.class, batch.size());
+        transaction.executeWithoutResult(status -> jdbcTemplate.batchUpdate(INSERT_USER,
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement statement, int i) throws SQLException {
+                        statement.setLong(1, ids.get(i));
+                        statement.setString(2, encodedKeys[i]);
+                        statement.setString(3, batch.usernames.get(i));
+                        statement.setString(4, batch.emails.get(i));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return batch.size();
+                    }
+                }));
+        for (int i = 0; i < batch.size(); i++) {
+            keys.write(ids.get(i) + "," + encodedKeys[i]);
+            keys.newLine();
+        }
+        keys.flush();
+        userChangePublisher.usersAdded(ids);
+        return batch.size();
+    }
+
+    // The key file holds secret keys: created readable by its owner only, never overwritten
+    private static BufferedWriter createKeyFile(Path keysOut) throws IOException {
+        Path dir = keysOut.toAbsolutePath().getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(keysOut, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(keysOut);
+        }
+        return Files.newBufferedWriter(keysOut, StandardCharsets.UTF_8, StandardOpenOption.WRITE);
+    }
+
+    private static boolean isJsonl(Path input) {
+        String name = input.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".jsonl") || name.endsWith(".ndjson");
+    }
+
+    // Same scheme as the interactive add
+    private static String generateRandomEmail(String name) {
+        String uuid = UUID.randomUUID().toString().substring(0, 8);
+        String cleanName = name.toLowerCase().replaceAll("\\s+", "");
+        return cleanName + uuid + "@example.com";
+    }
+
+    private static SecureRandom newDrbg() {
+        try {
+            return SecureRandom.getInstance("DRBG");
+        } catch (GeneralSecurityException e) {
+            return new SecureRandom();
+        }
+    }
+
+    // Input file and read position
+    private static final class Source {
+        final BufferedReader reader;
+        final boolean jsonl;
+        int lineNumber;
+        boolean firstRecord = true;
+
+        Source(BufferedReader reader, boolean jsonl) {
+            this.reader = reader;
+            this.jsonl = jsonl;
+        }
+    }
+
+    // Users read from the input, and their keys once generated
+    private static final class Batch {
+        final List<String> usernames;
+        final List<String> emails;
+        final String[] keys;
+        final List<Future<?>> keyTasks = new ArrayList<>();
+
+        Batch(int capacity) {
+            this.usernames = new ArrayList<>(capacity);
+            this.emails = new ArrayList<>(capacity);
+            this.keys = new String[capacity];
+        }
+
+        void add(String username, String email) {
+            usernames.add(username);
+            emails.add(email);
+        }
+
+        int size() {
+            return usernames.size();
+        }
+
+        // One slice of the batch per thread
+        void generateKeys(ExecutorService pool, int threads) {
+            int size = size();
+            int slice = (size + threads - 1) / threads;
+            for (int from = 0; from < size; from += slice) {
+                int start = from;
+                int end = Math.min(size, from + slice);
+                keyTasks.add(pool.submit(() -> {
+                    SecureRandom random = RANDOM.get();
+                    byte[] key = new byte[KEY_BYTES];
+                    for (int i = start; i < end; i++) {
+                        random.nextBytes(key);
+                        keys[i] = Base64.getEncoder().encodeToString(key);
+                    }
+                    Arrays.fill(key, (byte) 0);
+                }));
+            }
+        }
+
+        String[] awaitKeys() throws IOException {
+            try {
+                for (Future<?> task : keyTasks) {
+                    task.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while generating keys", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Key generation failed", e.getCause());
+            }
+            return keys;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.usermanager;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.smartcardio.Card;
+import javax.smartcardio.CardException;
+import javax.smartcardio.CardTerminal;
+import javax.smartcardio.TerminalFactory;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Personalizes cards on every attached reader at once. Pending users wait in one
+ * queue; each terminal has a worker thread that takes the next user, waits for a
+ * card, sends the applet commands and waits for the card to be taken out. A card
+ * that rejects a command is reset and personalized again, up to max-attempts.
+ *
+ * With card.terminals=simulated the readers are SimulatedCardTerminals, so the
+ * pipeline can be load-tested without hardware.
+ */
+@Component
+public class CardProvisioningPipeline {
+
+    // A user and the key material to write to their card
+    public static class Job {
+        private final String userId;
+        private final byte[] keyBytes;
+        private final String pin;
+
+        public Job(String userId, byte[] keyBytes, String pin) {
+            this.userId = userId;
+            this.keyBytes = keyBytes;
+            this.pin = pin;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+    }
+
+    public static class Result {
+        private final AtomicInteger provisioned = new AtomicInteger();
+        private final List<String> failed = Collections.synchronizedList(new ArrayList<>());
+        private final Map<String, AtomicInteger> perTerminal = new ConcurrentHashMap<>();
+        private int notStarted;
+        private long millis;
+
+        public int getProvisioned() {
+            return provisioned.get();
+        }
+
+        // Users whose card kept rejecting commands
+        public List<String> getFailed() {
+            return failed;
+        }
+
+        // Users left in the queue because no terminal got a card in time
+        public int getNotStarted() {
+            return notStarted;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+    }
+
+    private final CardSetupService cardSetupService = new CardSetupService();
+
+    // "pcsc" (attached readers) or "simulated"
+    @Value("${card.terminals:pcsc}")
+    private String terminalType;
+
+    @Value("${card.provisioning.max-attempts:3}")
+    private int maxAttempts;
+
+    // How long a terminal waits for a card to be inserted or taken out before it stops
+    @Value("${card.provisioning.card-wait-ms:120000}")
+    private long cardWaitMillis;
+
+    @Value("${card.simulated.count:8}")
+    private int simulatedCount;
+
+    @Value("${card.simulated.insert-delay-ms:500}")
+    private long simulatedInsertDelayMillis;
+
+    @Value("${card.simulated.apdu-latency-ms:20}")
+    private long simulatedApduLatencyMillis;
+
+    @Value("${card.simulated.failure-rate:0.01}")
+    private double simulatedFailureRate;
+
+    /**
+     * Read the key file written by the bulk import ("user_id,symmetric_key" per line)
+     */
+    public static List<Job> readKeyFile(Path keyFile) throws IOException {
+        List<Job> jobs = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(keyFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split(",");
+                if (parts.length < 2) {
+                    throw new IOException("Malformed key line for user " + parts[0]);
+                }
+                jobs.add(new Job(parts[0].trim(), Base64.getDecoder().decode(parts[1].trim()), null));
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * The configured terminals: every attached PC/SC reader, or simulated ones
+     */
+    public List<CardTerminal> terminals() throws CardException {
+        if ("simulated".equals(terminalType)) {
+            List<CardTerminal> terminals = new ArrayList<>();
+            for (int i = 1; i <= simulatedCount; i++) {
+                terminals.add(new SimulatedCardTerminal("Simulated reader " + i, simulatedInsertDelayMillis,
+                        simulatedApduLatencyMillis, simulatedFailureRate));
+            }
+            return terminals;
+        }
+        return TerminalFactory.getDefault().terminals().list();
+    }
+
+    /**
+     * Personalize a card for every job, using all terminals in parallel
+     * @return counts of provisioned, failed and never-started jobs
+     */
+    public Result provision(List<Job> jobs, List<CardTerminal> terminals) throws InterruptedException {
+        if (terminals.isEmpty()) {
+            throw new IllegalStateException("No card terminals found");
+        }
+        BlockingQueue<Job> queue = new LinkedBlockingQueue<>(jobs);
+        Result result = new Result();
+        long started = System.nanoTime();
+        List<Thread> workers = new ArrayList<>();
+        for (CardTerminal terminal : terminals) {
+            result.perTerminal.put(terminal.getName(), new AtomicInteger());
+            Thread worker = new Thread(() -> work(terminal, queue, result), "provisioning-" + terminal.getName());
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        result.notStarted = queue.size();
+        result.millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        System.out.println("Provisioned " + result.getProvisioned() + " cards on " + terminals.size()
+                + " terminals in " + result.millis + " ms");
+        result.perTerminal.forEach((name, count) -> System.out.println("  " + name + ": " + count.get()));
+        if (!result.failed.isEmpty()) {
+            System.out.println("Failed users: " + result.failed);
+        }
+        if (result.notStarted > 0) {
+            System.out.println(result.notStarted + " users were not provisioned: no card was inserted in time.");
+        }
+        return result;
+    }
+
+    private void work(CardTerminal terminal, BlockingQueue<Job> queue, Result result) {
+        Job job;
+        while ((job = queue.poll()) != null) {
+            try {
+                if (!terminal.waitForCardPresent(cardWaitMillis)) {
+                    // Leave the job to a terminal that is being fed cards
+                    queue.add(job);
+                    System.out.println("[" + terminal.getName() + "] No card inserted, stopping this terminal.");
+                    return;
+                }
+                if (provisionCard(terminal, job)) {
+                    result.provisioned.incrementAndGet();
+                    result.perTerminal.get(terminal.getName()).incrementAndGet();
+                } else {
+                    result.failed.add(job.userId);
+                }
+                // The next user needs a fresh card
+                if (!terminal.waitForCardAbsent(cardWaitMillis)) {
+                    System.out.println("[" + terminal.getName() + "] Card was not taken out, stopping this terminal.");
+                    return;
+                }
+            } catch (CardException e) {
+                result.failed.add(job.userId);
+                System.out.println("[" + terminal.getName() + "] Terminal error, stopping it: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    // Connect and personalize, resetting the card and starting over if it rejects a command
+    private boolean provisionCard(CardTerminal terminal, Job job) {
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            Card card = null;
+            try {
+                card = terminal.connect("*");
+                cardSetupService.personalize(card.getBasicChannel(), job.userId, job.keyBytes, job.pin, false);
+                card.disconnect(false);
+                return true;
+            } catch (CardException | RuntimeException e) {
+                System.out.println("[" + terminal.getName() + "] Attempt " + attempt + "/" + maxAttempts
+                        + " for user " + job.userId + " failed: " + e.getMessage());
+                if (card != null) {
+                    try {
+                        card.disconnect(true);
+                    } catch (CardException resetFailed) {
+                        // reconnecting on the next attempt resets it anyway
+                    }
+                }
+            }
+        }
+        return false;
+    }
+}
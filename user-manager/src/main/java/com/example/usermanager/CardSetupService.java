@@ -2,17 +2,19 @@ package com.example.usermanager;
 
 import javax.crypto.SecretKey;
 import javax.smartcardio.*;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 public class CardSetupService {
 
-    private static final byte[] APPLET_AID = {
+    // Package-private so the simulated terminal speaks the same applet protocol
+    static final byte[] APPLET_AID = {
         (byte) 0xA0, 0x00, 0x00, 0x00, 0x62, 0x03, 0x01, 0x0A, 0x03
     };
-    private static final byte INS_SET_ID = (byte) 0x01;
-    private static final byte INS_SET_AES_KEY = (byte) 0x03;
-    private static final byte INS_SET_PIN = (byte) 0x08;
-    private static final byte CLA = (byte) 0x80;
+    static final byte INS_SET_ID = (byte) 0x01;
+    static final byte INS_SET_AES_KEY = (byte) 0x03;
+    static final byte INS_SET_PIN = (byte) 0x08;
+    static final byte CLA = (byte) 0x80;
 
     public void setupCard(String userId, byte[] keyBytes, String pin) throws Exception {
         Card card = initializeCard();
@@ -20,24 +22,32 @@ public class CardSetupService {
             throw new RuntimeException("Cartão não encontrado.");
         }
 
-        CardChannel channel = card.getBasicChannel();
+        personalize(card.getBasicChannel(), userId, keyBytes, pin, true);
 
+        System.out.println("Setup do cartão concluído.");
+        card.disconnect(false);
+    }
+
+    /**
+     * Select the applet and write key, ID and (optional) PIN to a connected card
+     * @param verbose print each step as it succeeds
+     * @throws RuntimeException if the card rejects a command
+     */
+    public void personalize(CardChannel channel, String userId, byte[] keyBytes, String pin, boolean verbose)
+            throws CardException {
         ResponseAPDU response = channel.transmit(new CommandAPDU(0x00, 0xA4, 0x04, 0x00, APPLET_AID));
-        checkStatus(response, "Selecionar applet");
+        checkStatus(response, "Selecionar applet", verbose);
 
         response = channel.transmit(new CommandAPDU(CLA, INS_SET_AES_KEY, 0x00, 0x00, keyBytes));
-        checkStatus(response, "Enviar AES Key");
+        checkStatus(response, "Enviar AES Key", verbose);
 
-        response = channel.transmit(new CommandAPDU(CLA, INS_SET_ID, 0x00, 0x00, userId.getBytes("UTF-8")));
-        checkStatus(response, "Enviar ID");
+        response = channel.transmit(new CommandAPDU(CLA, INS_SET_ID, 0x00, 0x00, userId.getBytes(StandardCharsets.UTF_8)));
+        checkStatus(response, "Enviar ID", verbose);
 
         if (pin != null && !pin.isEmpty()) {
-            response = channel.transmit(new CommandAPDU(CLA, INS_SET_PIN, 0x00, 0x00, pin.getBytes("UTF-8")));
-            checkStatus(response, "Enviar PIN");
+            response = channel.transmit(new CommandAPDU(CLA, INS_SET_PIN, 0x00, 0x00, pin.getBytes(StandardCharsets.UTF_8)));
+            checkStatus(response, "Enviar PIN", verbose);
         }
-
-        System.out.println("Setup do cartão concluído.");
-        card.disconnect(false);
     }
 
     private Card initializeCard() throws Exception {
@@ -58,10 +68,10 @@ public class CardSetupService {
         return card;
     }
 
-    private void checkStatus(ResponseAPDU response, String op) {
+    private void checkStatus(ResponseAPDU response, String op, boolean verbose) {
         if (response.getSW() != 0x9000) {
             throw new RuntimeException(op + " falhou: " + Integer.toHexString(response.getSW()));
-        } else {
+        } else if (verbose) {
             System.out.println(op + " OK");
         }
     }
@@ -0,0 +1,271 @@
+package com.example.usermanager;
+
+import javax.smartcardio.ATR;
+import javax.smartcardio.Card;
+import javax.smartcardio.CardChannel;
+import javax.smartcardio.CardException;
+import javax.smartcardio.CardNotPresentException;
+import javax.smartcardio.CardTerminal;
+import javax.smartcardio.CommandAPDU;
+import javax.smartcardio.ResponseAPDU;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Card reader without hardware, for load-testing card provisioning. A blank card
+ * is inserted insertDelay after the previous one was taken out, and taken out as
+ * soon as the terminal waits for its removal. The card runs the access applet's
+ * commands: each APDU takes apduLatency and fails with status 6F00 at the given
+ * rate. Cards that left the terminal with a key and an ID are recorded.
+ */
+public class SimulatedCardTerminal extends CardTerminal {
+    private static final int SW_OK = 0x9000;
+    private static final int SW_UNKNOWN_ERROR = 0x6F00;
+    private static final int SW_WRONG_LENGTH = 0x6700;
+    private static final int SW_NOT_SELECTED = 0x6985;
+    private static final int SW_FILE_NOT_FOUND = 0x6A82;
+    private static final int SW_INS_NOT_SUPPORTED = 0x6D00;
+    private static final ATR SIMULATED_ATR = new ATR(new byte[] { 0x3B, 0x00 });
+
+    private final String name;
+    private final long insertDelayMillis;
+    private final long apduLatencyMillis;
+    private final double failureRate;
+    // Personalized cards: ID written to the card -> AES key
+    private final Map<String, byte[]> personalized = new ConcurrentHashMap<>();
+
+    // Guarded by this
+    private SimulatedCard card;
+    private long removedAtNanos;
+
+    public SimulatedCardTerminal(String name, long insertDelayMillis, long apduLatencyMillis, double failureRate) {
+        if (failureRate < 0 || failureRate >= 1) {
+            throw new IllegalArgumentException("failureRate must be in [0, 1)");
+        }
+        this.name = name;
+        this.insertDelayMillis = insertDelayMillis;
+        this.apduLatencyMillis = apduLatencyMillis;
+        this.failureRate = failureRate;
+        this.removedAtNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(insertDelayMillis);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public synchronized boolean isCardPresent() {
+        return card != null || insertWaitMillis() == 0;
+    }
+
+    @Override
+    public boolean waitForCardPresent(long timeout) throws CardException {
+        long wait;
+        synchronized (this) {
+            wait = card != null ? 0 : insertWaitMillis();
+        }
+        if (timeout != 0 && wait > timeout) {
+            pause(timeout);
+            return false;
+        }
+        pause(wait);
+        return true;
+    }
+
+    // The operator takes the card out right away
+    @Override
+    public synchronized boolean waitForCardAbsent(long timeout) {
+        if (card != null) {
+            card.remove();
+            card = null;
+            removedAtNanos = System.nanoTime();
+        } else if (insertWaitMillis() == 0) {
+            // A card was inserted but never connected to
+            removedAtNanos = System.nanoTime();
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized Card connect(String protocol) throws CardException {
+        if (card == null) {
+            if (insertWaitMillis() > 0) {
+                throw new CardNotPresentException("No card in " + name);
+            }
+            card = new SimulatedCard();
+        }
+        card.connected = true;
+        card.selected = false;
+        return card;
+    }
+
+    /**
+     * Cards personalized on this terminal so far
+     * @return ID written to each card -> its AES key
+     */
+    public Map<String, byte[]> getPersonalized() {
+        return personalized;
+    }
+
+    private long insertWaitMillis() {
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - removedAtNanos);
+        return Math.max(0, insertDelayMillis - elapsed);
+    }
+
+    private static void pause(long millis) throws CardException {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CardException("Interrupted");
+        }
+    }
+
+    private final class SimulatedCard extends Card {
+        private final CardChannel channel = new SimulatedChannel(this);
+        volatile boolean connected;
+        volatile boolean selected;
+        private byte[] key;
+        private String id;
+
+        @Override
+        public ATR getATR() {
+            return SIMULATED_ATR;
+        }
+
+        @Override
+        public String getProtocol() {
+            return "T=1";
+        }
+
+        @Override
+        public CardChannel getBasicChannel() {
+            checkConnected();
+            return channel;
+        }
+
+        @Override
+        public CardChannel openLogicalChannel() throws CardException {
+            throw new CardException("Logical channels are not simulated");
+        }
+
+        @Override
+        public void beginExclusive() {
+            checkConnected();
+        }
+
+        @Override
+        public void endExclusive() {
+            checkConnected();
+        }
+
+        @Override
+        public byte[] transmitControlCommand(int controlCode, byte[] command) throws CardException {
+            throw new CardException("Control commands are not simulated");
+        }
+
+        // A reset only loses the applet selection; written data stays on the card
+        @Override
+        public void disconnect(boolean reset) {
+            connected = false;
+            selected = false;
+        }
+
+        synchronized void remove() {
+            connected = false;
+            if (key != null && id != null) {
+                personalized.put(id, key);
+            }
+        }
+
+        void checkConnected() {
+            if (!connected) {
+                throw new IllegalStateException("Card has been disconnected");
+            }
+        }
+
+        synchronized ResponseAPDU process(CommandAPDU command) throws CardException {
+            checkConnected();
+            pause(apduLatencyMillis);
+            if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+                return status(SW_UNKNOWN_ERROR);
+            }
+            byte[] data = command.getData();
+            if (command.getCLA() == 0x00 && command.getINS() == 0xA4) {
+                selected = Arrays.equals(data, CardSetupService.APPLET_AID);
+                return status(selected ? SW_OK : SW_FILE_NOT_FOUND);
+            }
+            if (command.getCLA() != (CardSetupService.CLA & 0xFF)) {
+                return status(SW_INS_NOT_SUPPORTED);
+            }
+            if (!selected) {
+                return status(SW_NOT_SELECTED);
+            }
+            switch ((byte) command.getINS()) {
+                case CardSetupService.INS_SET_AES_KEY:
+                    if (data.length != 16 && data.length != 24 && data.length != 32) {
+                        return status(SW_WRONG_LENGTH);
+                    }
+                    key = data;
+                    return status(SW_OK);
+                case CardSetupService.INS_SET_ID:
+                    id = new String(data, StandardCharsets.UTF_8);
+                    return status(SW_OK);
+                case CardSetupService.INS_SET_PIN:
+                    return status(SW_OK);
+                default:
+                    return status(SW_INS_NOT_SUPPORTED);
+            }
+        }
+
+        private ResponseAPDU status(int sw) {
+            return new ResponseAPDU(new byte[] { (byte) (sw >> 8), (byte) sw });
+        }
+    }
+
+    private static final class SimulatedChannel extends CardChannel {
+        private final SimulatedCard card;
+
+        SimulatedChannel(SimulatedCard card) {
+            this.card = card;
+        }
+
+        @Override
+        public Card getCard() {
+            return card;
+        }
+
+        @Override
+        public int getChannelNumber() {
+            return 0;
+        }
+
+        @Override
+        public ResponseAPDU transmit(CommandAPDU command) throws CardException {
+            return card.process(command);
+        }
+
+        @Override
+        public int transmit(ByteBuffer command, ByteBuffer response) throws CardException {
+            byte[] apdu = new byte[command.remaining()];
+            command.get(apdu);
+            byte[] reply = card.process(new CommandAPDU(apdu)).getBytes();
+            response.put(reply);
+            return reply.length;
+        }
+
+        @Override
+        public void close() {
+            throw new IllegalStateException("The basic channel cannot be closed");
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.usermanager;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Tells the backend about users added, deleted or deactivated here, so it can
+ * drop their cached keys. Each change is a "TYPE:id" message, sent as a Postgres
+ * notification or, for local runs without Postgres, appended to a change file
+ * the backend watches. Call it after the change is committed.
+ */
+@Component
+public class UserChangePublisher {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // "postgres" (NOTIFY), "file" (append to a local change file) or "none"
+    @Value("${user.changes.transport:postgres}")
+    private String transport;
+
+    @Value("${user.changes.channel:user_changes}")
+    private String channel;
+
+    @Value("${user.changes.file:data/user-changes.log}")
+    private String file;
+
+    public void userAdded(Long id) {
+        publish("ADDED", List.of(id));
+    }
+
+    // One round trip for a whole batch of new users, e.g. from a bulk import
+    public void usersAdded(List<Long> ids) {
+        if (!ids.isEmpty()) {
+            publish("ADDED", ids);
+        }
+    }
+
+    public void userDeleted(Long id) {
+        publish("DELETED", List.of(id));
+    }
+
+    public void userDeactivated(Long id) {
+        publish("DEACTIVATED", List.of(id));
+    }
+
+    private void publish(String type, List<Long> ids) {
+        String description = ids.size() == 1 ? type + ":" + ids.get(0) : ids.size() + " " + type + " changes";
+        try {
+            switch (transport) {
+                case "postgres":
+                    // One notification per id; Postgres sends them when this statement commits
+                    jdbcTemplate.queryForObject("SELECT count(pg_notify(?, ? || id)) FROM unnest(?::bigint[]) AS id",
+                            Long.class, channel, type + ":", ids.stream().map(String::valueOf)
+                                    .collect(Collectors.joining(",", "{", "}")));
+                    break;
+                case "file":
+                    Path path = Paths.get(file);
+                    if (path.getParent() != null) {
+                        Files.createDirectories(path.getParent());
+                    }
+                    // A single append per call, so concurrent writers never interleave a line
+                    String lines = ids.stream().map(id -> type + ":" + id + "\n").collect(Collectors.joining());
+                    Files.write(path, lines.getBytes(StandardCharsets.UTF_8),
+                            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                    break;
+                default:
+                    break;
+            }
+        } catch (DataAccessException | IOException e) {
+            // The change itself is saved; the backend catches up when its cached key expires
+            System.out.println("Could not notify the backend of " + description + ": " + e.getMessage());
+        }
+    }
+}
@@ -3,15 +3,24 @@ package com.example.usermanager;
 import com.example.usermanager.entity.User;
 import com.example.usermanager.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
 import com.example.usermanager.CardSetupService;
 
 
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
+import javax.smartcardio.CardException;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Base64;
+import java.util.List;
 import java.util.Optional;
 import java.util.Scanner;
 import java.util.UUID;
@@ -22,12 +31,38 @@ public class UserManagerApplication implements CommandLineRunner {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UserChangePublisher userChangePublisher;
+
+    @Autowired
+    private BulkUserImporter bulkUserImporter;
+
+    @Autowired
+    private CardProvisioningPipeline cardProvisioningPipeline;
+
+    @Value("${user.list.page-size:500}")
+    private int listPageSize;
+
     public static void main(String[] args) {
         SpringApplication.run(UserManagerApplication.class, args);
     }
 
     @Override
     public void run(String... args) throws Exception {
+        // Non-interactive bulk import: --import=users.csv --keys-out=keys.csv
+        String importFile = option(args, "import");
+        if (importFile != null) {
+            String keysOut = option(args, "keys-out");
+            bulkUserImporter.importUsers(Paths.get(importFile), Paths.get(keysOut != null ? keysOut : "user-keys.csv"));
+            return;
+        }
+        // Non-interactive card provisioning on all terminals: --provision=keys.csv
+        String provisionFile = option(args, "provision");
+        if (provisionFile != null) {
+            provisionCards(Paths.get(provisionFile));
+            return;
+        }
+
         Scanner scanner = new Scanner(System.in);
 
         // CLI loop
@@ -39,6 +74,10 @@ public class UserManagerApplication implements CommandLineRunner {
             System.out.println("4. Find user by ID");
             System.out.println("5. Exit");
             System.out.println("6. Generate two mock users");
+            System.out.println("7. Deactivate a user");
+            System.out.println("8. Import users from a CSV or JSONL file");
+            System.out.println("9. Search users");
+            System.out.println("10. Provision cards from a key file on all terminals");
 
             int choice = scanner.nextInt();
             scanner.nextLine(); // consume the newline character
@@ -67,6 +106,23 @@ public class UserManagerApplication implements CommandLineRunner {
                     System.out.println("Generate two mock users");
                     addUser("Alice");
                     addUser("Bob");
+                    break;
+                case 7:
+                    System.out.println("Deactivating a user:");
+                    deactivateUser(scanner);
+                    break;
+                case 8:
+                    System.out.println("Importing users:");
+                    importUsers(scanner);
+                    break;
+                case 9:
+                    System.out.println("Searching users:");
+                    searchUsers(scanner);
+                    break;
+                case 10:
+                    System.out.print("Enter the key file (user_id,symmetric_key) to provision: ");
+                    provisionCards(Paths.get(scanner.nextLine().trim()));
+                    break;
                 default:
                     System.out.println("Invalid option. Please try again.");
             }
@@ -75,8 +131,52 @@ public class UserManagerApplication implements CommandLineRunner {
 
     // List all users
     private void listUsers() {
-        userRepository.findAll().forEach(user ->
-                System.out.println(user.getUsername() + " (ID: " + user.getId() + ", Email: " + user.getEmail() + ")"));
+        printUsers(null, null, null);
+    }
+
+    // Search by username and email (case-insensitive substrings) and active flag; blank matches any
+    private void searchUsers(Scanner scanner) {
+        System.out.print("Username contains (press enter for any): ");
+        String username = scanner.nextLine().trim();
+
+        System.out.print("Email contains (press enter for any): ");
+        String email = scanner.nextLine().trim();
+
+        System.out.print("Active? (y/n, press enter for any): ");
+        String active = scanner.nextLine().trim().toLowerCase();
+
+        printUsers(username, email, active.isEmpty() ? null : active.startsWith("y"));
+    }
+
+    // Prints page by page in id order: output starts at once and memory does not grow with the table
+    private void printUsers(String username, String email, Boolean active) {
+        String usernamePattern = containsPattern(username);
+        String emailPattern = containsPattern(email);
+        long printed = 0;
+        Long afterId = Long.MIN_VALUE;
+        List<Object[]> page;
+        do {
+            page = userRepository.findPageAfter(afterId, usernamePattern, emailPattern, active == null,
+                    Boolean.TRUE.equals(active), PageRequest.of(0, listPageSize));
+            for (Object[] row : page) {
+                System.out.println(row[1] + " (ID: " + row[0] + ", Email: " + row[2]
+                        + (Boolean.FALSE.equals(row[3]) ? ", inactive" : "") + ")");
+            }
+            printed += page.size();
+            if (!page.isEmpty()) {
+                afterId = (Long) page.get(page.size() - 1)[0];
+            }
+        } while (page.size() == listPageSize);
+        System.out.println(printed + " users.");
+    }
+
+    // LIKE pattern matching text anywhere, with wildcards in the text taken literally
+    private static String containsPattern(String text) {
+        if (text == null || text.isEmpty()) {
+            return "%";
+        }
+        String escaped = text.toLowerCase().replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        return "%" + escaped + "%";
     }
 
     private void addUser(Scanner scanner) throws Exception {
@@ -96,6 +196,7 @@ public class UserManagerApplication implements CommandLineRunner {
         String email = generateRandomEmail(username);
         User newUser = new User(symKeyBase64, username, email);
         userRepository.save(newUser);
+        userChangePublisher.userAdded(newUser.getId());
     
         System.out.println("User added: " + newUser.getUsername());
     
@@ -117,6 +218,7 @@ public class UserManagerApplication implements CommandLineRunner {
 
         User newUser = new User(symKey, username, email);
         userRepository.save(newUser);
+        userChangePublisher.userAdded(newUser.getId());
 
         System.out.println("User added: " + newUser.getUsername() + " with email " + email);
         System.out.println("Symmetric key (base64): " + symKey);
@@ -132,12 +234,61 @@ public class UserManagerApplication implements CommandLineRunner {
 
         if (user.isPresent()) {
             userRepository.delete(user.get());
+            userChangePublisher.userDeleted(userId);
             System.out.println("User deleted: " + user.get().getUsername());
         } else {
             System.out.println("User with ID " + userId + " not found.");
         }
     }
 
+    // Deactivate a user by ID; the row is kept but the card stops working
+    private void deactivateUser(Scanner scanner) {
+        System.out.print("Enter user ID to deactivate: ");
+        Long userId = scanner.nextLong();
+        scanner.nextLine(); // consume newline
+
+        Optional<User> user = userRepository.findById(userId);
+
+        if (user.isPresent()) {
+            user.get().setActive(false);
+            userRepository.save(user.get());
+            userChangePublisher.userDeactivated(userId);
+            System.out.println("User deactivated: " + user.get().getUsername());
+        } else {
+            System.out.println("User with ID " + userId + " not found.");
+        }
+    }
+
+    // Bulk import; the generated keys go to a new file for card personalization
+    private void importUsers(Scanner scanner) throws Exception {
+        System.out.print("Enter the CSV (username,email) or JSONL file to import: ");
+        Path input = Paths.get(scanner.nextLine().trim());
+
+        System.out.print("Enter the file to write user ids and keys to: ");
+        Path keysOut = Paths.get(scanner.nextLine().trim());
+
+        try {
+            bulkUserImporter.importUsers(input, keysOut);
+        } catch (FileAlreadyExistsException e) {
+            System.out.println(keysOut + " already exists; choose a new file so no keys are overwritten.");
+        } catch (IOException | DataAccessException e) {
+            System.out.println("Import failed: " + e.getMessage());
+        }
+    }
+
+    // Card setup for many users at once, spread over every attached terminal
+    private void provisionCards(Path keyFile) {
+        try {
+            List<CardProvisioningPipeline.Job> jobs = CardProvisioningPipeline.readKeyFile(keyFile);
+            System.out.println("Provisioning " + jobs.size() + " cards; insert blank cards into any reader.");
+            cardProvisioningPipeline.provision(jobs, cardProvisioningPipeline.terminals());
+        } catch (IOException | CardException | IllegalArgumentException | IllegalStateException e) {
+            System.out.println("Provisioning failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     // Find a user by ID
     private void findUserById(Scanner scanner) {
         System.out.print("Enter user ID to find: ");
@@ -153,6 +304,16 @@ public class UserManagerApplication implements CommandLineRunner {
         }
     }
 
+    // Value of a --name=value command-line option, or null
+    private static String option(String[] args, String name) {
+        for (String arg : args) {
+            if (arg.startsWith("--" + name + "=")) {
+                return arg.substring(name.length() + 3);
+            }
+        }
+        return null;
+    }
+
     // Helper to generate random email based on name
     private String generateRandomEmail(String name) {
         String uuid = UUID.randomUUID().toString().substring(0, 8);
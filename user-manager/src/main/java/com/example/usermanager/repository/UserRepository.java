@@ -1,8 +1,31 @@
 package com.example.usermanager.repository;
 
 import com.example.usermanager.entity.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
 
 public interface UserRepository extends JpaRepository<User, Long> {
-    // Custom queries can be added here if necessary
+
+    /**
+     * One keyset page of users above afterId in ascending id order, without keys;
+     * each row is {id, username, email, active}. Page through with the last id returned.
+     * @param username lower-case LIKE pattern on the username ("%" for any)
+     * @param email lower-case LIKE pattern on the email ("%" for any)
+     * @param anyActive true to ignore the active flag
+     * @param active the active flag to match when anyActive is false
+     */
+    @Query("SELECT u.id, u.username, u.email, u.active FROM User u WHERE u.id > :afterId"
+            + " AND LOWER(COALESCE(u.username, '')) LIKE :username ESCAPE '\\'"
+            + " AND LOWER(COALESCE(u.email, '')) LIKE :email ESCAPE '\\'"
+            + " AND (:anyActive = true OR u.active = :active) ORDER BY u.id")
+    List<Object[]> findPageAfter(@Param("afterId") Long afterId,
+                                 @Param("username") String username,
+                                 @Param("email") String email,
+                                 @Param("anyActive") boolean anyActive,
+                                 @Param("active") boolean active,
+                                 Pageable page);
 }